@@ -0,0 +1,62 @@
+package com.insanitydesign.vertx;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: The delay of an attempt is picked at random between 0 and the exponentially
+ * growing (but capped) delay, so contending clients spread their retries instead of colliding again.
+ * 
+ * @author insanitydesign
+ */
+public class Backoff {
+
+	/** The delay cap of the first attempt in milliseconds */
+	private long baseDelay;
+
+	/** The max delay cap in milliseconds */
+	private long maxDelay;
+
+	/**
+	 * 
+	 * @param baseDelay
+	 *            The delay cap of the first attempt in milliseconds
+	 * @param maxDelay
+	 *            The max delay cap in milliseconds
+	 */
+	public Backoff(long baseDelay, long maxDelay) {
+		this.baseDelay = Math.max(baseDelay, 1);
+		this.maxDelay = Math.max(maxDelay, this.baseDelay);
+	}
+
+	/**
+	 * 
+	 * @param attempt
+	 *            The attempt starting with 0
+	 * @return The jittered delay in milliseconds, at least 1
+	 */
+	public long delay(int attempt) {
+		long cap = this.maxDelay;
+		// Shift only while the cap cannot overflow
+		if(attempt < 62 && (this.baseDelay << attempt) >>> attempt == this.baseDelay) {
+			cap = Math.min(this.baseDelay << attempt, this.maxDelay);
+		}
+		return 1 + ThreadLocalRandom.current().nextLong(cap);
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+}
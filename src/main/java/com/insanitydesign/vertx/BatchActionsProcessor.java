@@ -1,19 +1,27 @@
 package com.insanitydesign.vertx;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.vertx.java.busmods.BusModBase;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 /**
+ * Splits batches into their single actions and sends them to the persistor. Every batch only has a window of actions
+ * in flight (the next one is sent as one completes) and all batches together are capped, taking turns action by
+ * action, so a large batch neither floods the persistor nor blocks smaller ones. Results are either collected for one
+ * reply or streamed with their index to a caller-provided address as they complete.
  * 
  * @author insanitydesign
  */
-public class BatchActionsProcessor extends BusModBase implements Handler<Message<JsonArray>> {
+public class BatchActionsProcessor extends BusModBase implements Handler<Message<Object>> {
 
 	/** The configured address or default */
 	private String address;
@@ -24,6 +32,18 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 	/** The timeout after which the batch reply should be returned anyways */
 	private long timeout = 30000;
 
+	/** The max actions of a single batch in flight */
+	private int concurrency = Integer.MAX_VALUE;
+
+	/** The max actions of all batches in flight */
+	private int maxConcurrency = Integer.MAX_VALUE;
+
+	/** The actions of all batches in flight */
+	private int inFlight;
+
+	/** The batches with actions ready to be sent, taking turns */
+	private Deque<Batch> ready = new ArrayDeque<>();
+
 	/**
 	 * 
 	 */
@@ -37,6 +57,8 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 		//
 		setAddress(getOptionalStringConfig("address", "vertx.cassandra.persistor"));
 		setTimeout(getOptionalLongConfig("batchTimeout", 30000));
+		setConcurrency(getOptionalIntConfig("batchConcurrency", 0));
+		setMaxConcurrency(getOptionalIntConfig("batchMaxConcurrency", 0));
 		//
 		eb.registerHandler(getAddress(), this);
 
@@ -48,14 +70,90 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 	 * 
 	 */
 	@Override
-	public void handle(Message<JsonArray> message) {
+	public void handle(Message<Object> message) {
+		// Either the actions or an object with the actions and the address to stream to
+		JsonArray actions;
+		String streamAddress = null;
+		if(message.body() instanceof JsonObject) {
+			JsonObject body = (JsonObject) message.body();
+			actions = body.getArray("actions", new JsonArray());
+			streamAddress = body.getString("streamTo");
+		} else if(message.body() instanceof JsonArray) {
+			actions = (JsonArray) message.body();
+		} else {
+			actions = new JsonArray();
+		}
+
 		//
-		JsonArray actions = message.body();
-		BatchRequestHandler<?> batchRequestHandler = new BatchRequestHandler<>(message, actions.size());
+		if(actions.size() == 0) {
+			message.reply(new JsonObject().putString("status", "error").putString("message", "[BatchRequest Handler] Received no actions!"));
+			return;
+		}
+
+		//
+		BatchRequestHandler<Object> batchRequestHandler = new BatchRequestHandler<>(message, actions.size());
+		if(streamAddress != null) {
+			batchRequestHandler.stream(eb, streamAddress);
+		}
+		Batch batch = new Batch(actions, batchRequestHandler);
 		//
-		for(int i = 0; i < actions.size(); i++) {
-			eb.sendWithTimeout(getPersistorAddress(), (JsonObject) actions.get(i), getTimeout(), batchRequestHandler);
+		if(batch.isSendable()) {
+			batch.queued = true;
+			this.ready.add(batch);
 		}
+		dispatch();
+	}
+
+	/**
+	 * Send the next action of the ready batches in turns as long as the global cap allows.
+	 */
+	protected void dispatch() {
+		while(this.inFlight < getMaxConcurrency() && !this.ready.isEmpty()) {
+			final Batch batch = this.ready.poll();
+			final int index = batch.next++;
+			Object action = batch.actions.get(index);
+			boolean valid = action instanceof JsonObject;
+			if(valid) {
+				batch.inFlight++;
+				this.inFlight++;
+			}
+			// Back of the line to let the other batches take their turn
+			if(batch.isSendable()) {
+				this.ready.add(batch);
+			} else {
+				batch.queued = false;
+			}
+			// Invalid actions fail on their own without failing the batch
+			if(!valid) {
+				batch.handler.error(index, "[BatchRequest Handler] Action " + index + " is no JsonObject!");
+				continue;
+			}
+
+			//
+			send((JsonObject) action, new Handler<AsyncResult<Message<Object>>>() {
+				@Override
+				public void handle(AsyncResult<Message<Object>> result) {
+					batch.inFlight--;
+					inFlight--;
+					batch.handler.handle(index, result);
+					//
+					if(!batch.queued && batch.isSendable()) {
+						batch.queued = true;
+						ready.add(batch);
+					}
+					dispatch();
+				}
+			});
+		}
+	}
+
+	/**
+	 * 
+	 * @param action
+	 * @param replyHandler
+	 */
+	protected void send(JsonObject action, Handler<AsyncResult<Message<Object>>> replyHandler) {
+		eb.sendWithTimeout(getPersistorAddress(), action, getTimeout(), replyHandler);
 	}
 
 	/* ***** GETTER/SETTER ***** */
@@ -107,12 +205,92 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 
 	/**
 	 * 
+	 * @param concurrency
+	 *            The max actions of a single batch in flight (0 for unlimited)
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency > 0 ? concurrency : Integer.MAX_VALUE;
+	}
+
+	/**
 	 * 
+	 * @return
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * 
+	 * @param maxConcurrency
+	 *            The max actions of all batches in flight (0 for unlimited)
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency > 0 ? maxConcurrency : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * 
+	 * @return The actions of all batches in flight
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * The dispatch state of a single batch.
+	 */
+	private class Batch {
+
+		/** The actions of the batch */
+		private JsonArray actions;
+
+		/** The handler collecting the results */
+		private BatchRequestHandler<Object> handler;
+
+		/** The index of the next action to send */
+		private int next;
+
+		/** The actions of this batch in flight */
+		private int inFlight;
+
+		/** Whether the batch is in the ready queue */
+		private boolean queued;
+
+		/**
+		 * 
+		 * @param actions
+		 * @param handler
+		 */
+		private Batch(JsonArray actions, BatchRequestHandler<Object> handler) {
+			this.actions = actions;
+			this.handler = handler;
+		}
+
+		/**
+		 * 
+		 * @return true if actions are left and the window of the batch is not full
+		 */
+		private boolean isSendable() {
+			return this.next < this.actions.size() && this.inFlight < getConcurrency();
+		}
+	}
+
+	/**
+	 * Collects the results of a batch for one reply or streams them to the stream address.
 	 */
 	public static class BatchRequestHandler<T> implements Handler<AsyncResult<Message<T>>> {
 
 		/** */
-		private Message<JsonArray> message;
+		private Message<?> message;
 
 		/** */
 		private AtomicInteger actionsAmount;
@@ -120,29 +298,104 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 		/** */
 		private JsonArray retVals;
 
+		/** The event bus to stream with (null if not streamed) */
+		private EventBus eventBus;
+
+		/** The address to stream each result and the summary to (null if not streamed) */
+		private String streamAddress;
+
+		/** The amount of actions of the batch */
+		private int total;
+
+		/** The successful actions */
+		private int succeeded;
+
 		/**
 		 * 
 		 * @param message
 		 * @param actionsAmount
 		 */
-		public BatchRequestHandler(Message<JsonArray> message, int actionsAmount) {
+		public BatchRequestHandler(Message<?> message, int actionsAmount) {
 			this.message = message;
 			this.actionsAmount = new AtomicInteger(actionsAmount);
+			this.total = actionsAmount;
 			this.retVals = new JsonArray();
 		}
 
+		/**
+		 * Stream every result instead of collecting them.
+		 * 
+		 * @param eventBus
+		 * @param streamAddress
+		 */
+		public void stream(EventBus eventBus, String streamAddress) {
+			this.eventBus = eventBus;
+			this.streamAddress = streamAddress;
+		}
+
 		/**
 		 * 
 		 */
 		@Override
 		public void handle(AsyncResult<Message<T>> result) {
+			handle(-1, result);
+		}
+
+		/**
+		 * 
+		 * @param index
+		 *            The index of the action in the batch
+		 * @param result
+		 */
+		public synchronized void handle(int index, AsyncResult<Message<T>> result) {
 			if(result.succeeded()) {
-				// Add to global return object
-				this.retVals.add(result.result().body());
+				this.succeeded++;
+				// Add to global return object (streamed results as their JsonArray)
+				Object body = result.result().body();
+				if(body instanceof Buffer) {
+					body = new JsonArray(((Buffer) body).toString("UTF-8"));
+				}
+				if(isStreamed()) {
+					this.eventBus.send(this.streamAddress, new JsonObject().putNumber("index", index).putValue("result", body));
+				} else {
+					this.retVals.add(body);
+				}
+			} else if(isStreamed()) {
+				this.eventBus.send(this.streamAddress, new JsonObject().putNumber("index", index).putString("status", "error").putString("message", String.valueOf(result.cause().getMessage())));
 			}
+			complete();
+		}
 
+		/**
+		 * Record the error of an action that was not sent.
+		 * 
+		 * @param index
+		 *            The index of the action in the batch
+		 * @param errorMessage
+		 */
+		public synchronized void error(int index, String errorMessage) {
+			if(isStreamed()) {
+				this.eventBus.send(this.streamAddress, new JsonObject().putNumber("index", index).putString("status", "error").putString("message", errorMessage));
+			} else {
+				this.retVals.add(new JsonObject().putString("status", "error").putString("message", errorMessage));
+			}
+			complete();
+		}
+
+		/**
+		 * Count down a completed action and reply once all completed.
+		 */
+		private void complete() {
 			// Reply when all has arrived or if an issue popped up decrement and check
 			if(this.actionsAmount.decrementAndGet() <= 0) {
+				//
+				if(isStreamed()) {
+					// Any failed action fails the batch, the counts tell how many
+					JsonObject summary = new JsonObject().putString("status", this.succeeded == this.total ? "ok" : "error").putNumber("actions", this.total).putNumber("succeeded", this.succeeded).putNumber("failed", this.total - this.succeeded);
+					this.eventBus.send(this.streamAddress, summary);
+					message.reply(summary);
+					return;
+				}
 				//If no results where received, something most likely went wrong
 				if(this.retVals.toList().isEmpty()) {
 					this.retVals.add(new JsonObject().putString("status", "error").putString("message", "[BatchRequest Handler] Received no results!"));
@@ -151,6 +404,14 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 			}
 		}
 
+		/**
+		 * 
+		 * @return true if the results are streamed
+		 */
+		public boolean isStreamed() {
+			return this.streamAddress != null;
+		}
+
 		/* ***** GETTER/SETTER ***** */
 		/**
 		 * 
@@ -164,7 +425,7 @@ public class BatchActionsProcessor extends BusModBase implements Handler<Message
 		 * 
 		 * @return
 		 */
-		public Message<JsonArray> getMessage() {
+		public Message<?> getMessage() {
 			return message;
 		}
 	}
@@ -0,0 +1,180 @@
+package com.insanitydesign.vertx;
+
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.policies.RetryPolicy;
+
+/**
+ * Retry policy only retrying idempotent statements and only as long as the global retry budget allows. The budget is a
+ * token bucket: Every request (tracked as latency tracker) deposits the configured ratio of a token, every second adds
+ * the configured min amount of tokens and every retry withdraws one. With a ratio of 0.1 retries never add more than
+ * 10% load on top of the regular requests (plus the min retries), even if the cluster is browning out. Every decision
+ * is logged.
+ * 
+ * @author insanitydesign
+ */
+public class BudgetedRetryPolicy implements RetryPolicy, LatencyTracker {
+
+	/** The tokens deposited per request */
+	private double ratio;
+
+	/** The tokens deposited per second */
+	private double minPerSecond;
+
+	/** The max amount of tokens to save up */
+	private double maxTokens;
+
+	/** The max retries of a statement on read timeouts */
+	private int readRetries;
+
+	/** The max retries of a statement on write timeouts */
+	private int writeRetries;
+
+	/** The max retries of a statement on unavailable errors */
+	private int unavailableRetries;
+
+	/** The available tokens */
+	private double tokens;
+
+	/** The time of the last time based deposit in nanoseconds */
+	private long lastDeposit;
+
+	/** The logger of the decisions (null to not log) */
+	private Logger logger;
+
+	/**
+	 * 
+	 * @param ratio
+	 *            The tokens deposited per request, i.e. the max ratio of retries to requests
+	 * @param minPerSecond
+	 *            The tokens deposited per second to allow retries with little traffic
+	 * @param maxTokens
+	 *            The max amount of tokens to save up
+	 * @param readRetries
+	 *            The max retries of a statement on read timeouts
+	 * @param writeRetries
+	 *            The max retries of a statement on write timeouts
+	 * @param unavailableRetries
+	 *            The max retries of a statement on unavailable errors
+	 * @param logger
+	 *            The logger of the decisions or null
+	 */
+	public BudgetedRetryPolicy(double ratio, double minPerSecond, double maxTokens, int readRetries, int writeRetries, int unavailableRetries, Logger logger) {
+		this.ratio = Math.max(ratio, 0);
+		this.minPerSecond = Math.max(minPerSecond, 0);
+		this.maxTokens = Math.max(maxTokens, 1);
+		this.readRetries = readRetries;
+		this.writeRetries = writeRetries;
+		this.unavailableRetries = unavailableRetries;
+		this.tokens = this.maxTokens;
+		this.lastDeposit = nanoTime();
+		this.logger = logger;
+	}
+
+	@Override
+	public synchronized void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+		this.tokens = Math.min(this.tokens + this.ratio, this.maxTokens);
+	}
+
+	@Override
+	public RetryDecision onReadTimeout(Statement statement, ConsistencyLevel cl, int requiredResponses, int receivedResponses, boolean dataRetrieved, int nbRetry) {
+		return decide("read timeout", statement, cl, nbRetry, this.readRetries);
+	}
+
+	@Override
+	public RetryDecision onWriteTimeout(Statement statement, ConsistencyLevel cl, WriteType writeType, int requiredAcks, int receivedAcks, int nbRetry) {
+		// Conditional and counter writes are never safe to repeat
+		if(writeType == WriteType.CAS || writeType == WriteType.COUNTER) {
+			return log("write timeout", statement, nbRetry, RetryDecision.rethrow(), "not idempotent");
+		}
+		return decide("write timeout", statement, cl, nbRetry, this.writeRetries);
+	}
+
+	@Override
+	public RetryDecision onUnavailable(Statement statement, ConsistencyLevel cl, int requiredReplica, int aliveReplica, int nbRetry) {
+		return decide("unavailable", statement, cl, nbRetry, this.unavailableRetries);
+	}
+
+	/**
+	 * Retry with the same consistency if the statement is idempotent, has retries left and a token can be withdrawn.
+	 * 
+	 * @param error
+	 * @param statement
+	 * @param cl
+	 * @param nbRetry
+	 * @param maxRetries
+	 * @return The retry decision
+	 */
+	protected RetryDecision decide(String error, Statement statement, ConsistencyLevel cl, int nbRetry, int maxRetries) {
+		if(!Boolean.TRUE.equals(statement.isIdempotent())) {
+			return log(error, statement, nbRetry, RetryDecision.rethrow(), "not idempotent");
+		}
+		if(nbRetry >= maxRetries) {
+			return log(error, statement, nbRetry, RetryDecision.rethrow(), "no retries left");
+		}
+		if(!withdraw()) {
+			return log(error, statement, nbRetry, RetryDecision.rethrow(), "retry budget exhausted");
+		}
+		return log(error, statement, nbRetry, RetryDecision.retry(cl), "within budget");
+	}
+
+	/**
+	 * Withdraw a token for a retry.
+	 * 
+	 * @return false if the budget is exhausted
+	 */
+	protected synchronized boolean withdraw() {
+		long now = nanoTime();
+		this.tokens = Math.min(this.tokens + (now - this.lastDeposit) / 1e9 * this.minPerSecond, this.maxTokens);
+		this.lastDeposit = now;
+		// Tolerate rounding errors of the deposited fractions
+		if(this.tokens < 1 - 1e-9) {
+			return false;
+		}
+		this.tokens = Math.max(this.tokens - 1, 0);
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param error
+	 * @param statement
+	 * @param nbRetry
+	 * @param decision
+	 * @param reason
+	 * @return The given decision
+	 */
+	private RetryDecision log(String error, Statement statement, int nbRetry, RetryDecision decision, String reason) {
+		if(this.logger != null) {
+			String entry = "[Cassandra Persistor] " + decision + " on " + error + " (retry " + nbRetry + ", " + reason + "): " + SlowQueryLog.getQueryString(statement);
+			if(decision.getType() == RetryDecision.Type.RETRY) {
+				this.logger.info(entry);
+			} else {
+				this.logger.warn(entry);
+			}
+		}
+		return decision;
+	}
+
+	/**
+	 * 
+	 * @return The current time in nanoseconds
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return The available tokens
+	 */
+	public synchronized double getTokens() {
+		return tokens;
+	}
+}
@@ -1,41 +1,90 @@
 package com.insanitydesign.vertx;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.vertx.java.busmods.BusModBase;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.impl.VertxInternal;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.Host;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.LatencyTracker;
 import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PerHostPercentileTracker;
+import com.datastax.driver.core.PoolingOptions;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.ProtocolVersion;
 import com.datastax.driver.core.QueryOptions;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.SocketOptions;
 import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
 import com.datastax.driver.core.policies.ConstantReconnectionPolicy;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
 import com.datastax.driver.core.policies.DefaultRetryPolicy;
 import com.datastax.driver.core.policies.DowngradingConsistencyRetryPolicy;
 import com.datastax.driver.core.policies.ExponentialReconnectionPolicy;
 import com.datastax.driver.core.policies.FallthroughRetryPolicy;
+import com.datastax.driver.core.policies.LatencyAwarePolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.LoggingRetryPolicy;
+import com.datastax.driver.core.policies.PercentileSpeculativeExecutionPolicy;
 import com.datastax.driver.core.policies.Policies;
 import com.datastax.driver.core.policies.ReconnectionPolicy;
 import com.datastax.driver.core.policies.RetryPolicy;
+import com.datastax.driver.core.policies.RoundRobinPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import com.insanitydesign.vertx.PreparedStatementCache.CassandraPreparedStatement;
+import com.insanitydesign.vertx.SessionRegistry.KeyspaceSession;
+import com.insanitydesign.vertx.SessionRegistry.SharedSession;
+
+import io.netty.channel.EventLoopGroup;
 
 /**
  * The main persistor module and handler in one. Connects to Cassandra, registers and handles all actions from the
@@ -64,13 +113,82 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 	private ProtocolOptions.Compression compression = ProtocolOptions.Compression.NONE;
 	/** How to handle issues and retry based on what policy */
 	private RetryPolicy retryPolicy = Policies.defaultRetryPolicy();
+	/** Define which hosts to query in which order */
+	private LoadBalancingPolicy loadBalancingPolicy = Policies.defaultLoadBalancingPolicy();
 	/** Define how to handle reconnection */
 	private ReconnectionPolicy reconnectionPolicy = Policies.defaultReconnectionPolicy();
+	/** Define if and when to speculatively execute idempotent statements on further hosts */
+	private SpeculativeExecutionPolicy speculativeExecutionPolicy = Policies.defaultSpeculativeExecutionPolicy();
+	/** The per host latency tracker required by percentile based speculative executions (null if not used) */
+	private PerHostPercentileTracker percentileTracker;
 	/** The query options (e.g. fetch size) for this connection */
 	private QueryOptions queryOptions = new QueryOptions();
+	/** The socket options (e.g. timeouts, TCP_NODELAY) for this connection */
+	private SocketOptions socketOptions = new SocketOptions();
+	/** The Netty transport of the driver (null for the driver defaults) */
+	private TransportOptions transportOptions;
+
+	/** The max time in milliseconds to wait for a response of actions without their own timeout (0 to wait forever) */
+	private long defaultTimeout;
+
+	/** The timeouts in milliseconds by action */
+	private Map<String, Long> actionTimeouts = new HashMap<>();
 
 	/** The formatter (default pattern: dd-MM-yyyy HH:mm:ss) used to convert String dates to Date instances */
 	private SimpleDateFormat dateFormatter;
+	/** The per thread copies of the formatter as SimpleDateFormat is not thread-safe */
+	private ThreadLocal<SimpleDateFormat> dateFormatters = new ThreadLocal<>();
+
+	/** Writes results as streamed JSON Buffers */
+	private JsonResultWriter jsonResultWriter = new JsonResultWriter(PROTOCOL_VERSION);
+
+	/** The min amount of rows of a result to be mapped on the mapping pool */
+	private int mappingPoolMinRows;
+
+	/** The max amount of concurrent PREPARE requests of a prepare action */
+	private int prepareConcurrency;
+
+	/** The optional warm-up of a new session */
+	private Warmup warmup;
+
+	/** The optional snapshot of the prepared statement cache */
+	private StatementCatalogue statementCatalogue;
+
+	/** The periodic snapshot timer or -1 */
+	private long statementCatalogueTimer = -1;
+
+	/** The default serial consistency of conditional writes */
+	private ConsistencyLevel casSerialConsistency;
+
+	/** The max amount of retries of conditional writes timing out */
+	private int casRetries;
+
+	/** The backoff between retries of conditional writes */
+	private Backoff casBackoff;
+
+	/** The buffer aggregating counter increments */
+	private CounterBuffer counterBuffer;
+
+	/** The max amount of counter increments per flushed batch */
+	private int counterBatchSize;
+
+	/** The periodic counter flush timer or -1 */
+	private long counterTimer = -1;
+
+	/** The periodic schema refresh timer or -1 */
+	private long schemaRefreshTimer = -1;
+
+	/** The max amount of spooled writes replayed concurrently */
+	private int spoolConcurrency;
+
+	/** The periodic spool replay timer or -1 */
+	private long spoolTimer = -1;
+
+	/** The deployment of the batch processor of this instance (null if not deployed) */
+	private String batchDeploymentId;
+
+	/** The max amount of spooled writes replayed per tick to keep handling messages in between */
+	private static final int SPOOL_REPLAY_LIMIT = 1000;
 
 	/** Only supporting Cassandra > 2 */
 	private static final ProtocolVersion PROTOCOL_VERSION = ProtocolVersion.V2;
@@ -78,6 +196,54 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 	/** Cache prepared statements */
 	private PreparedStatementCache preparedStatementCache;
 
+	/** The cluster, session and caches shared with all instances of the same configuration */
+	private SharedSession sharedSession;
+
+	/** The timeout in milliseconds of the message currently processed (0 for none) */
+	private long timeout;
+
+	/** The deadline in nanoseconds of the message currently processed */
+	private long deadline;
+
+	/** The keyspace sessions acquired for the message currently processed, released once it is processed */
+	private List<KeyspaceSession> keyspaceSessions = new ArrayList<>();
+
+	/** Cache results of opted in SELECT statements (null if not configured) */
+	private ResultCache resultCache;
+
+	/** Log slow statements (null if not configured) */
+	private SlowQueryLog slowQueryLog;
+
+	/** Fail fast on tables with an open circuit (null if not configured) */
+	private CircuitBreaker tableCircuitBreaker;
+
+	/** Skip coordinator hosts with an open circuit (null if not configured) */
+	private CircuitBreaker hostCircuitBreaker;
+
+	/** Limit the rate of callers (null if not configured) */
+	private RateLimiter callerRateLimiter;
+
+	/** Limit the rate of tables (null if not configured) */
+	private RateLimiter tableRateLimiter;
+
+	/** Whether to delay requests exceeding a rate limit instead of rejecting them */
+	private boolean rateLimitDelay;
+
+	/** The max time in milliseconds to delay a request exceeding a rate limit */
+	private long rateLimitMaxDelay;
+
+	/** Queue messages in weighted lanes with fair turns between callers (null if not configured) */
+	private WeightedFairQueue<Message<JsonObject>> scheduler;
+
+	/** Whether queued messages are being processed */
+	private boolean draining;
+
+	/** The lane of messages without a known lane */
+	private static final String DEFAULT_LANE = "default";
+
+	/** The lane of messages sent to the priority address */
+	private static final String PRIORITY_LANE = "priority";
+
 	/**
 	 * Boot up the verticle and connect to the configured Cassandra cluster.
 	 */
@@ -95,11 +261,177 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 		setPort(getOptionalIntConfig("port", 9042));
 		setKeyspace(getOptionalStringConfig("keyspace", "vertxpersistor"));
 		setCompression(getOptionalStringConfig("compression", "NONE"));
-		setRetryPolicy(getOptionalStringConfig("retry", "default"));
+		if(this.config.getField("retry") instanceof JsonObject) {
+			setRetryPolicy(this.config.getObject("retry"));
+		} else {
+			setRetryPolicy(getOptionalStringConfig("retry", "default"));
+		}
+		setLoadBalancingPolicy(getOptionalObjectConfig("loadBalancing", new JsonObject()));
 		setReconnectionPolicy(getOptionalObjectConfig("reconnection", new JsonObject("{}")));
+		setSpeculativeExecutionPolicy(getOptionalObjectConfig("speculative", new JsonObject("{}")));
 		getQueryOptions().setFetchSize(getOptionalIntConfig("fetchSize", QueryOptions.DEFAULT_FETCH_SIZE));
+		setSocketOptions(getOptionalObjectConfig("socket", new JsonObject()));
+		setTransportOptions(getOptionalObjectConfig("netty", null));
+		setTimeouts(getOptionalObjectConfig("timeouts", new JsonObject()));
 		setDateFormatter(new SimpleDateFormat(getOptionalStringConfig("dateFormat", "dd-MM-yyyy HH:mm:ss")));		
+		setSlowQueryLog(getOptionalObjectConfig("slowQuery", null));
+		setCircuitBreaker(getOptionalObjectConfig("circuitBreaker", null));
+		setScheduler(getOptionalObjectConfig("scheduling", null));
+		setRateLimits(getOptionalObjectConfig("rateLimits", null));
+		setMappingPoolMinRows(getOptionalObjectConfig("mappingPool", new JsonObject()).getInteger("minRows", 100));
+		setPrepareConcurrency(getOptionalIntConfig("prepareConcurrency", PreparedStatementCache.DEFAULT_PREPARE_CONCURRENCY));
+		setWarmup(getOptionalObjectConfig("warmup", null));
+		setCas(getOptionalObjectConfig("cas", new JsonObject()));
+		JsonObject countersConfig = getOptionalObjectConfig("counters", new JsonObject());
+		setCounters(countersConfig);
+		JsonObject catalogueConfig = getOptionalObjectConfig("catalogue", null);
+		setStatementCatalogue(catalogueConfig);
+		JsonObject spoolConfig = getOptionalObjectConfig("spool", null);
+		setSpoolConcurrency(spoolConfig != null ? Math.max(spoolConfig.getInteger("concurrency", 4), 1) : 0);
+
+		// Share cluster, session and caches with all instances of the same configuration
+		try {
+			setSharedSession(SessionRegistry.acquire(getOptionalBooleanConfig("shareSession", true) ? SessionRegistry.key(this.config) : null, new SessionRegistry.SessionFactory() {
+				@Override
+				public SharedSession create() throws Exception {
+					return createSharedSession();
+				}
+			}));
+
+		} catch(Exception e) {
+			logger.error("[Cassandra Persistor] Cannot connect/get session from Cassandra!", e);
+			return;
+		}
+		//
+		setCluster(getSharedSession().getCluster());
+		setPreparedStatementCache(getSharedSession().getPreparedStatementCache());
+		setSession(getSharedSession().getSession());
+		setResultCache(getSharedSession().getResultCache());
+		setTableCircuitBreaker(getSharedSession().getTableCircuitBreaker());
+		setHostCircuitBreaker(getSharedSession().getHostCircuitBreaker());
+		setCallerRateLimiter(getSharedSession().getCallerRateLimiter());
+		setTableRateLimiter(getSharedSession().getTableRateLimiter());
+
+		//
+		eb.registerHandler(getAddress(), this);
+		if(getScheduler() != null) {
+			eb.registerHandler(getPriorityAddress(), this);
+		}
+		// Every instance has its own batch processor, the event bus spreads the batches over them
+		container.deployWorkerVerticle(BatchActionsProcessor.class.getName(), container.config(), 1, false, new AsyncResultHandler<String>() {
+			@Override
+			public void handle(AsyncResult<String> result) {
+				if(result.succeeded()) {
+					setBatchDeploymentId(result.result());
+				} else {
+					logger.error("[Cassandra Persistor] Cannot deploy batch processor!", result.cause());
+				}
+			}
+		});
+
+		// The driver keeps its metadata up to date, compare it periodically to
+		// drop cached statements and mappings of changed tables. The caches are
+		// shared, so only one instance at a time refreshes them
+		refreshSchema();
+		long schemaRefresh = getOptionalLongConfig("schemaRefresh", 10000);
+		if(schemaRefresh > 0) {
+			setSchemaRefreshTimer(vertx.setPeriodic(schemaRefresh, new Handler<Long>() {
+				@Override
+				public void handle(Long timerId) {
+					if(getSharedSession().claimSchemaRefresh(CassandraPersistor.this)) {
+						refreshSchema();
+					}
+				}
+			}));
+		}
+
+		// Flush aggregated counter increments
+		setCounterTimer(vertx.setPeriodic(countersConfig.getLong("interval", 1000), new Handler<Long>() {
+			@Override
+			public void handle(Long timerId) {
+				flushCounters();
+			}
+		}));
+
+		// Replay spooled writes once hosts are reachable again
+		if(getSharedSession().getWriteSpool() != null) {
+			setSpoolTimer(vertx.setPeriodic(spoolConfig.getLong("interval", 5000), new Handler<Long>() {
+				@Override
+				public void handle(Long timerId) {
+					replaySpool();
+				}
+			}));
+		}
+
+		// Restore the hot set once per new cache and snapshot it periodically
+		if(getStatementCatalogue() != null) {
+			if(getSharedSession().markCatalogueRestored()) {
+				restoreStatementCatalogue();
+			}
+			setStatementCatalogueTimer(vertx.setPeriodic(catalogueConfig.getLong("interval", 60000), new Handler<Long>() {
+				@Override
+				public void handle(Long timerId) {
+					saveStatementCatalogue();
+				}
+			}));
+		}
+
+		//
+		logger.info("[Cassandra Persistor] ...booted!");
+	}
+
+	/**
+	 * Build the configured cluster, connect the session and create the caches to be shared with all instances of the
+	 * same configuration.
+	 * 
+	 * @return A new connected shared session
+	 * @throws Exception
+	 *             If the cluster could not be built or connected
+	 */
+	protected SharedSession createSharedSession() throws Exception {
+		//
+		Cluster cluster = buildCluster();
+
+		//
+		try {
+			//
+			Metadata metadata = cluster.getMetadata();
+			logger.info("[Cassandra Persistor] Connected to cluster: " + metadata.getClusterName());
+			//
+			for(Host host : metadata.getAllHosts()) {
+				logger.info("[Cassandra Persistor] DC: " + host.getDatacenter() + " - Host: " + host.getAddress() + " - Rack: " + host.getRack());
+			}
 
+			//Get Session and add it to Cache
+			Session session = connect(cluster, getKeyspace());
+			SharedSession sharedSession = new SharedSession(cluster, session, new PreparedStatementCache(getOptionalIntConfig("prepStmtCacheSize", Integer.MAX_VALUE), session, container.logger()), createResultCache(getOptionalObjectConfig("resultCache", null)));
+			sharedSession.setMappingPool(createMappingPool(getOptionalObjectConfig("mappingPool", null)));
+			sharedSession.setMaxKeyspaceSessions(getOptionalIntConfig("keyspaceSessions", 8));
+			sharedSession.setWriteSpool(createWriteSpool(getOptionalObjectConfig("spool", null)));
+			sharedSession.setTableCircuitBreaker(getTableCircuitBreaker());
+			sharedSession.setHostCircuitBreaker(getHostCircuitBreaker());
+			sharedSession.setCallerRateLimiter(getCallerRateLimiter());
+			sharedSession.setTableRateLimiter(getTableRateLimiter());
+			// Warm up before any instance registers its handler
+			if(getWarmup() != null) {
+				getWarmup().run(session, sharedSession.getPreparedStatementCache(), getPrepareConcurrency());
+			}
+			return sharedSession;
+
+		} catch(Exception e) {
+			cluster.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Build the cluster from the configured hosts and options.
+	 * 
+	 * @return The configured cluster
+	 * @throws Exception
+	 *             If the hosts could not be added
+	 */
+	protected Cluster buildCluster() throws Exception {
 		//
 		Cluster.Builder builder = Cluster.builder();
 		try {
@@ -112,8 +444,18 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 			builder = builder.withCompression(getCompression());
 			// Retry
 			builder = builder.withRetryPolicy(getRetryPolicy());
+			// Load Balancing
+			builder = builder.withLoadBalancingPolicy(getLoadBalancingPolicy());
 			// Reconnection
 			builder = builder.withReconnectionPolicy(getReconnectionPolicy());
+			// Speculative Executions
+			builder = builder.withSpeculativeExecutionPolicy(getSpeculativeExecutionPolicy());
+			// Skip hosts with an open circuit
+			CircuitBreakerPolicy circuitBreakerPolicy = null;
+			if(getHostCircuitBreaker() != null) {
+				circuitBreakerPolicy = new CircuitBreakerPolicy(getLoadBalancingPolicy(), getHostCircuitBreaker());
+				builder = builder.withLoadBalancingPolicy(circuitBreakerPolicy);
+			}
 			// Credentials - don't store in class but only configure
 			if(this.config.getObject("credentials") != null) {
 				JsonObject credentials = this.config.getObject("credentials");
@@ -125,53 +467,116 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 			}
 			// Query Options
 			builder.withQueryOptions(getQueryOptions());
+			// Socket Options
+			builder.withSocketOptions(getSocketOptions());
+			// Netty transport
+			if(getTransportOptions() != null) {
+				builder.withNettyOptions(getTransportOptions());
+			}
+			// Eagerly opened core connections
+			if(getWarmup() != null) {
+				builder.withPoolingOptions(getWarmup().configure(new PoolingOptions()));
+			}
 			// Only supporting Cassandra > 2
 			builder.withProtocolVersion(PROTOCOL_VERSION);
 			//
-			setCluster(builder.build());
+			Cluster cluster = builder.build();
+			// The percentile tracker has to measure all requests to derive the delay
+			if(getPercentileTracker() != null) {
+				cluster.register(getPercentileTracker());
+			}
+			// As do the host circuits
+			if(circuitBreakerPolicy != null) {
+				cluster.register((LatencyTracker) circuitBreakerPolicy);
+			}
+			// And the retry budget
+			if(getRetryPolicy() instanceof BudgetedRetryPolicy) {
+				cluster.register((LatencyTracker) getRetryPolicy());
+			}
+			return cluster;
 
 		} catch(Exception e) {
 			logger.error("[Cassandra Persistor] Cannot add hosts " + getHosts(), e);
-			return;
+			throw e;
 		}
+	}
 
-		//
+	/**
+	 * Re-prepare the most used statements of the last snapshot into the prepared statement cache. The statements are
+	 * prepared in chunks of the prepare concurrency, one chunk per context turn, so messages arriving meanwhile are
+	 * handled in between instead of waiting for the whole restore.
+	 */
+	protected void restoreStatementCatalogue() {
+		final List<String> statements;
 		try {
-			//
-			Metadata metadata = getCluster().getMetadata();
-			logger.info("[Cassandra Persistor] Connected to cluster: " + metadata.getClusterName());
-			//
-			for(Host host : metadata.getAllHosts()) {
-				logger.info("[Cassandra Persistor] DC: " + host.getDatacenter() + " - Host: " + host.getAddress() + " - Rack: " + host.getRack());
-			}
-
-			//Get Session and add it to Cache
-			setSession(connect(getKeyspace()));
-			setPreparedStatementCache(new PreparedStatementCache(getOptionalIntConfig("prepStmtCacheSize", Integer.MAX_VALUE), getSession(), container.logger()));
-
+			statements = getStatementCatalogue().load();
 		} catch(Exception e) {
-			logger.error("[Cassandra Persistor] Cannot connect/get session from Cassandra!", e);
+			logger.warn("[Cassandra Persistor] Cannot restore prepared statements from " + getStatementCatalogue().getFile(), e);
+			return;
+		}
+		if(statements.isEmpty()) {
 			return;
 		}
 
 		//
-		eb.registerHandler(getAddress(), this);
-		//
-		container.deployWorkerVerticle(BatchActionsProcessor.class.getName(), container.config());
+		vertx.runOnContext(new Handler<Void>() {
+			/** The index of the next chunk */
+			private int next;
 
-		//
-		logger.info("[Cassandra Persistor] ...booted!");
+			/** The amount of restored statements */
+			private int restored;
+
+			@Override
+			public void handle(Void event) {
+				List<String> chunk = statements.subList(this.next, Math.min(this.next + Math.max(getPrepareConcurrency(), 1), statements.size()));
+				this.next += chunk.size();
+				try {
+					for(Exception failure : getPreparedStatementCache().addAll(chunk, getPrepareConcurrency()).values()) {
+						if(failure == null) {
+							this.restored++;
+						}
+					}
+
+				} catch(Exception e) {
+					logger.warn("[Cassandra Persistor] Cannot restore prepared statements from " + getStatementCatalogue().getFile(), e);
+					return;
+				}
+
+				//
+				if(this.next < statements.size()) {
+					vertx.runOnContext(this);
+				} else {
+					logger.info("[Cassandra Persistor] Restored " + this.restored + "/" + statements.size() + " prepared statements from " + getStatementCatalogue().getFile());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Snapshot the prepared statement cache into the catalogue file.
+	 */
+	protected void saveStatementCatalogue() {
+		try {
+			int saved = getStatementCatalogue().save(getPreparedStatementCache());
+			if(logger.isDebugEnabled()) {
+				logger.debug("[Cassandra Persistor] Saved " + saved + " prepared statements to " + getStatementCatalogue().getFile());
+			}
+
+		} catch(Exception e) {
+			logger.warn("[Cassandra Persistor] Cannot save prepared statements to " + getStatementCatalogue().getFile(), e);
+		}
 	}
 
 	/**
-	 * Establish a connection to the configured cluster with a given keyspace
+	 * Establish a connection to the given cluster with a given keyspace
 	 * or none (empty string configured)
 	 * 
+	 * @param cluster
 	 * @param keyspace
 	 * @return Session - A connected Cluster Session 
 	 */
-	private Session connect(String keyspace) {
-		return (keyspace == null || keyspace == "") ? getCluster().connect() : getCluster().connect(keyspace);
+	private Session connect(Cluster cluster, String keyspace) {
+		return (keyspace == null || keyspace.isEmpty()) ? cluster.connect() : cluster.connect(keyspace);
 	}
 
 	/**
@@ -179,6 +584,79 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 	 */
 	@Override
 	public void handle(Message<JsonObject> message) {
+		if(getScheduler() == null) {
+			process(message);
+			return;
+		}
+
+		// Queue in the lane of the priority address or field and let the callers take turns
+		String lane = getPriorityAddress().equals(message.address()) ? PRIORITY_LANE : message.body().getString("priority");
+		if(!getScheduler().offer(lane, message.body().getString("caller"), message)) {
+			sendError(message, new OverloadedException(getScheduler().size()));
+			return;
+		}
+		drain();
+	}
+
+	/**
+	 * Process the queued messages one per context turn, so messages arriving meanwhile are queued and take their turn
+	 * before the rest of a long queue.
+	 */
+	protected void drain() {
+		if(this.draining) {
+			return;
+		}
+		this.draining = true;
+		vertx.runOnContext(new Handler<Void>() {
+			@Override
+			public void handle(Void event) {
+				Message<JsonObject> message = getScheduler().poll();
+				if(message != null) {
+					process(message);
+				}
+				//
+				if(getScheduler().isEmpty()) {
+					draining = false;
+				} else {
+					vertx.runOnContext(this);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Process a message once its caller is within its rate limit.
+	 * 
+	 * @param message
+	 */
+	protected void process(final Message<JsonObject> message) {
+		// Callers exceeding their rate wait on a timer without blocking this instance or are rejected
+		if(getCallerRateLimiter() != null) {
+			String caller = message.body().getString("caller", "");
+			long delay = getCallerRateLimiter().acquire(caller, isRateLimitDelay() ? getRateLimitMaxDelay() : 0);
+			if(delay < 0) {
+				sendError(message, new RateLimitedException("caller " + caller));
+				return;
+			}
+			if(delay > 0) {
+				vertx.setTimer(delay, new Handler<Long>() {
+					@Override
+					public void handle(Long timerId) {
+						dispatch(message);
+					}
+				});
+				return;
+			}
+		}
+		dispatch(message);
+	}
+
+	/**
+	 * Process a message by its action.
+	 * 
+	 * @param message
+	 */
+	protected void dispatch(Message<JsonObject> message) {
 		//
 		String action = message.body().getString("action");
 
@@ -189,6 +667,7 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 		}
 
 		//
+		startDeadline(getTimeout(message));
 		try {
 			switch(action) {
 				// Channel the raw statements
@@ -203,6 +682,28 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 				case "prepare":
 					prepare(message);
 					break;
+				// Map entities to tables
+				case "save":
+					save(message);
+					break;
+				case "find":
+					find(message);
+					break;
+				case "delete":
+					delete(message);
+					break;
+				// Aggregated counter updates
+				case "increment":
+					increment(message);
+					break;
+				// Conditional writes
+				case "cas":
+					cas(message);
+					break;
+				// Describe the schema
+				case "describe":
+					describe(message);
+					break;
 
 				default:
 					sendError(message, "[Cassandra Persistor] Action '" + action + "' unknown!");
@@ -211,6 +712,9 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 			//
 		} catch(Exception e) {
 			sendError(message, e);
+		} finally {
+			startDeadline(0);
+			releaseKeyspaceSessions(takeKeyspaceSessions());
 		}
 	}
 
@@ -220,16 +724,53 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 	 * 
 	 * @param message
 	 */
-	protected void prepared(Message<JsonObject> message) {
+	protected void prepared(final Message<JsonObject> message) {
 		//
 		JsonObject preparedMessage = message.body();
 
-		//
-		String statement = preparedMessage.getString("statement");
+		// Resolve statements referenced by id without hashing their CQL text
+		CassandraPreparedStatement cachedStatement = null;
+		String statement;
+		if(preparedMessage.containsField("statementId")) {
+			cachedStatement = getPreparedStatementCache(message).getById(preparedMessage.getString("statementId"));
+			if(cachedStatement == null) {
+				sendError(message, "[Cassandra Persistor] Unknown statementId " + preparedMessage.getString("statementId") + ", please prepare the statement again!");
+				return;
+			}
+			statement = cachedStatement.getPreparedStatement().getQueryString();
+
+		} else {
+			statement = preparedMessage.getString("statement");
+		}
 		JsonArray values = preparedMessage.getArray("values");
+		boolean select = CqlUtils.isSelect(statement);
+		// Reads are idempotent if not stated otherwise
+		boolean idempotent = preparedMessage.getBoolean("idempotent", select);
+
+		// Reply the result as streamed JSON Buffer instead of JsonArray
+		final boolean buffer = preparedMessage.getBoolean("buffer", false);
+
+		// Serve opted in reads from the result cache if present
+		String cacheKey = null;
+		long cacheGeneration = 0;
+		if(select && getResultCache() != null && (preparedMessage.getBoolean("cache", false) || preparedMessage.containsField("cacheTtl"))) {
+			// Unqualified statements may address the same table name in different keyspaces
+			cacheKey = ResultCache.key(getKeyspace(message) + ":" + statement, values);
+			// Captured before the read, so a write during the read keeps its result out of the cache
+			cacheGeneration = getResultCache().getGeneration(CqlUtils.getTable(statement, getKeyspace(message)));
+			JsonArray cachedResult = getResultCache().get(cacheKey);
+			if(cachedResult != null) {
+				if(buffer) {
+					message.reply(new Buffer(cachedResult.encode()));
+				} else {
+					message.reply(cachedResult);
+				}
+				return;
+			}
+		}
 
 		//
-		PreparedStatement preparedStmt = getPreparedStatementCache().addAndGet(statement);
+		PreparedStatement preparedStmt = cachedStatement != null ? cachedStatement.useAndGet() : getPreparedStatementCache(message).addAndGet(statement, getRemainingTimeout());
 
 		//
 		BatchStatement query = new BatchStatement();
@@ -238,30 +779,66 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 			//
 			JsonArray valueList = values.get(i);
 			//
-			query.add(preparedStmt.bind(parseArray(valueList.toArray())));
+			query.add(preparedStmt.bind(parseArray(valueList.toArray())).setIdempotent(idempotent));
 		}
+		query.setIdempotent(idempotent);
 				
 		//
-		if(statement.trim().toLowerCase().startsWith("select")) {
+		if(select) {
 			//
-			JsonArray retVals = new JsonArray();
+			final List<ResultSet> resultSets = new ArrayList<>();
+			boolean failed = false;
+			int rows = 0;
 			//
 			for(Statement stmt : query.getStatements()) {
 				ResultSet resultSet = execute(stmt, message);
 				// Error or empty => Continue
 				if(resultSet == null || resultSet.getAvailableWithoutFetching() <= 0) {
+					failed |= resultSet == null;
 					continue;
 				}
 
 				//
-				processResult(resultSet, retVals);
+				resultSets.add(resultSet);
+				rows += resultSet.getAvailableWithoutFetching();
 			}
-			// Return the result array
-			message.reply(retVals);
+
+			// Only complete results are cached (streamed results are not kept as JsonArray)
+			final String resultCacheKey = failed || buffer ? null : cacheKey;
+			final String table = CqlUtils.getTable(statement, getKeyspace(message));
+			final long cacheTtl = getResultCache() != null ? preparedMessage.getLong("cacheTtl", getResultCache().getTtl()) : 0;
+			final long generation = cacheGeneration;
+			//
+			mapResult(message, rows, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					//
+					if(buffer) {
+						return getJsonResultWriter().write(resultSets);
+					}
+
+					//
+					JsonArray retVals = new JsonArray();
+					for(ResultSet resultSet : resultSets) {
+						processResult(resultSet, retVals);
+					}
+					return retVals;
+				}
+			}, new Handler<Object>() {
+				@Override
+				public void handle(Object retVals) {
+					// Not cached if the table was written meanwhile
+					if(resultCacheKey != null) {
+						getResultCache().put(resultCacheKey, table, (JsonArray) retVals, cacheTtl, generation);
+					}
+				}
+			});
 
 		} else {
 			//
-			if(execute(query, message) != null) {
+			ResultSet resultSet = executeWrite(query, message, new JsonObject().putString("statement", statement).putArray("values", values));
+			invalidateResultCache(statement, getKeyspace(message));
+			if(resultSet != null) {
 				sendOK(message);
 			}
 		}
@@ -276,15 +853,20 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 	private void prepare(Message<JsonObject> message) {
 		JsonObject prepareMessage = message.body();
 
+		Map<String, Exception> failures;
 		try {
 			if(prepareMessage.containsField("statement")) {
-				getPreparedStatementCache().add(prepareMessage.getString("statement"));
+				CassandraPreparedStatement cachedStatement = getPreparedStatementCache(message).add(prepareMessage.getString("statement"), getRemainingTimeout());
+				sendOK(message, new JsonObject().putString("statementId", cachedStatement.getId()));
+				return;
+			}
 
-			} else {
-				// Note: If more statements than cache size are entered, the
-				// ladder will replace the earlier
-				getPreparedStatementCache().addAll(prepareMessage.getArray("statements").toList());
+			// Pipeline all PREPARE requests instead of a round trip per statement
+			List<String> statements = new ArrayList<>();
+			for(Object statement : prepareMessage.getArray("statements")) {
+				statements.add(String.valueOf(statement));
 			}
+			failures = getPreparedStatementCache(message).addAll(statements, getPrepareConcurrency(), getRemainingTimeout());
 
 		} catch(Exception e) {
 			// An error happened
@@ -292,8 +874,31 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 			return;
 		}
 
+		// Report per statement to not fail all for a single broken one
+		JsonArray results = new JsonArray();
+		boolean failed = false;
+		for(Entry<String, Exception> failure : failures.entrySet()) {
+			JsonObject result = new JsonObject().putString("statement", failure.getKey());
+			if(failure.getValue() == null) {
+				result.putString("status", "ok");
+				// Statements beyond the cache size may already be replaced
+				CassandraPreparedStatement cachedStatement = getPreparedStatementCache(message).get(failure.getKey());
+				if(cachedStatement != null) {
+					result.putString("statementId", cachedStatement.getId());
+				}
+			} else {
+				failed = true;
+				result.putString("status", "error").putString("message", failure.getValue().getMessage());
+			}
+			results.addObject(result);
+		}
+
 		//
-		sendOK(message);
+		if(failed) {
+			message.reply(new JsonObject().putString("status", "error").putString("message", "[Cassandra Persistor] Could not prepare all queries from " + prepareMessage + "!").putArray("results", results));
+		} else {
+			sendOK(message, new JsonObject().putArray("results", results));
+		}
 	}
 
 	/**
@@ -301,17 +906,21 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 	 * 
 	 * @param message
 	 */
-	protected void raw(Message<JsonObject> message) {
+	protected void raw(final Message<JsonObject> message) {
 		//
-		JsonObject rawMessage = message.body();
+		final JsonObject rawMessage = message.body();
 
 		//
 		Statement query = null;
+		JsonObject spoolEntry = null;
 		try {
 			String statement = rawMessage.getString("statement");
 			//
 			if(statement != null) {
-				query = new SimpleStatement(statement);
+				query = new SimpleStatement(statement).setIdempotent(rawMessage.getBoolean("idempotent", CqlUtils.isSelect(statement)));
+				if(!CqlUtils.isSelect(statement)) {
+					spoolEntry = new JsonObject().putString("statement", statement);
+				}
 
 			} else {
 				// Batch
@@ -320,6 +929,8 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 				for(Object stmt : statements) {
 					((BatchStatement) query).add(new SimpleStatement(stmt.toString()));
 				}
+				query.setIdempotent(rawMessage.getBoolean("idempotent", false));
+				spoolEntry = new JsonObject().putArray("statements", statements);
 			}
 
 		} catch(Exception e) {
@@ -329,7 +940,15 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 		}
 
 		//
-		ResultSet resultSet = execute(query, message);
+		final ResultSet resultSet = executeWrite(query, message, spoolEntry);
+		// Raw writes bypass prepared but must invalidate cached reads as well
+		if(rawMessage.getString("statement") != null) {
+			invalidateResultCache(rawMessage.getString("statement"), getKeyspace(message));
+		} else {
+			for(Object stmt : rawMessage.getArray("statements")) {
+				invalidateResultCache(stmt.toString(), getKeyspace(message));
+			}
+		}
 		//
 		if(resultSet == null) {
 			return;
@@ -342,454 +961,2202 @@ public class CassandraPersistor extends BusModBase implements Handler<Message<Js
 		}
 
 		// Return the result array
-		message.reply(processResult(resultSet, new JsonArray()));
+		mapResult(message, resultSet.getAvailableWithoutFetching(), new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				if(rawMessage.getBoolean("buffer", false)) {
+					return getJsonResultWriter().write(Collections.singletonList(resultSet));
+				}
+				return processResult(resultSet, new JsonArray());
+			}
+		});
 	}
 
 	/**
-	 * Execute the given statement, return the resultset and send an error in case of issues
+	 * Saves one or multiple JSON entities into the mapped table. Entity fields are bound by column name.
 	 * 
-	 * @param statement
-	 *            The Query to execute
 	 * @param message
-	 *            The Message to reply to in case of errors
-	 * @return
 	 */
-	protected ResultSet execute(Statement statement, Message<JsonObject> message) {
-		ResultSet resultSet = null;
+	protected void save(Message<JsonObject> message) {
+		//
+		JsonObject saveMessage = message.body();
+
+		//
+		BatchStatement query = new BatchStatement();
+		String statement = null;
 		try {
-			resultSet = getSession().execute(statement);
+			TableMapping tableMapping = getTableMapping(saveMessage.getString("table"), getKeyspace(message));
+			JsonArray entities = saveMessage.containsField("entity") ? new JsonArray().addObject(saveMessage.getObject("entity")) : saveMessage.getArray("entities");
+			//
+			for(Object entity : entities) {
+				BitSet columns = tableMapping.getColumns((JsonObject) entity);
+				statement = tableMapping.getInsertStatement(columns);
+				query.add(getPreparedStatementCache().addAndGet(statement, getRemainingTimeout()).bind(tableMapping.bind((JsonObject) entity, columns, getDateFormatter())));
+			}
+			// Plain inserts can be repeated safely
+			query.setIdempotent(saveMessage.getBoolean("idempotent", true));
 
 		} catch(Exception e) {
-			// An error happened
-			sendError(message, e);
+			sendError(message, "[Cassandra Persistor] Could not create save statement from " + saveMessage + "!", e);
+			return;
 		}
 
-		return resultSet;
+		//
+		if(execute(query, message) != null) {
+			invalidateResultCache(statement, getKeyspace(message));
+			sendOK(message);
+		}
 	}
 
 	/**
-	 * Iterate over a resultSet and all fields and values to prepare these into an JsonArray of JsonObjects per row.
+	 * Finds all rows of the mapped table by a (partial) primary key and returns them like a raw SELECT.
 	 * 
-	 * @param resultSet
-	 *            The results to iterate over
-	 * @param retVals
-	 *            The JsonArray to add the JsonObjects processed per row
-	 * @return
+	 * @param message
 	 */
-	protected JsonArray processResult(ResultSet resultSet, JsonArray retVals) {
-		// Iterate the results
-		for(Row row : resultSet) {
-			// Row result
-			JsonObject retVal = new JsonObject();
-
-			// Get the column definitions to iterate over the different types
-			// and check
-			ColumnDefinitions rowColumnDefinitions = row.getColumnDefinitions();
-			for(int i = 0; i < rowColumnDefinitions.size(); i++) {
-				// Null empty columns
-				if(row.isNull(i)) {
-					continue;
-				}
-
-				// Read the column bytes unsafe and operate on the deserialized
-				// object instead of iterating over the
-				// type of the definitions
-				Object columnValue = rowColumnDefinitions.getType(i).deserialize(row.getBytesUnsafe(i), PROTOCOL_VERSION);
+	protected void find(final Message<JsonObject> message) {
+		//
+		final JsonObject findMessage = message.body();
 
-				// Parse the returning object to a supported type
-				retVal = addRow(rowColumnDefinitions.getName(i), columnValue, retVal);
-			}
+		//
+		Statement query;
+		try {
+			TableMapping tableMapping = getTableMapping(findMessage.getString("table"), getKeyspace(message));
+			JsonObject key = findMessage.getObject("key");
+			int keyColumns = tableMapping.getKeyColumns(key);
+			//
+			query = getPreparedStatementCache().addAndGet(tableMapping.getSelectStatement(keyColumns), getRemainingTimeout()).bind(tableMapping.bindKey(key, keyColumns, getDateFormatter()));
+			query.setIdempotent(true);
 
-			// Add the row
-			retVals.addObject(retVal);
+		} catch(Exception e) {
+			sendError(message, "[Cassandra Persistor] Could not create find statement from " + findMessage + "!", e);
+			return;
 		}
 
 		//
-		return retVals;
+		final ResultSet resultSet = execute(query, message);
+		if(resultSet == null) {
+			return;
+		}
+
+		// Nothing found
+		if(resultSet.getAvailableWithoutFetching() <= 0) {
+			message.reply(new JsonArray());
+			return;
+		}
+
+		//
+		mapResult(message, resultSet.getAvailableWithoutFetching(), new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				if(findMessage.getBoolean("buffer", false)) {
+					return getJsonResultWriter().write(Collections.singletonList(resultSet));
+				}
+				return processResult(resultSet, new JsonArray());
+			}
+		});
 	}
 
 	/**
-	 * Parses the given array of Objects to identify UUID and Date strings to replace them with the native object.
-	 * Nothing else is changed.
+	 * Deletes all rows of the mapped table by a (partial) primary key.
 	 * 
-	 * @param valueArray
-	 *            The array to look for UUIDs and Dates
-	 * @return
+	 * @param message
 	 */
-	protected Object[] parseArray(Object[] valueArray) {
+	protected void delete(Message<JsonObject> message) {
 		//
-		for(int j = 0; j < valueArray.length; j++) {
+		JsonObject deleteMessage = message.body();
+
+		//
+		String statement;
+		Statement query;
+		try {
+			TableMapping tableMapping = getTableMapping(deleteMessage.getString("table"), getKeyspace(message));
+			JsonObject key = deleteMessage.getObject("key");
+			int keyColumns = tableMapping.getKeyColumns(key);
 			//
-			if(valueArray[j] instanceof String) {
-				try {
-					valueArray[j] = UUID.fromString((String) valueArray[j]);
-					continue;
-				} catch(Exception e) {
-				}
+			statement = tableMapping.getDeleteStatement(keyColumns);
+			query = getPreparedStatementCache().addAndGet(statement, getRemainingTimeout()).bind(tableMapping.bindKey(key, keyColumns, getDateFormatter()));
+			query.setIdempotent(deleteMessage.getBoolean("idempotent", true));
 
-				try {
-					valueArray[j] = dateFormatter.parse((String) valueArray[j]);
-					continue;
-				} catch(Exception e) {
-				}
+		} catch(Exception e) {
+			sendError(message, "[Cassandra Persistor] Could not create delete statement from " + deleteMessage + "!", e);
+			return;
+		}
+
+		//
+		if(execute(query, message) != null) {
+			invalidateResultCache(statement, getKeyspace(message));
+			sendOK(message);
+		}
+	}
+
+	/**
+	 * Adds deltas to counters of a counter table. The deltas are aggregated per counter and primary key and flushed
+	 * periodically or once the buffer is full, the message is acknowledged once buffered.
+	 * 
+	 * @param message
+	 */
+	protected void increment(Message<JsonObject> message) {
+		//
+		JsonObject incrementMessage = message.body();
+
+		//
+		boolean full = false;
+		try {
+			TableMapping tableMapping = getTableMapping(incrementMessage.getString("table"), getKeyspace(message));
+			JsonObject key = incrementMessage.getObject("key");
+			if(tableMapping.getKeyColumns(key) != tableMapping.getPrimaryKeySize()) {
+				throw new IllegalArgumentException("Counters require the full primary key of " + tableMapping.getName());
+			}
+			Object[] keyValues = tableMapping.bindKey(key, tableMapping.getPrimaryKeySize(), getDateFormatter());
+
+			//
+			JsonObject deltas = incrementMessage.containsField("columns") ? incrementMessage.getObject("columns") : new JsonObject().putNumber(incrementMessage.getString("column"), incrementMessage.getLong("delta", 1));
+			for(String column : deltas.getFieldNames()) {
+				full |= getCounterBuffer().add(tableMapping.getCounterStatement(column), keyValues, deltas.getLong(column));
 			}
+
+		} catch(Exception e) {
+			sendError(message, "[Cassandra Persistor] Could not increment counters from " + incrementMessage + "!", e);
+			return;
 		}
 
 		//
-		return valueArray;
+		sendOK(message);
+		if(full) {
+			flushCounters();
+		}
 	}
 
 	/**
-	 * Process the different types of values possible.
+	 * Write all aggregated counter increments as counter batches. Increments of batches failing without reaching any
+	 * host are kept for the next flush, others are lost as their outcome is unknown.
+	 */
+	protected void flushCounters() {
+		if(getCounterBuffer().size() == 0) {
+			return;
+		}
+
+		//
+		List<Entry<CounterBuffer.Counter, Long>> increments = getCounterBuffer().drain();
+		for(int from = 0; from < increments.size(); from += getCounterBatchSize()) {
+			List<Entry<CounterBuffer.Counter, Long>> batch = increments.subList(from, Math.min(from + getCounterBatchSize(), increments.size()));
+			//
+			BatchStatement query = new BatchStatement(BatchStatement.Type.COUNTER);
+			try {
+				for(Entry<CounterBuffer.Counter, Long> increment : batch) {
+					Object[] key = increment.getKey().getKey();
+					Object[] values = new Object[key.length + 1];
+					values[0] = increment.getValue();
+					System.arraycopy(key, 0, values, 1, key.length);
+					query.add(getPreparedStatementCache().addAndGet(increment.getKey().getStatement()).bind(values));
+				}
+				execute(query, getSession());
+				//
+				for(Entry<CounterBuffer.Counter, Long> increment : batch) {
+					invalidateResultCache(increment.getKey().getStatement(), getKeyspace());
+				}
+
+			} catch(NoHostAvailableException | CircuitOpenException | RateLimitedException e) {
+				logger.warn("[Cassandra Persistor] Cannot flush " + batch.size() + " counters, retrying with the next flush: " + e.getMessage());
+				for(Entry<CounterBuffer.Counter, Long> increment : batch) {
+					getCounterBuffer().add(increment.getKey().getStatement(), increment.getKey().getKey(), increment.getValue());
+				}
+
+			} catch(Exception e) {
+				logger.error("[Cassandra Persistor] Cannot flush " + batch.size() + " counters!", e);
+			}
+		}
+	}
+
+	/**
+	 * Executes a lightweight transaction (conditional write) and returns whether it was applied together with the
+	 * current values if not. Paxos contention (CAS write timeouts) is retried after a jittered backoff.
 	 * 
-	 * @param columnName
-	 *            The column name to add to the JsonObject row
-	 * @param columnValue
-	 *            The value to identify, process and add to the JsonObject row
-	 * @param retVal
-	 *            The JsonObject to maintain the row values
-	 * @return The JsonObject representing this row entry
+	 * @param message
 	 */
-	protected JsonObject addRow(String columnName, Object columnValue, JsonObject retVal) {
+	protected void cas(final Message<JsonObject> message) {
 		//
-		if(columnValue instanceof Number) {
-			retVal.putNumber(columnName, (Number) columnValue);
+		JsonObject casMessage = message.body();
 
-		} else if(columnValue instanceof String) {
-			retVal.putString(columnName, (String) columnValue);
+		//
+		final Statement query;
+		try {
+			JsonArray values = casMessage.getArray("values", new JsonArray());
+			query = getPreparedStatementCache(message).addAndGet(casMessage.getString("statement"), getRemainingTimeout()).bind(parseArray(values.toArray()));
+			query.setSerialConsistencyLevel(casMessage.containsField("serialConsistency") ? ConsistencyLevel.valueOf(casMessage.getString("serialConsistency").toUpperCase()) : getCasSerialConsistency());
+			// Paxos rounds must not be raced against each other
+			query.setIdempotent(false);
 
-		} else if(columnValue instanceof Boolean) {
-			retVal.putBoolean(columnName, (Boolean) columnValue);
+		} catch(Exception e) {
+			sendError(message, "[Cassandra Persistor] Could not create conditional statement from " + casMessage + "!", e);
+			return;
+		}
 
-		} else if(columnValue instanceof Date) {
-			retVal.putString(columnName, ((Date) columnValue).toString());
+		//
+		cas(message, query, 0);
+	}
 
-		} else if(columnValue instanceof UUID) {
-			retVal.putString(columnName, ((UUID) columnValue).toString());
+	/**
+	 * Execute the given conditional statement, retrying CAS write timeouts up to the configured amount of times.
+	 * 
+	 * @param message
+	 * @param query
+	 * @param attempt
+	 */
+	protected void cas(final Message<JsonObject> message, final Statement query, final int attempt) {
+		ResultSet resultSet;
+		try {
+			resultSet = execute(query, getSession(message), getRemainingTimeout());
 
-		} else if(columnValue instanceof ByteBuffer) {
-			byte[] retValBuffer = new byte[((ByteBuffer) columnValue).remaining()];
-			((ByteBuffer) columnValue).get(retValBuffer);
-			addRow(columnName, retValBuffer, retVal);
+		} catch(WriteTimeoutException e) {
+			// Contention or a slow Paxos round, the outcome is unknown
+			if(e.getWriteType() != WriteType.CAS || attempt >= getCasRetries()) {
+				sendError(message, e);
+				return;
+			}
+			// The backoff counts against the deadline of the message
+			long delay = getCasBackoff().delay(attempt);
+			final long timeout = this.timeout;
+			final long deadline = this.deadline;
+			if(timeout > 0 && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) >= deadline) {
+				sendError(message, new RequestTimeoutException(timeout));
+				return;
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("[Cassandra Persistor] CAS timeout, retrying attempt " + (attempt + 1) + " in " + delay + "ms");
+			}
+			vertx.setTimer(delay, new Handler<Long>() {
+				@Override
+				public void handle(Long timerId) {
+					CassandraPersistor.this.timeout = timeout;
+					CassandraPersistor.this.deadline = deadline;
+					try {
+						cas(message, query, attempt + 1);
+					} finally {
+						startDeadline(0);
+						releaseKeyspaceSessions(takeKeyspaceSessions());
+					}
+				}
+			});
+			return;
 
-		} else if(columnValue instanceof byte[]) {
-			retVal.putBinary(columnName, (byte[]) columnValue);
+		} catch(Exception e) {
+			sendError(message, e);
+			return;
+		}
 
-		} else if(columnValue instanceof Collection<?>) {
-			retVal.putArray(columnName, addCollection((Collection<?>) columnValue, new JsonArray()));
+		//
+		invalidateResultCache(message.body().getString("statement"), getKeyspace(message));
+		JsonObject reply = new JsonObject().putBoolean("applied", resultSet.wasApplied()).putNumber("attempts", attempt + 1);
+		// Not applied conditions return the current values
+		if(!resultSet.wasApplied()) {
+			JsonArray rows = processResult(resultSet, new JsonArray());
+			JsonObject values = rows.size() > 0 ? (JsonObject) rows.get(0) : new JsonObject();
+			values.removeField("[applied]");
+			reply.putObject("values", values);
+		}
+		sendOK(message, reply);
+	}
 
-		} else if(columnValue instanceof Map<?, ?>) {
-			//
-			JsonObject retMap = new JsonObject();
-			//
-			Map<?, ?> columnValueMap = (Map<?, ?>) columnValue;
-			for(Entry<?, ?> entry : columnValueMap.entrySet()) {
-				addRow(entry.getKey().toString(), entry.getValue(), retMap);
+	/**
+	 * Describes the keyspaces, a keyspace or a table from the schema cache.
+	 * 
+	 * @param message
+	 */
+	protected void describe(Message<JsonObject> message) {
+		//
+		String keyspace = message.body().getString("keyspace");
+		String table = message.body().getString("table");
+		if(table != null && table.contains(".")) {
+			keyspace = table.substring(0, table.indexOf('.'));
+			table = table.substring(table.indexOf('.') + 1);
+		} else if(table != null && keyspace == null) {
+			keyspace = getKeyspace();
+		}
+
+		//
+		JsonObject description = getSharedSession().getSchemaCache().describe(keyspace, table);
+		if(description == null) {
+			sendError(message, "[Cassandra Persistor] Unknown " + (table != null ? "table " + keyspace + "." + table : "keyspace " + keyspace) + "!");
+			return;
+		}
+		sendOK(message, description);
+	}
+
+	/**
+	 * Refresh the schema cache from the cluster metadata and invalidate all cached statements, mappings and results of
+	 * changed tables.
+	 */
+	protected void refreshSchema() {
+		try {
+			Set<String> changed = getSharedSession().getSchemaCache().refresh(getCluster().getMetadata());
+			if(changed.isEmpty()) {
+				return;
 			}
 
 			//
-			retVal.putObject(columnName, retMap);
+			int statements = 0;
+			for(PreparedStatementCache preparedStatementCache : getSharedSession().getPreparedStatementCaches()) {
+				statements += preparedStatementCache.invalidate(changed, preparedStatementCache.getSession().getLoggedKeyspace());
+			}
+			for(String table : changed) {
+				getSharedSession().getTableMappings().remove(table);
+				if(getResultCache() != null) {
+					getResultCache().invalidate(table);
+				}
+			}
+			logger.info("[Cassandra Persistor] Schema of " + changed + " changed, removed " + statements + " prepared statements");
 
-		} else {
-			// If nothing works, try to add the object directly but catch if not
+		} catch(Exception e) {
+			logger.warn("[Cassandra Persistor] Cannot refresh schema metadata", e);
+		}
+	}
+
+	/**
+	 * Get the mapping of the given table, resolved once from the cluster metadata and shared by all instances.
+	 * 
+	 * @param table
+	 *            The table name, qualified with its keyspace or in the given keyspace
+	 * @param keyspace
+	 *            The keyspace of unqualified table names
+	 * @return The table mapping
+	 * @throws IllegalArgumentException
+	 *             If the table does not exist
+	 */
+	protected TableMapping getTableMapping(String table, String keyspace) {
+		if(table == null) {
+			throw new IllegalArgumentException("Please specify a table!");
+		}
+
+		//
+		String name = table.contains(".") ? table : keyspace + "." + table;
+		TableMapping tableMapping = getSharedSession().getTableMappings().get(name);
+		if(tableMapping != null) {
+			return tableMapping;
+		}
+
+		//
+		String[] parts = name.split("\\.", 2);
+		KeyspaceMetadata keyspaceMetadata = getCluster().getMetadata().getKeyspace(parts[0]);
+		TableMetadata tableMetadata = keyspaceMetadata != null ? keyspaceMetadata.getTable(parts[1]) : null;
+		if(tableMetadata == null) {
+			throw new IllegalArgumentException("Unknown table " + name);
+		}
+		//
+		tableMapping = new TableMapping(tableMetadata);
+		getSharedSession().getTableMappings().put(name, tableMapping);
+		return tableMapping;
+	}
+
+	/**
+	 * Map results to their reply without further steps.
+	 * 
+	 * @see #mapResult(Message, int, Callable, Handler)
+	 */
+	protected void mapResult(Message<JsonObject> message, int rows, Callable<Object> mapping) {
+		mapResult(message, rows, mapping, null);
+	}
+
+	/**
+	 * Map results to their reply (JsonArray or Buffer containing the JSON array). Results with at least the configured
+	 * amount of rows are mapped on the mapping pool (if configured) to free this instance for the next message, smaller
+	 * ones directly. The reply is always sent from the context of this instance.
+	 * 
+	 * @param message
+	 *            The Message to reply to
+	 * @param rows
+	 *            The amount of rows to map
+	 * @param mapping
+	 *            The mapping returning the reply
+	 * @param mapped
+	 *            Handler run on the context of this instance with the mapped reply before it is sent (or null)
+	 */
+	protected void mapResult(final Message<JsonObject> message, int rows, final Callable<Object> mapping, final Handler<Object> mapped) {
+		if(getSharedSession().getMappingPool() == null || rows < getMappingPoolMinRows()) {
 			try {
-				retVal.putValue(columnName, columnValue);
+				reply(message, mapping.call(), mapped);
 			} catch(Exception e) {
-				logger.info("[Cassandra Persistor] Could not add value of column " + columnName);
+				sendError(message, e);
 			}
+			return;
 		}
 
-		//
-		return retVal;
+		// A full pool maps on the calling thread again (backpressure). Keyspace sessions may still fetch pages.
+		final Context context = vertx.currentContext();
+		final List<KeyspaceSession> keyspaceSessions = takeKeyspaceSessions();
+		getSharedSession().getMappingPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				Object reply = null;
+				Exception failure = null;
+				try {
+					reply = mapping.call();
+				} catch(Exception e) {
+					failure = e;
+				} finally {
+					releaseKeyspaceSessions(keyspaceSessions);
+				}
+
+				//
+				final Object result = reply;
+				final Exception error = failure;
+				context.runOnContext(new Handler<Void>() {
+					@Override
+					public void handle(Void event) {
+						if(error != null) {
+							sendError(message, error);
+						} else {
+							reply(message, result, mapped);
+						}
+					}
+				});
+			}
+		});
 	}
 
 	/**
-	 * Process the collections (List and Set) and add the values to an array to return.
 	 * 
-	 * @param columnValue
-	 *            The collection of values to iterate and process to be added
-	 * @param retVal
-	 *            The JsonArray to add the values of the collection to
-	 * @return The JsonArray representing these collection values
+	 * @param message
+	 *            The Message to reply to
+	 * @param reply
+	 *            The mapped JsonArray or Buffer
+	 * @param mapped
+	 *            Handler run with the mapped reply before it is sent (or null)
 	 */
-	protected JsonArray addCollection(Collection<?> columnValue, JsonArray retVal) {
-		//
-		for(Object collectionValue : columnValue) {
-			retVal = addToArray(collectionValue, retVal);
+	private void reply(Message<JsonObject> message, Object reply, Handler<Object> mapped) {
+		if(mapped != null) {
+			mapped.handle(reply);
+		}
+		message.reply(reply);
+	}
+
+	/**
+	 * Execute the given statement, return the resultset and send an error in case of issues
+	 * 
+	 * @param statement
+	 *            The Query to execute
+	 * @param message
+	 *            The Message to reply to in case of errors
+	 * @return
+	 */
+	protected ResultSet execute(Statement statement, Message<JsonObject> message) {
+		ResultSet resultSet = null;
+		try {
+			resultSet = execute(statement, getSession(message), getRemainingTimeout());
+
+		} catch(Exception e) {
+			// An error happened
+			sendError(message, e);
+		}
+
+		return resultSet;
+	}
+
+	/**
+	 * Execute the given statement on the given session within the default timeout.
+	 * 
+	 * @param statement
+	 *            The Query to execute
+	 * @param session
+	 *            The session to execute on
+	 * @return
+	 */
+	protected ResultSet execute(Statement statement, Session session) {
+		return execute(statement, session, getDefaultTimeout());
+	}
+
+	/**
+	 * Execute the given statement on the given session, measured by the slow query log if configured.
+	 * 
+	 * @param statement
+	 *            The Query to execute
+	 * @param session
+	 *            The session to execute on
+	 * @param timeout
+	 *            The max time in milliseconds to wait for the response (0 to wait forever)
+	 * @return
+	 * @throws RequestTimeoutException
+	 *             If no response arrived in time
+	 */
+	protected ResultSet execute(Statement statement, Session session, long timeout) {
+		// Only measure if a slow query log, circuit breaker or table rate limit is configured
+		if(getSlowQueryLog() == null && getTableCircuitBreaker() == null && getTableRateLimiter() == null) {
+			return executeWithin(statement, session, timeout);
+		}
+		String table = getTableCircuitBreaker() != null || getTableRateLimiter() != null ? getTable(statement, session.getLoggedKeyspace()) : null;
+
+		// Tables exceeding their rate are rejected
+		if(getTableRateLimiter() != null && table != null) {
+			limitRate(table);
 		}
 
-		//
-		return retVal;
+		// Fail fast instead of waiting for the driver timeout on a failing table
+		String circuit = null;
+		if(getTableCircuitBreaker() != null) {
+			if(table != null) {
+				circuit = "table " + table;
+				if(!getTableCircuitBreaker().allow(circuit)) {
+					throw new CircuitOpenException(circuit);
+				}
+			}
+		}
+
+		//
+		long start = System.nanoTime();
+		ResultSet resultSet;
+		try {
+			resultSet = executeWithin(getSlowQueryLog() != null ? getSlowQueryLog().sample(statement) : statement, session, timeout);
+
+		} catch(RuntimeException e) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			// Invalid statements say nothing about the health of the table
+			if(circuit != null) {
+				getTableCircuitBreaker().record(circuit, elapsed, !(e instanceof QueryValidationException));
+			}
+			if(getSlowQueryLog() != null) {
+				getSlowQueryLog().log(statement, null, e, elapsed, true);
+			}
+			throw e;
+		}
+		//
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if(circuit != null) {
+			getTableCircuitBreaker().record(circuit, elapsed, false);
+		}
+		if(getSlowQueryLog() != null) {
+			getSlowQueryLog().log(statement, resultSet, null, elapsed, true);
+		}
+		return resultSet;
+	}
+
+	/**
+	 * Take a token of the table. Statements are executed synchronously, waiting for a token would block this instance,
+	 * therefore table limits always reject.
+	 * 
+	 * @param table
+	 * @throws RateLimitedException
+	 *             If no token is available
+	 */
+	protected void limitRate(String table) {
+		if(getTableRateLimiter().acquire(table, 0) < 0) {
+			throw new RateLimitedException("table " + table);
+		}
+	}
+
+	/**
+	 * Execute the given statement but stop waiting for its response after the timeout. The driver timeouts only cover
+	 * single connections, a hanging request would block this instance forever otherwise.
+	 * 
+	 * @param statement
+	 *            The Query to execute
+	 * @param session
+	 *            The session to execute on
+	 * @param timeout
+	 *            The max time in milliseconds to wait for the response (0 to wait forever)
+	 * @return
+	 * @throws RequestTimeoutException
+	 *             If no response arrived in time
+	 */
+	protected ResultSet executeWithin(Statement statement, Session session, long timeout) {
+		if(timeout <= 0) {
+			return session.execute(statement);
+		}
+
+		//
+		ResultSetFuture future = session.executeAsync(statement);
+		try {
+			return future.getUninterruptibly(timeout, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException e) {
+			future.cancel(true);
+			throw new RequestTimeoutException(timeout);
+		}
+	}
+
+	/**
+	 * 
+	 * @param message
+	 * @return The timeout of the message, its action or the default timeout in milliseconds
+	 */
+	protected long getTimeout(Message<JsonObject> message) {
+		Long actionTimeout = getActionTimeouts().get(message.body().getString("action"));
+		return message.body().getLong("timeout", actionTimeout != null ? actionTimeout : getDefaultTimeout());
+	}
+
+	/**
+	 * Start the deadline of the message about to be processed. Preparing, connecting to a keyspace, executing and
+	 * backing off all count against it.
+	 * 
+	 * @param timeout
+	 *            The timeout of the message in milliseconds (0 for none)
+	 */
+	protected void startDeadline(long timeout) {
+		this.timeout = timeout;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+	}
+
+	/**
+	 * 
+	 * @return The time in milliseconds left until the deadline of the message currently processed (0 for none)
+	 * @throws RequestTimeoutException
+	 *             If the deadline passed
+	 */
+	protected long getRemainingTimeout() {
+		if(this.timeout <= 0) {
+			return 0;
+		}
+
+		//
+		long remaining = TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime());
+		if(remaining <= 0) {
+			throw new RequestTimeoutException(this.timeout);
+		}
+		return remaining;
+	}
+
+	/**
+	 * 
+	 * @param statement
+	 * @param keyspace
+	 *            The keyspace of unqualified statements
+	 * @return The table addressed by the (first statement of a batch) statement or null if unknown
+	 */
+	protected String getTable(Statement statement, String keyspace) {
+		if(statement instanceof BatchStatement) {
+			Collection<Statement> statements = ((BatchStatement) statement).getStatements();
+			return statements.isEmpty() ? null : getTable(statements.iterator().next(), keyspace);
+		}
+		return CqlUtils.getTable(SlowQueryLog.getQueryString(statement), keyspace);
+	}
+
+	/**
+	 * Execute the given write like {@link #execute(Statement, Message)}, but spool idempotent writes that could not
+	 * reach any host (if a spool is configured) and reply them as spooled instead of failed. While writes are spooled
+	 * all further idempotent writes are spooled behind them, so a replay never overwrites a newer write.
+	 * 
+	 * @param statement
+	 *            The Query to execute
+	 * @param message
+	 *            The Message to reply to in case of errors or spooling
+	 * @param spoolEntry
+	 *            The statement(s) and values to replay the write from or null if it must not be spooled
+	 * @return The resultset or null if an error or spooled reply was sent
+	 */
+	protected ResultSet executeWrite(Statement statement, Message<JsonObject> message, JsonObject spoolEntry) {
+		// Only idempotent writes can be replayed without knowing whether they were applied
+		WriteSpool writeSpool = getSharedSession().getWriteSpool();
+		boolean spoolable = writeSpool != null && spoolEntry != null && Boolean.TRUE.equals(statement.isIdempotent());
+		if(spoolable && writeSpool.size() > 0) {
+			spool(writeSpool, spoolEntry, message, null);
+			return null;
+		}
+
+		//
+		try {
+			return execute(statement, getSession(message), getRemainingTimeout());
+
+		} catch(NoHostAvailableException e) {
+			if(spoolable) {
+				spool(writeSpool, spoolEntry, message, e);
+				return null;
+			}
+			sendError(message, e);
+
+		} catch(Exception e) {
+			// An error happened
+			sendError(message, e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Append the write to the spool and reply it as spooled.
+	 * 
+	 * @param writeSpool
+	 * @param spoolEntry
+	 *            The statement(s) and values to replay the write from
+	 * @param message
+	 *            The Message to reply to
+	 * @param failure
+	 *            The failure to reply if the spool is full or null
+	 */
+	protected void spool(WriteSpool writeSpool, JsonObject spoolEntry, Message<JsonObject> message, Exception failure) {
+		if(writeSpool.append(spoolEntry.putString("keyspace", getKeyspace(message)))) {
+			sendOK(message, new JsonObject().putBoolean("spooled", true));
+			return;
+		}
+		logger.error("[Cassandra Persistor] Write spool " + writeSpool.getFile() + " is full, cannot spool write!");
+		if(failure != null) {
+			sendError(message, failure);
+		} else {
+			sendError(message, "[Cassandra Persistor] Write spool is full, cannot write behind the spooled writes!");
+		}
+	}
+
+	/**
+	 * Replay spooled writes in order, with up to the configured amount of concurrent writes, until the spool is
+	 * drained, no host (or keyspace session) is available or the replay limit per tick is reached. Writes failing for
+	 * other reasons are dropped as they would never succeed. Forces the spool to disk first.
+	 */
+	protected void replaySpool() {
+		WriteSpool writeSpool = getSharedSession().getWriteSpool();
+		writeSpool.flush();
+		if(writeSpool.size() == 0 || !writeSpool.startReplay()) {
+			return;
+		}
+
+		//
+		int replayed = 0;
+		try {
+			while(replayed < SPOOL_REPLAY_LIMIT) {
+				List<JsonObject> entries = writeSpool.peek(getSpoolConcurrency());
+				if(entries.isEmpty()) {
+					break;
+				}
+
+				// Only the contiguous head of completed writes is removed, later ones are replayed again
+				List<ResultSetFuture> futures = new ArrayList<>(entries.size());
+				List<Session> sessions = new ArrayList<>(entries.size());
+				boolean unavailable = false;
+				for(JsonObject entry : entries) {
+					// A keyspace session that cannot be connected (or was closed meanwhile) is retried with the next tick
+					Session session;
+					try {
+						session = getPreparedStatementCache(entry.getString("keyspace")).getSession();
+					} catch(Exception e) {
+						logger.warn("[Cassandra Persistor] Cannot get session of keyspace " + entry.getString("keyspace") + " to replay spooled writes: " + e.getMessage());
+						unavailable = true;
+						break;
+					}
+					sessions.add(session);
+					try {
+						futures.add(session.executeAsync(createSpooledStatement(entry)));
+					} catch(Exception e) {
+						if(isReplayable(e, session)) {
+							sessions.remove(sessions.size() - 1);
+							unavailable = true;
+							break;
+						}
+						logger.error("[Cassandra Persistor] Dropping spooled write " + entry + "!", e);
+						futures.add(null);
+					}
+				}
+				//
+				int completed = 0;
+				for(ResultSetFuture future : futures) {
+					JsonObject entry = entries.get(completed);
+					if(future != null) {
+						try {
+							future.getUninterruptibly();
+							invalidateSpooledResults(entry);
+						} catch(Exception e) {
+							if(isReplayable(e, sessions.get(completed))) {
+								unavailable = true;
+								break;
+							}
+							logger.error("[Cassandra Persistor] Dropping spooled write " + entry + "!", e);
+						}
+					}
+					completed++;
+				}
+				writeSpool.remove(completed);
+				replayed += completed;
+				//
+				if(unavailable) {
+					break;
+				}
+			}
+
+		} finally {
+			writeSpool.endReplay();
+			releaseKeyspaceSessions(takeKeyspaceSessions());
+		}
+
+		//
+		if(replayed > 0) {
+			logger.info("[Cassandra Persistor] Replayed " + replayed + " spooled writes, " + writeSpool.size() + " pending");
+		}
+	}
+
+	/**
+	 * 
+	 * @param e
+	 *            The failure of a replayed write
+	 * @param session
+	 *            The session it was replayed on
+	 * @return true if the write failed because no host or the session was not available and has to be replayed again
+	 */
+	protected boolean isReplayable(Exception e, Session session) {
+		return e instanceof NoHostAvailableException || e instanceof IllegalStateException || session.isClosed();
+	}
+
+	/**
+	 * Create the statement of a spooled write.
+	 * 
+	 * @param entry
+	 *            The spooled "statement" with its "values" (prepared), "statement" or "statements" (raw)
+	 * @return The idempotent statement to replay
+	 */
+	protected Statement createSpooledStatement(JsonObject entry) {
+		BatchStatement query = new BatchStatement();
+		if(entry.containsField("values")) {
+			PreparedStatement preparedStmt = getPreparedStatementCache(entry.getString("keyspace")).addAndGet(entry.getString("statement"));
+			for(Object valueList : entry.getArray("values")) {
+				query.add(preparedStmt.bind(parseArray(((JsonArray) valueList).toArray())));
+			}
+		} else if(entry.containsField("statements")) {
+			for(Object stmt : entry.getArray("statements")) {
+				query.add(new SimpleStatement(stmt.toString()));
+			}
+		} else {
+			return new SimpleStatement(entry.getString("statement")).setIdempotent(true);
+		}
+		query.setIdempotent(true);
+		return query;
+	}
+
+	/**
+	 * Invalidate the cached results of all tables written by the given spooled write.
+	 * 
+	 * @param entry
+	 *            The replayed spool entry
+	 */
+	protected void invalidateSpooledResults(JsonObject entry) {
+		if(entry.containsField("statements")) {
+			for(Object stmt : entry.getArray("statements")) {
+				invalidateResultCache(stmt.toString(), entry.getString("keyspace"));
+			}
+		} else {
+			invalidateResultCache(entry.getString("statement"), entry.getString("keyspace"));
+		}
+	}
+
+	/**
+	 * 
+	 * @param message
+	 * @return The keyspace requested by the message or the configured one
+	 */
+	protected String getKeyspace(Message<JsonObject> message) {
+		String keyspace = message.body().getString("keyspace");
+		return keyspace != null ? keyspace : getKeyspace();
+	}
+
+	/**
+	 * Get the prepared statement cache of the keyspace requested by the message. Other keyspaces than the configured
+	 * one get their own lazily connected session and cache.
+	 * 
+	 * @param message
+	 * @return The prepared statement cache of the requested keyspace
+	 */
+	protected PreparedStatementCache getPreparedStatementCache(Message<JsonObject> message) {
+		return getPreparedStatementCache(message.body().getString("keyspace"));
+	}
+
+	/**
+	 * 
+	 * @param keyspace
+	 *            The keyspace or null for the configured one
+	 * @return The prepared statement cache of the given keyspace
+	 */
+	protected PreparedStatementCache getPreparedStatementCache(String keyspace) {
+		if(keyspace == null || keyspace.equals(getKeyspace())) {
+			return getPreparedStatementCache();
+		}
+
+		// Referenced until the current message is processed
+		KeyspaceSession keyspaceSession = getSharedSession().acquireKeyspaceSession(keyspace, getRemainingTimeout());
+		this.keyspaceSessions.add(keyspaceSession);
+		return keyspaceSession.getPreparedStatementCache();
+	}
+
+	/**
+	 * Take over the keyspace sessions acquired for the current message, e.g. to release them after mapping the result
+	 * on another thread.
+	 * 
+	 * @return The acquired keyspace sessions
+	 */
+	protected List<KeyspaceSession> takeKeyspaceSessions() {
+		List<KeyspaceSession> keyspaceSessions = this.keyspaceSessions;
+		this.keyspaceSessions = new ArrayList<>();
+		return keyspaceSessions;
+	}
+
+	/**
+	 * 
+	 * @param keyspaceSessions
+	 *            The keyspace sessions to release
+	 */
+	protected void releaseKeyspaceSessions(List<KeyspaceSession> keyspaceSessions) {
+		for(KeyspaceSession keyspaceSession : keyspaceSessions) {
+			keyspaceSession.release();
+		}
+	}
+
+	/**
+	 * 
+	 * @param message
+	 * @return The session connected to the keyspace requested by the message
+	 */
+	protected Session getSession(Message<JsonObject> message) {
+		return getPreparedStatementCache(message).getSession();
+	}
+
+	/**
+	 * Invalidate all cached results of the table written to by the given statement (if any cache is configured).
+	 * 
+	 * @param statement
+	 *            The executed CQL3 statement
+	 * @param keyspace
+	 *            The keyspace of unqualified statements
+	 */
+	protected void invalidateResultCache(String statement, String keyspace) {
+		if(getResultCache() == null || CqlUtils.isSelect(statement)) {
+			return;
+		}
+
+		//
+		String table = CqlUtils.getTable(statement, keyspace);
+		if(table != null) {
+			getResultCache().invalidate(table);
+		} else {
+			// Unknown statements (e.g. schema changes) might touch anything
+			getResultCache().clear();
+		}
+	}
+
+	/**
+	 * Iterate over a resultSet and all fields and values to prepare these into an JsonArray of JsonObjects per row.
+	 * 
+	 * @param resultSet
+	 *            The results to iterate over
+	 * @param retVals
+	 *            The JsonArray to add the JsonObjects processed per row
+	 * @return
+	 */
+	protected JsonArray processResult(ResultSet resultSet, JsonArray retVals) {
+		// Iterate the results
+		for(Row row : resultSet) {
+			// Row result
+			JsonObject retVal = new JsonObject();
+
+			// Get the column definitions to iterate over the different types
+			// and check
+			ColumnDefinitions rowColumnDefinitions = row.getColumnDefinitions();
+			for(int i = 0; i < rowColumnDefinitions.size(); i++) {
+				// Null empty columns
+				if(row.isNull(i) || JsonResultWriter.isEmpty(rowColumnDefinitions.getType(i), row.getBytesUnsafe(i))) {
+					continue;
+				}
+
+				// Read the column bytes unsafe and operate on the deserialized
+				// object instead of iterating over the
+				// type of the definitions
+				Object columnValue = rowColumnDefinitions.getType(i).deserialize(row.getBytesUnsafe(i), PROTOCOL_VERSION);
+
+				// Parse the returning object to a supported type
+				retVal = addRow(rowColumnDefinitions.getName(i), columnValue, retVal);
+			}
+
+			// Add the row
+			retVals.addObject(retVal);
+		}
+
+		//
+		return retVals;
+	}
+
+	/**
+	 * Parses the given array of Objects to identify UUID and Date strings to replace them with the native object.
+	 * Nothing else is changed.
+	 * 
+	 * @param valueArray
+	 *            The array to look for UUIDs and Dates
+	 * @return
+	 */
+	protected Object[] parseArray(Object[] valueArray) {
+		//
+		for(int j = 0; j < valueArray.length; j++) {
+			//
+			if(valueArray[j] instanceof String) {
+				try {
+					valueArray[j] = UUID.fromString((String) valueArray[j]);
+					continue;
+				} catch(Exception e) {
+				}
+
+				try {
+					valueArray[j] = getDateFormatter().parse((String) valueArray[j]);
+					continue;
+				} catch(Exception e) {
+				}
+			}
+		}
+
+		//
+		return valueArray;
+	}
+
+	/**
+	 * Process the different types of values possible.
+	 * 
+	 * @param columnName
+	 *            The column name to add to the JsonObject row
+	 * @param columnValue
+	 *            The value to identify, process and add to the JsonObject row
+	 * @param retVal
+	 *            The JsonObject to maintain the row values
+	 * @return The JsonObject representing this row entry
+	 */
+	protected JsonObject addRow(String columnName, Object columnValue, JsonObject retVal) {
+		//
+		if(columnValue instanceof Number) {
+			retVal.putNumber(columnName, (Number) columnValue);
+
+		} else if(columnValue instanceof String) {
+			retVal.putString(columnName, (String) columnValue);
+
+		} else if(columnValue instanceof Boolean) {
+			retVal.putBoolean(columnName, (Boolean) columnValue);
+
+		} else if(columnValue instanceof Date) {
+			retVal.putString(columnName, ((Date) columnValue).toString());
+
+		} else if(columnValue instanceof UUID) {
+			retVal.putString(columnName, ((UUID) columnValue).toString());
+
+		} else if(columnValue instanceof InetAddress) {
+			retVal.putString(columnName, ((InetAddress) columnValue).getHostAddress());
+
+		} else if(columnValue instanceof ByteBuffer) {
+			byte[] retValBuffer = new byte[((ByteBuffer) columnValue).remaining()];
+			((ByteBuffer) columnValue).get(retValBuffer);
+			addRow(columnName, retValBuffer, retVal);
+
+		} else if(columnValue instanceof byte[]) {
+			retVal.putBinary(columnName, (byte[]) columnValue);
+
+		} else if(columnValue instanceof Collection<?>) {
+			retVal.putArray(columnName, addCollection((Collection<?>) columnValue, new JsonArray()));
+
+		} else if(columnValue instanceof Map<?, ?>) {
+			//
+			JsonObject retMap = new JsonObject();
+			//
+			Map<?, ?> columnValueMap = (Map<?, ?>) columnValue;
+			for(Entry<?, ?> entry : columnValueMap.entrySet()) {
+				addRow(entry.getKey().toString(), entry.getValue(), retMap);
+			}
+
+			//
+			retVal.putObject(columnName, retMap);
+
+		} else {
+			// If nothing works, try to add the object directly but catch if not
+			try {
+				retVal.putValue(columnName, columnValue);
+			} catch(Exception e) {
+				logger.info("[Cassandra Persistor] Could not add value of column " + columnName);
+			}
+		}
+
+		//
+		return retVal;
+	}
+
+	/**
+	 * Process the collections (List and Set) and add the values to an array to return.
+	 * 
+	 * @param columnValue
+	 *            The collection of values to iterate and process to be added
+	 * @param retVal
+	 *            The JsonArray to add the values of the collection to
+	 * @return The JsonArray representing these collection values
+	 */
+	protected JsonArray addCollection(Collection<?> columnValue, JsonArray retVal) {
+		//
+		for(Object collectionValue : columnValue) {
+			retVal = addToArray(collectionValue, retVal);
+		}
+
+		//
+		return retVal;
+	}
+
+	/**
+	 * Add the given value to the given JsonArray by identifying its type and according action on JsonArray.
+	 * 
+	 * @param value
+	 *            The object to identify and process
+	 * @param retVal
+	 *            The JsonArray to fill. Will be returned.
+	 * @return retVal
+	 */
+	protected JsonArray addToArray(Object value, JsonArray retVal) {
+		//
+		if(value instanceof Number) {
+			retVal.addNumber((Number) value);
+
+		} else if(value instanceof String) {
+			retVal.addString((String) value);
+
+		} else if(value instanceof Boolean) {
+			retVal.addBoolean((Boolean) value);
+
+		} else if(value instanceof Date) {
+			retVal.addString(((Date) value).toString());
+
+		} else if(value instanceof UUID) {
+			retVal.addString(((UUID) value).toString());
+
+		} else if(value instanceof InetAddress) {
+			retVal.addString(((InetAddress) value).getHostAddress());
+
+		} else if(value instanceof ByteBuffer) {
+			byte[] retValBuffer = new byte[((ByteBuffer) value).remaining()];
+			((ByteBuffer) value).get(retValBuffer);
+			addToArray(retValBuffer, retVal);
+
+		} else if(value instanceof byte[]) {
+			retVal.addBinary((byte[]) value);
+
+		} else if(value instanceof Collection<?>) {
+			retVal.addArray(addCollection((Collection<?>) value, new JsonArray()));
+
+		} else {
+			// If nothing works, try to add the object directly but catch if not
+			try {
+				retVal.add(value);
+			} catch(Exception e) {
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Convenience general error message handler
+	 * 
+	 * @param message
+	 *            The message to send the error to
+	 * @param e
+	 *            The exception to parse and add
+	 */
+	public void sendError(Message<JsonObject> message, Exception e) {
+		sendError(message, "[Cassandra Persistor] " + e.getMessage(), e);
+	}
+
+	/**
+	 * Send the error with its code if it has one, e.g. a timeout while preparing a statement.
+	 */
+	@Override
+	protected void sendError(Message<JsonObject> message, String error, Exception e) {
+		String code = getErrorCode(e);
+		if(code != null) {
+			message.reply(new JsonObject().putString("status", "error").putString("code", code).putString("message", "[Cassandra Persistor] " + e.getMessage()));
+			return;
+		}
+
+		//
+		super.sendError(message, error, e);
+	}
+
+	/**
+	 * 
+	 * @param e
+	 * @return The code of expected errors or null
+	 */
+	protected String getErrorCode(Exception e) {
+		// Failing fast on open circuits and timeouts are expected and answered with their own code
+		if(e instanceof CircuitOpenException || (e instanceof NoHostAvailableException && ((NoHostAvailableException) e).getErrors().isEmpty() && getHostCircuitBreaker() != null && getHostCircuitBreaker().isAnyOpen())) {
+			return CircuitOpenException.CODE;
+		} else if(e instanceof RequestTimeoutException) {
+			return RequestTimeoutException.CODE;
+		} else if(e instanceof OverloadedException) {
+			return OverloadedException.CODE;
+		} else if(e instanceof RateLimitedException) {
+			return RateLimitedException.CODE;
+		}
+		return null;
+	}
+
+	/**
+	 * Cleanup
+	 */
+	@Override
+	public void stop() {
+		//
+		eb.unregisterHandler(getAddress(), this);
+		if(getScheduler() != null) {
+			eb.unregisterHandler(getPriorityAddress(), this);
+		}
+		if(getBatchDeploymentId() != null) {
+			container.undeployVerticle(getBatchDeploymentId());
+			setBatchDeploymentId(null);
+		}
+
+		// Never drop acknowledged increments
+		if(getCounterTimer() != -1) {
+			vertx.cancelTimer(getCounterTimer());
+			flushCounters();
+		}
+		if(getSlowQueryLog() != null) {
+			getSlowQueryLog().close();
+		}
+		if(getSchemaRefreshTimer() != -1) {
+			vertx.cancelTimer(getSchemaRefreshTimer());
+			getSharedSession().releaseSchemaRefresh(this);
+		}
+		if(getSpoolTimer() != -1) {
+			vertx.cancelTimer(getSpoolTimer());
+		}
+		if(getStatementCatalogue() != null && getSharedSession() != null) {
+			vertx.cancelTimer(getStatementCatalogueTimer());
+			saveStatementCatalogue();
+		}
+
+		// Session and cluster are closed with the last instance sharing them
+		if(getSharedSession() != null) {
+			SessionRegistry.release(getSharedSession());
+			setSharedSession(null);
+		}
+
+		//
+		super.stop();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	public Cluster getCluster() {
+		return cluster;
+	}
+
+	public void setCluster(Cluster cluster) {
+		this.cluster = cluster;
+	}
+
+	public Session getSession() {
+		return session;
+	}
+
+	/**
+	 * Set the Cassandra connection session and forward that to the prepared statement cache for PreparedStatement
+	 * creation.
+	 * 
+	 * @param session
+	 */
+	public void setSession(Session session) {
+		this.session = session;
+
+		// Add the newest sessions always as source for prepared statements to
+		// the cache
+		if(getPreparedStatementCache() != null) {
+			getPreparedStatementCache().setSession(session);	
+		}
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public void setAddress(String address) {
+		this.address = address;
+	}
+
+	public JsonArray getHosts() {
+		return hosts;
+	}
+
+	public void setHosts(JsonArray hosts) {
+		this.hosts = hosts;
+	}
+
+	public String getKeyspace() {
+		return keyspace;
+	}
+
+	public void setKeyspace(String keyspace) {
+		this.keyspace = keyspace;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Derive the compression option from the enum based on the given string. Defaults to NONE.
+	 * 
+	 * @param compression
+	 *            The name of the compression chosen (either NONE, SNAPPY or LZ4)
+	 */
+	public void setCompression(String compression) {
+		try {
+			this.compression = ProtocolOptions.Compression.valueOf(compression);
+		} catch(Exception e) {
+			this.compression = ProtocolOptions.Compression.NONE;
+		}
+	}
+
+	public void setCompression(ProtocolOptions.Compression compression) {
+		this.compression = compression;
+	}
+
+	public ProtocolOptions.Compression getCompression() {
+		return compression;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Derive the retry policy from the given string to the implementation. Defaults to {@link DefaultRetryPolicy}.
+	 * 
+	 * @param retryPolicy
+	 *            The name of the retry policy to use. Can be "downgrading" {@link DowngradingConsistencyRetryPolicy} or
+	 *            "fallthrough" {@link FallthroughRetryPolicy}. Everything else defaults to
+	 *            Policies.defaultRetryPolicy()
+	 */
+	public void setRetryPolicy(String retryPolicy) {
+		switch(retryPolicy) {
+			case "downgrading":
+				setRetryPolicy(DowngradingConsistencyRetryPolicy.INSTANCE);
+				break;
+
+			case "fallthrough":
+				setRetryPolicy(FallthroughRetryPolicy.INSTANCE);
+				break;
+
+			default:
+				setRetryPolicy(Policies.defaultRetryPolicy());
+				break;
+		}
+	}
+
+	/**
+	 * Parse a retry Json config and set the retry policy. Besides the named policies "budgeted" only retries idempotent
+	 * statements within a global retry budget.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "policy" and whether to "log" the decisions (defaults to true for the
+	 *            budgeted policy, false otherwise). The
+	 *            budgeted policy takes the "budget" ratio of retries to requests (defaults to 0.1), the "minPerSecond"
+	 *            retries (defaults to 10), the "maxTokens" to save up (defaults to 100) and the max retries per
+	 *            statement on "readTimeout", "writeTimeout" and "unavailable" (default to 1, 1 and 0)
+	 */
+	public void setRetryPolicy(JsonObject config) {
+		String policy = config.getString("policy", "default");
+		if(policy.equals("budgeted")) {
+			double budget = config.containsField("budget") ? config.getNumber("budget").doubleValue() : 0.1;
+			setRetryPolicy(new BudgetedRetryPolicy(budget, config.getNumber("minPerSecond", 10).doubleValue(), config.getNumber("maxTokens", 100).doubleValue(), config.getInteger("readTimeout", 1), config.getInteger("writeTimeout", 1), config.getInteger("unavailable", 0), config.getBoolean("log", true) ? logger : null));
+			return;
+		}
+
+		//
+		setRetryPolicy(policy);
+		if(config.getBoolean("log", false)) {
+			setRetryPolicy(new LoggingRetryPolicy(getRetryPolicy()));
+		}
+	}
+
+	public LoadBalancingPolicy getLoadBalancingPolicy() {
+		return loadBalancingPolicy;
+	}
+
+	public void setLoadBalancingPolicy(LoadBalancingPolicy loadBalancingPolicy) {
+		this.loadBalancingPolicy = loadBalancingPolicy;
+	}
+
+	/**
+	 * Parse a load balancing Json config and identify which policy to use. The base policy is optionally wrapped
+	 * latency-aware (penalizing hosts slower than the fastest one) and token-aware (preferring the replicas of a
+	 * statement, in the order of the wrapped policy).
+	 * 
+	 * @param config
+	 *            The JsonObject with the base "policy" ("roundRobin" {@link RoundRobinPolicy} or "dcAware"
+	 *            {@link DCAwareRoundRobinPolicy} with the "localDc" and the "usedHostsPerRemoteDc"), whether to be
+	 *            "tokenAware" and the "latencyAware" JsonObject with the "exclusionThreshold", the "scale", "retryPeriod"
+	 *            and "updateRate" in milliseconds and the "minMeasure" of a host. Defaults to
+	 *            Policies.defaultLoadBalancingPolicy()
+	 */
+	public void setLoadBalancingPolicy(JsonObject config) {
+		String policy = config.getString("policy");
+		JsonObject latencyAware = config.getObject("latencyAware");
+
+		//
+		if(policy == null && latencyAware == null) {
+			return;
+		}
+
+		//
+		LoadBalancingPolicy loadBalancingPolicy;
+		switch(policy != null ? policy : "dcAware") {
+			case "roundRobin":
+				loadBalancingPolicy = new RoundRobinPolicy();
+				break;
+
+			default:
+				String localDc = config.getString("localDc");
+				loadBalancingPolicy = localDc != null ? new DCAwareRoundRobinPolicy(localDc, config.getInteger("usedHostsPerRemoteDc", 0)) : new DCAwareRoundRobinPolicy();
+				break;
+		}
+
+		//
+		if(latencyAware != null) {
+			LatencyAwarePolicy.Builder builder = LatencyAwarePolicy.builder(loadBalancingPolicy);
+			builder.withExclusionThreshold(latencyAware.getNumber("exclusionThreshold", 2).doubleValue());
+			builder.withScale(latencyAware.getLong("scale", 100), TimeUnit.MILLISECONDS);
+			builder.withRetryPeriod(latencyAware.getLong("retryPeriod", 10000), TimeUnit.MILLISECONDS);
+			builder.withUpdateRate(latencyAware.getLong("updateRate", 100), TimeUnit.MILLISECONDS);
+			builder.withMininumMeasurements(latencyAware.getInteger("minMeasure", 50));
+			loadBalancingPolicy = builder.build();
+		}
+
+		//
+		if(config.getBoolean("tokenAware", true)) {
+			loadBalancingPolicy = new TokenAwarePolicy(loadBalancingPolicy);
+		}
+		setLoadBalancingPolicy(loadBalancingPolicy);
+	}
+
+	public ReconnectionPolicy getReconnectionPolicy() {
+		return reconnectionPolicy;
+	}
+
+	public void setReconnectionPolicy(ReconnectionPolicy reconnectionPolicy) {
+		this.reconnectionPolicy = reconnectionPolicy;
+	}
+
+	/**
+	 * Set the reconnection policy to define how often and in what interval to retry setup connections.
+	 * 
+	 * @param policy
+	 *            The reconnection policy as string "constant" {@link ConstantReconnectionPolicy} or "exponential"
+	 *            {@link ExponentialReconnectionPolicy}
+	 * @param delay
+	 *            The initial or constant delay
+	 * @param max
+	 *            The maximum delay (only required for {@link ExponentialReconnectionPolicy})
+	 */
+	public void setReconnectionPolicy(String policy, int delay, int... max) {
+		switch(policy) {
+			case "constant":
+				setReconnectionPolicy(new ConstantReconnectionPolicy(delay));
+				break;
+
+			case "exponential":
+				setReconnectionPolicy(new ExponentialReconnectionPolicy(delay, max[0]));
+				break;
+
+			default:
+				setReconnectionPolicy(Policies.defaultReconnectionPolicy());
+				break;
+		}
+	}
+
+	/**
+	 * Parse a Reconnection Json Config and identify how to set parameters
+	 * 
+	 * @param config
+	 */
+	public void setReconnectionPolicy(JsonObject config) {
+		String policy = config.getString("policy");
+		Integer delay = config.getInteger("delay");
+		Integer max = config.getInteger("max");
+
+		//
+		if(policy == null || delay == null) {
+			return;
+		} else {
+			if(max != null) {
+				setReconnectionPolicy(policy, delay, max);
+			} else {
+				setReconnectionPolicy(policy, delay);
+			}
+		}
+	}
+
+	public SpeculativeExecutionPolicy getSpeculativeExecutionPolicy() {
+		return speculativeExecutionPolicy;
+	}
+
+	public void setSpeculativeExecutionPolicy(SpeculativeExecutionPolicy speculativeExecutionPolicy) {
+		this.speculativeExecutionPolicy = speculativeExecutionPolicy;
+	}
+
+	/**
+	 * Parse a speculative execution Json config and identify which policy to use. Only statements flagged idempotent
+	 * are executed speculatively.
+	 * 
+	 * @param config
+	 *            The JsonObject with the "policy" ("constant" {@link ConstantSpeculativeExecutionPolicy} or
+	 *            "percentile" {@link PercentileSpeculativeExecutionPolicy}), the constant "delay" in milliseconds or
+	 *            the "percentile" of the per host latency to wait for, the "maxExecutions" and for percentile the
+	 *            "highestLatency" in milliseconds to track
+	 */
+	public void setSpeculativeExecutionPolicy(JsonObject config) {
+		String policy = config.getString("policy");
+		int maxExecutions = config.getInteger("maxExecutions", 1);
+
+		//
+		if(policy == null) {
+			return;
+		}
+
+		//
+		switch(policy) {
+			case "constant":
+				setSpeculativeExecutionPolicy(new ConstantSpeculativeExecutionPolicy(config.getLong("delay", 100), maxExecutions));
+				break;
+
+			case "percentile":
+				setPercentileTracker(PerHostPercentileTracker.builderWithHighestTrackableLatencyMillis(config.getLong("highestLatency", 15000)).build());
+				setSpeculativeExecutionPolicy(new PercentileSpeculativeExecutionPolicy(getPercentileTracker(), config.getNumber("percentile", 99).doubleValue(), maxExecutions));
+				break;
+
+			default:
+				setSpeculativeExecutionPolicy(Policies.defaultSpeculativeExecutionPolicy());
+				break;
+		}
+	}
+
+	public PerHostPercentileTracker getPercentileTracker() {
+		return percentileTracker;
+	}
+
+	public void setPercentileTracker(PerHostPercentileTracker percentileTracker) {
+		this.percentileTracker = percentileTracker;
+	}
+
+	public void setQueryOptions(QueryOptions queryOptions) {
+		this.queryOptions = queryOptions;
+	}
+
+	public QueryOptions getQueryOptions() {
+		return queryOptions;
+	}
+
+	public SocketOptions getSocketOptions() {
+		return socketOptions;
+	}
+
+	public void setSocketOptions(SocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+
+	/**
+	 * Parse a socket Json config into the socket options. Options not given keep the driver defaults.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "connectTimeout" and "readTimeout" in milliseconds, "tcpNoDelay",
+	 *            "keepAlive", "reuseAddress", "soLinger" and the "sendBufferSize" and "receiveBufferSize" in bytes
+	 */
+	public void setSocketOptions(JsonObject config) {
+		SocketOptions socketOptions = new SocketOptions();
+		if(config.containsField("connectTimeout")) {
+			socketOptions.setConnectTimeoutMillis(config.getInteger("connectTimeout"));
+		}
+		if(config.containsField("readTimeout")) {
+			socketOptions.setReadTimeoutMillis(config.getInteger("readTimeout"));
+		}
+		if(config.containsField("tcpNoDelay")) {
+			socketOptions.setTcpNoDelay(config.getBoolean("tcpNoDelay"));
+		}
+		if(config.containsField("keepAlive")) {
+			socketOptions.setKeepAlive(config.getBoolean("keepAlive"));
+		}
+		if(config.containsField("reuseAddress")) {
+			socketOptions.setReuseAddress(config.getBoolean("reuseAddress"));
+		}
+		if(config.containsField("soLinger")) {
+			socketOptions.setSoLinger(config.getInteger("soLinger"));
+		}
+		if(config.containsField("sendBufferSize")) {
+			socketOptions.setSendBufferSize(config.getInteger("sendBufferSize"));
+		}
+		if(config.containsField("receiveBufferSize")) {
+			socketOptions.setReceiveBufferSize(config.getInteger("receiveBufferSize"));
+		}
+		setSocketOptions(socketOptions);
+	}
+
+	public TransportOptions getTransportOptions() {
+		return transportOptions;
+	}
+
+	public void setTransportOptions(TransportOptions transportOptions) {
+		this.transportOptions = transportOptions;
+	}
+
+	/**
+	 * Parse a netty Json config into the transport options of the driver. Without a config the driver defaults are used.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the amount of I/O "threads" (defaults to 0, the Netty default), whether to use
+	 *            the native "epoll" transport if available (defaults to true), the "pooledAllocator" (defaults to false)
+	 *            and whether to "shareEventLoop" of Vert.x instead of own I/O threads (defaults to false)
+	 */
+	public void setTransportOptions(JsonObject config) {
+		if(config == null) {
+			setTransportOptions((TransportOptions) null);
+			return;
+		}
+
+		//
+		EventLoopGroup sharedEventLoopGroup = null;
+		if(config.getBoolean("shareEventLoop", false)) {
+			if(vertx instanceof VertxInternal) {
+				sharedEventLoopGroup = ((VertxInternal) vertx).getEventLoopGroup();
+			} else {
+				logger.warn("[Cassandra Persistor] Cannot share the event loop of " + vertx.getClass().getName() + ", using own I/O threads");
+			}
+		}
+		setTransportOptions(new TransportOptions(config.getInteger("threads", 0), config.getBoolean("epoll", true), config.getBoolean("pooledAllocator", false), sharedEventLoopGroup));
+		//
+		if(getTransportOptions().isEpoll() && sharedEventLoopGroup == null) {
+			logger.info("[Cassandra Persistor] Native epoll transport " + (TransportOptions.isEpollAvailable() ? "available" : "not available, using NIO"));
+		}
+	}
+
+	public long getDefaultTimeout() {
+		return defaultTimeout;
+	}
+
+	public void setDefaultTimeout(long defaultTimeout) {
+		this.defaultTimeout = defaultTimeout;
+	}
+
+	public Map<String, Long> getActionTimeouts() {
+		return actionTimeouts;
+	}
+
+	/**
+	 * Parse a timeouts Json config into the default and per action timeouts.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "default" timeout in milliseconds (defaults to 0, no timeout) and the
+	 *            timeouts of single actions by their name (e.g. "raw")
+	 */
+	public void setTimeouts(JsonObject config) {
+		setDefaultTimeout(config.getLong("default", 0));
+		getActionTimeouts().clear();
+		for(String action : config.getFieldNames()) {
+			if(!action.equals("default")) {
+				getActionTimeouts().put(action, config.getLong(action));
+			}
+		}
+	}
+
+	/**
+	 * Set the formatter used to parse String dates. Every thread works on its own copy of it.
+	 * 
+	 * @param dateFormatter
+	 */
+	public void setDateFormatter(SimpleDateFormat dateFormatter) {
+		this.dateFormatter = dateFormatter;
+		this.dateFormatters = new ThreadLocal<>();
+	}
+
+	/**
+	 * 
+	 * @return The copy of the configured formatter for the current thread
+	 */
+	public SimpleDateFormat getDateFormatter() {
+		SimpleDateFormat threadDateFormatter = this.dateFormatters.get();
+		if(threadDateFormatter == null && this.dateFormatter != null) {
+			threadDateFormatter = (SimpleDateFormat) this.dateFormatter.clone();
+			this.dateFormatters.set(threadDateFormatter);
+		}
+		return threadDateFormatter;
+	}
+
+	public JsonResultWriter getJsonResultWriter() {
+		return jsonResultWriter;
+	}
+
+	public void setJsonResultWriter(JsonResultWriter jsonResultWriter) {
+		this.jsonResultWriter = jsonResultWriter;
+	}
+
+	public int getMappingPoolMinRows() {
+		return mappingPoolMinRows;
+	}
+
+	public void setMappingPoolMinRows(int mappingPoolMinRows) {
+		this.mappingPoolMinRows = mappingPoolMinRows;
+	}
+
+	public Warmup getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(Warmup warmup) {
+		this.warmup = warmup;
+	}
+
+	/**
+	 * Parse a warm-up Json config. Without a config no warm-up is done.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "statements" array and/or a "file" (file system or classpath) with
+	 *            semicolon separated statements to prepare, the "coreConnections" to open per host and whether to
+	 *            "probe" all hosts. An unreadable file is logged and warms up without its statements, as they are
+	 *            prepared on first use anyway
+	 */
+	public void setWarmup(JsonObject config) {
+		if(config == null) {
+			setWarmup((Warmup) null);
+			return;
+		}
+
+		//
+		List<String> statements = new ArrayList<>();
+		if(config.getArray("statements") != null) {
+			for(Object statement : config.getArray("statements")) {
+				statements.add(String.valueOf(statement));
+			}
+		}
+		if(config.getString("file") != null) {
+			try {
+				statements.addAll(Warmup.readStatements(config.getString("file")));
+			} catch(IOException e) {
+				logger.error("[Cassandra Persistor] Cannot read warm-up statements, continuing without them!", e);
+			}
+		}
+
+		//
+		setWarmup(new Warmup(statements, config.getInteger("coreConnections", 0), config.getBoolean("probe", false), logger));
+	}
+
+	public StatementCatalogue getStatementCatalogue() {
+		return statementCatalogue;
+	}
+
+	public void setStatementCatalogue(StatementCatalogue statementCatalogue) {
+		this.statementCatalogue = statementCatalogue;
 	}
 
 	/**
-	 * Add the given value to the given JsonArray by identifying its type and according action on JsonArray.
+	 * Parse a statement catalogue Json config. Without a config (or file) no snapshots are taken.
 	 * 
-	 * @param value
-	 *            The object to identify and process
-	 * @param retVal
-	 *            The JsonArray to fill. Will be returned.
-	 * @return retVal
+	 * @param config
+	 *            The JsonObject containing the snapshot "file" and the max amount of statements to "restore" (defaults
+	 *            to 100)
 	 */
-	protected JsonArray addToArray(Object value, JsonArray retVal) {
+	public void setStatementCatalogue(JsonObject config) {
+		if(config == null || config.getString("file") == null) {
+			setStatementCatalogue((StatementCatalogue) null);
+			return;
+		}
+
 		//
-		if(value instanceof Number) {
-			retVal.addNumber((Number) value);
+		setStatementCatalogue(new StatementCatalogue(new File(config.getString("file")), config.getInteger("restore", 100)));
+	}
 
-		} else if(value instanceof String) {
-			retVal.addString((String) value);
+	public CounterBuffer getCounterBuffer() {
+		return counterBuffer;
+	}
 
-		} else if(value instanceof Boolean) {
-			retVal.addBoolean((Boolean) value);
+	public void setCounterBuffer(CounterBuffer counterBuffer) {
+		this.counterBuffer = counterBuffer;
+	}
 
-		} else if(value instanceof Date) {
-			retVal.addString(((Date) value).toString());
+	public int getCounterBatchSize() {
+		return counterBatchSize;
+	}
 
-		} else if(value instanceof UUID) {
-			retVal.addString(((UUID) value).toString());
+	public void setCounterBatchSize(int counterBatchSize) {
+		this.counterBatchSize = counterBatchSize;
+	}
 
-		} else if(value instanceof ByteBuffer) {
-			byte[] retValBuffer = new byte[((ByteBuffer) value).remaining()];
-			((ByteBuffer) value).get(retValBuffer);
-			addToArray(retValBuffer, retVal);
+	public long getCounterTimer() {
+		return counterTimer;
+	}
 
-		} else if(value instanceof byte[]) {
-			retVal.addBinary((byte[]) value);
+	public void setCounterTimer(long counterTimer) {
+		this.counterTimer = counterTimer;
+	}
 
-		} else if(value instanceof Collection<?>) {
-			retVal.addArray(addCollection((Collection<?>) value, new JsonArray()));
+	/**
+	 * Parse a counter Json config and create the increment buffer.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "maxSize" of aggregated counters triggering a flush (defaults to 10000)
+	 *            and the max "batchSize" of flushed counter batches (defaults to 100)
+	 */
+	public void setCounters(JsonObject config) {
+		setCounterBuffer(new CounterBuffer(config.getInteger("maxSize", 10000)));
+		setCounterBatchSize(Math.max(config.getInteger("batchSize", 100), 1));
+	}
 
-		} else {
-			// If nothing works, try to add the object directly but catch if not
-			try {
-				retVal.add(value);
-			} catch(Exception e) {
-			}
-		}
+	public ConsistencyLevel getCasSerialConsistency() {
+		return casSerialConsistency;
+	}
 
-		return retVal;
+	public void setCasSerialConsistency(ConsistencyLevel casSerialConsistency) {
+		this.casSerialConsistency = casSerialConsistency;
+	}
+
+	public int getCasRetries() {
+		return casRetries;
+	}
+
+	public void setCasRetries(int casRetries) {
+		this.casRetries = casRetries;
+	}
+
+	public Backoff getCasBackoff() {
+		return casBackoff;
+	}
+
+	public void setCasBackoff(Backoff casBackoff) {
+		this.casBackoff = casBackoff;
 	}
 
 	/**
-	 * Convenience general error message handler
+	 * Parse a conditional write Json config.
 	 * 
-	 * @param message
-	 *            The message to send the error to
-	 * @param e
-	 *            The exception to parse and add
+	 * @param config
+	 *            The JsonObject containing the "serialConsistency" (defaults to SERIAL), the max "retries" of CAS write
+	 *            timeouts (defaults to 3) and the "backoff" base and "maxBackoff" in milliseconds (defaults to 20 and
+	 *            1000)
 	 */
-	public void sendError(Message<JsonObject> message, Exception e) {
-		sendError(message, "[Cassandra Persistor] " + e.getMessage(), e);
+	public void setCas(JsonObject config) {
+		setCasSerialConsistency(ConsistencyLevel.valueOf(config.getString("serialConsistency", "SERIAL").toUpperCase()));
+		setCasRetries(config.getInteger("retries", 3));
+		setCasBackoff(new Backoff(config.getLong("backoff", 20), config.getLong("maxBackoff", 1000)));
+	}
+
+	public long getSchemaRefreshTimer() {
+		return schemaRefreshTimer;
+	}
+
+	public void setSchemaRefreshTimer(long schemaRefreshTimer) {
+		this.schemaRefreshTimer = schemaRefreshTimer;
+	}
+
+	public long getStatementCatalogueTimer() {
+		return statementCatalogueTimer;
+	}
+
+	public void setStatementCatalogueTimer(long statementCatalogueTimer) {
+		this.statementCatalogueTimer = statementCatalogueTimer;
+	}
+
+	public int getPrepareConcurrency() {
+		return prepareConcurrency;
+	}
+
+	public void setPrepareConcurrency(int prepareConcurrency) {
+		this.prepareConcurrency = prepareConcurrency;
 	}
 
 	/**
-	 * Cleanup
+	 * Parse a mapping pool Json config and create the bounded pool to map large results on. Without a config results
+	 * are mapped by the handling instance itself.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the pool "threads" (defaults to the available processors), the "queue"
+	 *            size (defaults to 1000) and the "minRows" of a result to be mapped on the pool (defaults to 100)
+	 * @return The configured pool or null
 	 */
-	@Override
-	public void stop() {
-		//
-		eb.unregisterHandler(getAddress(), this);
-
-		//
-		if(getSession() != null) {
-			getSession().close();
+	protected ExecutorService createMappingPool(JsonObject config) {
+		if(config == null) {
+			return null;
 		}
 
 		//
-		if(getCluster() != null) {
-			getCluster().close();
+		int threads = config.getInteger("threads", Runtime.getRuntime().availableProcessors());
+		final AtomicInteger threadCount = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(config.getInteger("queue", 1000)), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cassandra-persistor-mapping-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	public SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+
+	public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+		this.slowQueryLog = slowQueryLog;
+	}
+
+	/**
+	 * Parse a slow query Json config and create the according log. Without a config (or threshold) the log stays
+	 * disabled.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "threshold" in milliseconds and an optional "traceSampling" fraction
+	 */
+	public void setSlowQueryLog(JsonObject config) {
+		if(config == null || config.getNumber("threshold") == null) {
+			setSlowQueryLog((SlowQueryLog) null);
+			return;
 		}
 
 		//
-		super.stop();
+		setSlowQueryLog(new SlowQueryLog(config.getLong("threshold"), config.getNumber("traceSampling", 0).doubleValue(), getQueryOptions().getConsistencyLevel(), logger));
 	}
 
-	/* ***** GETTER/SETTER ***** */
-	public Cluster getCluster() {
-		return cluster;
+	public ResultCache getResultCache() {
+		return resultCache;
 	}
 
-	public void setCluster(Cluster cluster) {
-		this.cluster = cluster;
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
 	}
 
-	public Session getSession() {
-		return session;
+	/**
+	 * Parse a result cache Json config and create the cache. Without a config the cache stays disabled.
+	 * 
+	 * @param config
+	 *            The JsonObject containing the "maxWeight" (serialised characters, defaults to 10 MB) and the default
+	 *            "ttl" in milliseconds (defaults to 60000)
+	 * @return The configured cache or null
+	 */
+	protected ResultCache createResultCache(JsonObject config) {
+		if(config == null) {
+			return null;
+		}
+
+		//
+		return new ResultCache(config.getLong("maxWeight", 10 * 1024 * 1024), config.getLong("ttl", 60000), logger);
 	}
 
 	/**
-	 * Set the Cassandra connection session and forward that to the prepared statement cache for PreparedStatement
-	 * creation.
+	 * Parse a spool Json config and open the spool file. Without a config writes are not spooled.
 	 * 
-	 * @param session
+	 * @param config
+	 *            The JsonObject containing the spool "file" and its "size" in bytes (defaults to 64 MB)
+	 * @return The opened spool or null
+	 * @throws IOException
+	 *             If the spool file could not be opened
 	 */
-	public void setSession(Session session) {
-		this.session = session;
+	protected WriteSpool createWriteSpool(JsonObject config) throws IOException {
+		if(config == null || config.getString("file") == null) {
+			return null;
+		}
 
-		// Add the newest sessions always as source for prepared statements to
-		// the cache
-		if(getPreparedStatementCache() != null) {
-			getPreparedStatementCache().setSession(session);	
+		//
+		WriteSpool writeSpool = new WriteSpool(new File(config.getString("file")), config.getInteger("size", 64 * 1024 * 1024));
+		if(writeSpool.size() > 0) {
+			logger.info("[Cassandra Persistor] Found " + writeSpool.size() + " spooled writes in " + writeSpool.getFile());
 		}
+		return writeSpool;
 	}
 
-	public String getAddress() {
-		return address;
+	public int getSpoolConcurrency() {
+		return spoolConcurrency;
 	}
 
-	public void setAddress(String address) {
-		this.address = address;
+	public void setSpoolConcurrency(int spoolConcurrency) {
+		this.spoolConcurrency = spoolConcurrency;
 	}
 
-	public JsonArray getHosts() {
-		return hosts;
+	public long getSpoolTimer() {
+		return spoolTimer;
 	}
 
-	public void setHosts(JsonArray hosts) {
-		this.hosts = hosts;
+	public void setSpoolTimer(long spoolTimer) {
+		this.spoolTimer = spoolTimer;
 	}
 
-	public String getKeyspace() {
-		return keyspace;
+	public String getBatchDeploymentId() {
+		return batchDeploymentId;
 	}
 
-	public void setKeyspace(String keyspace) {
-		this.keyspace = keyspace;
+	public void setBatchDeploymentId(String batchDeploymentId) {
+		this.batchDeploymentId = batchDeploymentId;
 	}
 
-	public void setPort(int port) {
-		this.port = port;
+	public WeightedFairQueue<Message<JsonObject>> getScheduler() {
+		return scheduler;
 	}
 
-	public int getPort() {
-		return port;
+	public void setScheduler(WeightedFairQueue<Message<JsonObject>> scheduler) {
+		this.scheduler = scheduler;
 	}
 
 	/**
-	 * Derive the compression option from the enum based on the given string. Defaults to NONE.
+	 * Parse a scheduling Json config and create the weighted fair queue in front of the execution. Without a config
+	 * messages are processed in order of their arrival.
 	 * 
-	 * @param compression
-	 *            The name of the compression chosen (either NONE, SNAPPY or LZ4)
+	 * @param config
+	 *            The JsonObject containing the "lanes" with their weights (defaults to "priority" 8 and "default" 1)
+	 *            and the "maxQueued" messages (defaults to 10000)
 	 */
-	public void setCompression(String compression) {
-		try {
-			this.compression = ProtocolOptions.Compression.valueOf(compression);
-		} catch(Exception e) {
-			this.compression = ProtocolOptions.Compression.NONE;
+	public void setScheduler(JsonObject config) {
+		if(config == null) {
+			setScheduler((WeightedFairQueue<Message<JsonObject>>) null);
+			return;
+		}
+
+		//
+		JsonObject lanes = config.getObject("lanes", new JsonObject().putNumber(PRIORITY_LANE, 8).putNumber(DEFAULT_LANE, 1));
+		Map<String, Integer> weights = new LinkedHashMap<>();
+		for(String lane : lanes.getFieldNames()) {
+			weights.put(lane, lanes.getInteger(lane));
 		}
+		setScheduler(new WeightedFairQueue<Message<JsonObject>>(weights, DEFAULT_LANE, config.getInteger("maxQueued", 10000)));
 	}
 
-	public void setCompression(ProtocolOptions.Compression compression) {
-		this.compression = compression;
+	/**
+	 * 
+	 * @return The address of the priority lane
+	 */
+	public String getPriorityAddress() {
+		// Like the batch address without duplicating a trailing "."
+		return getAddress().endsWith(".") ? getAddress() + PRIORITY_LANE : getAddress() + "." + PRIORITY_LANE;
 	}
 
-	public ProtocolOptions.Compression getCompression() {
-		return compression;
+	public CircuitBreaker getTableCircuitBreaker() {
+		return tableCircuitBreaker;
 	}
 
-	public RetryPolicy getRetryPolicy() {
-		return retryPolicy;
+	public void setTableCircuitBreaker(CircuitBreaker tableCircuitBreaker) {
+		this.tableCircuitBreaker = tableCircuitBreaker;
 	}
 
-	public void setRetryPolicy(RetryPolicy retryPolicy) {
-		this.retryPolicy = retryPolicy;
+	public CircuitBreaker getHostCircuitBreaker() {
+		return hostCircuitBreaker;
+	}
+
+	public void setHostCircuitBreaker(CircuitBreaker hostCircuitBreaker) {
+		this.hostCircuitBreaker = hostCircuitBreaker;
 	}
 
 	/**
-	 * Derive the retry policy from the given string to the implementation. Defaults to {@link DefaultRetryPolicy}.
+	 * Parse a circuit breaker Json config and create the circuit breakers of tables and hosts. Without a config no
+	 * circuit is broken.
 	 * 
-	 * @param retryPolicy
-	 *            The name of the retry policy to use. Can be "downgrading" {@link DowngradingConsistencyRetryPolicy} or
-	 *            "fallthrough" {@link FallthroughRetryPolicy}. Everything else defaults to
-	 *            Policies.defaultRetryPolicy()
+	 * @param config
+	 *            The JsonObject containing the measuring "window" in milliseconds (defaults to 10000), the
+	 *            "minRequests" per window (defaults to 20), the "errorRate" opening a circuit (defaults to 0.5), the
+	 *            "slowThreshold" in milliseconds counting requests as failed (defaults to 0, disabled), the "openTime"
+	 *            in milliseconds (defaults to 5000), the "probes" closing a circuit again (defaults to 3) and whether
+	 *            to break per "tables" and "hosts" (both default to true)
 	 */
-	public void setRetryPolicy(String retryPolicy) {
-		switch(retryPolicy) {
-			case "downgrading":
-				setRetryPolicy(DowngradingConsistencyRetryPolicy.INSTANCE);
-				break;
-
-			case "fallthrough":
-				setRetryPolicy(FallthroughRetryPolicy.INSTANCE);
-				break;
+	public void setCircuitBreaker(JsonObject config) {
+		setTableCircuitBreaker(null);
+		setHostCircuitBreaker(null);
+		if(config == null) {
+			return;
+		}
 
-			default:
-				setRetryPolicy(Policies.defaultRetryPolicy());
-				break;
+		//
+		long window = config.getLong("window", 10000);
+		int minRequests = config.getInteger("minRequests", 20);
+		double errorRate = config.containsField("errorRate") ? config.getNumber("errorRate").doubleValue() : 0.5;
+		long slowThreshold = config.getLong("slowThreshold", 0);
+		long openTime = config.getLong("openTime", 5000);
+		int probes = config.getInteger("probes", 3);
+		if(config.getBoolean("tables", true)) {
+			setTableCircuitBreaker(new CircuitBreaker(window, minRequests, errorRate, slowThreshold, openTime, probes, logger));
+		}
+		if(config.getBoolean("hosts", true)) {
+			setHostCircuitBreaker(new CircuitBreaker(window, minRequests, errorRate, slowThreshold, openTime, probes, logger));
 		}
 	}
 
-	public ReconnectionPolicy getReconnectionPolicy() {
-		return reconnectionPolicy;
+	public RateLimiter getCallerRateLimiter() {
+		return callerRateLimiter;
 	}
 
-	public void setReconnectionPolicy(ReconnectionPolicy reconnectionPolicy) {
-		this.reconnectionPolicy = reconnectionPolicy;
+	public void setCallerRateLimiter(RateLimiter callerRateLimiter) {
+		this.callerRateLimiter = callerRateLimiter;
+	}
+
+	public RateLimiter getTableRateLimiter() {
+		return tableRateLimiter;
+	}
+
+	public void setTableRateLimiter(RateLimiter tableRateLimiter) {
+		this.tableRateLimiter = tableRateLimiter;
+	}
+
+	public boolean isRateLimitDelay() {
+		return rateLimitDelay;
+	}
+
+	public void setRateLimitDelay(boolean rateLimitDelay) {
+		this.rateLimitDelay = rateLimitDelay;
+	}
+
+	public long getRateLimitMaxDelay() {
+		return rateLimitMaxDelay;
+	}
+
+	public void setRateLimitMaxDelay(long rateLimitMaxDelay) {
+		this.rateLimitMaxDelay = rateLimitMaxDelay;
 	}
 
 	/**
-	 * Set the reconnection policy to define how often and in what interval to retry setup connections.
+	 * Parse a rate limit Json config and create the rate limiters of callers and tables. Without a config no rate is
+	 * limited.
 	 * 
-	 * @param policy
-	 *            The reconnection policy as string "constant" {@link ConstantReconnectionPolicy} or "exponential"
-	 *            {@link ExponentialReconnectionPolicy}
-	 * @param delay
-	 *            The initial or constant delay
-	 * @param max
-	 *            The maximum delay (only required for {@link ExponentialReconnectionPolicy})
+	 * @param config
+	 *            The JsonObject containing the "mode" ("reject" or "delay", defaults to reject), the "maxDelay" in
+	 *            milliseconds (defaults to 1000) and the "callers" and "tables" limits
 	 */
-	public void setReconnectionPolicy(String policy, int delay, int... max) {
-		switch(policy) {
-			case "constant":
-				setReconnectionPolicy(new ConstantReconnectionPolicy(delay));
-				break;
-
-			case "exponential":
-				setReconnectionPolicy(new ExponentialReconnectionPolicy(delay, max[0]));
-				break;
-
-			default:
-				setReconnectionPolicy(Policies.defaultReconnectionPolicy());
-				break;
+	public void setRateLimits(JsonObject config) {
+		setCallerRateLimiter(null);
+		setTableRateLimiter(null);
+		if(config == null) {
+			return;
 		}
+
+		//
+		setRateLimitDelay("delay".equals(config.getString("mode", "reject")));
+		setRateLimitMaxDelay(config.getLong("maxDelay", 1000));
+		setCallerRateLimiter(createRateLimiter(config.getObject("callers")));
+		setTableRateLimiter(createRateLimiter(config.getObject("tables")));
 	}
 
 	/**
-	 * Parse a Reconnection Json Config and identify how to set parameters
 	 * 
 	 * @param config
+	 *            The JsonObject with the limits (the "rate" per second and the "burst", defaults to the rate) by key
+	 *            and "default" for all other keys
+	 * @return The rate limiter or null if no limit is configured
 	 */
-	public void setReconnectionPolicy(JsonObject config) {
-		String policy = config.getString("policy");
-		Integer delay = config.getInteger("delay");
-		Integer max = config.getInteger("max");
+	protected RateLimiter createRateLimiter(JsonObject config) {
+		if(config == null) {
+			return null;
+		}
 
 		//
-		if(policy == null || delay == null) {
-			return;
-		} else {
-			if(max != null) {
-				setReconnectionPolicy(policy, delay, max);
+		Map<String, RateLimiter.Limit> limits = new HashMap<>();
+		RateLimiter.Limit defaultLimit = null;
+		for(String key : config.getFieldNames()) {
+			JsonObject limitConfig = config.getObject(key);
+			double rate = limitConfig.getNumber("rate").doubleValue();
+			RateLimiter.Limit limit = new RateLimiter.Limit(rate, limitConfig.containsField("burst") ? limitConfig.getNumber("burst").doubleValue() : rate);
+			if("default".equals(key)) {
+				defaultLimit = limit;
 			} else {
-				setReconnectionPolicy(policy, delay);
+				limits.put(key, limit);
 			}
 		}
+		return new RateLimiter(limits, defaultLimit);
 	}
 
-	public void setQueryOptions(QueryOptions queryOptions) {
-		this.queryOptions = queryOptions;
-	}
-
-	public QueryOptions getQueryOptions() {
-		return queryOptions;
-	}
-
-	public void setDateFormatter(SimpleDateFormat dateFormatter) {
-		this.dateFormatter = dateFormatter;
+	public SharedSession getSharedSession() {
+		return sharedSession;
 	}
 
-	public SimpleDateFormat getDateFormatter() {
-		return dateFormatter;
+	public void setSharedSession(SharedSession sharedSession) {
+		this.sharedSession = sharedSession;
 	}
 
 	public PreparedStatementCache getPreparedStatementCache() {
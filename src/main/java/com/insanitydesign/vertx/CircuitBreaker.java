@@ -0,0 +1,292 @@
+package com.insanitydesign.vertx;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Keyed circuit breaker (e.g. per table or host). A circuit opens once the failures (errors and slow requests) of a
+ * window reach the configured rate and rejects all requests for the open time. Afterwards it half-opens, lets a few
+ * probe requests through and closes again once they all succeeded or opens again on the first failure.
+ * 
+ * @author insanitydesign
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The states of a circuit.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/** The length of a measuring window in milliseconds */
+	private long window;
+
+	/** The min amount of requests in a window to decide on its error rate */
+	private int minRequests;
+
+	/** The rate of failed requests (0.0 - 1.0) opening the circuit */
+	private double errorRate;
+
+	/** The latency in milliseconds a request counts as failed from (0 to disable) */
+	private long slowThreshold;
+
+	/** The time in milliseconds a circuit stays open before probing */
+	private long openTime;
+
+	/** The amount of successful probes closing a half-open circuit */
+	private int probes;
+
+	/** The circuits by key */
+	private ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+	/** The logger for state changes */
+	private Logger logger;
+
+	/**
+	 * 
+	 * @param window
+	 *            The length of a measuring window in milliseconds
+	 * @param minRequests
+	 *            The min amount of requests in a window to decide on its error rate
+	 * @param errorRate
+	 *            The rate of failed requests (0.0 - 1.0) opening the circuit
+	 * @param slowThreshold
+	 *            The latency in milliseconds a request counts as failed from (0 to disable)
+	 * @param openTime
+	 *            The time in milliseconds a circuit stays open before probing
+	 * @param probes
+	 *            The amount of successful probes closing a half-open circuit
+	 * @param logger
+	 */
+	public CircuitBreaker(long window, int minRequests, double errorRate, long slowThreshold, long openTime, int probes, Logger logger) {
+		this.window = Math.max(window, 1);
+		this.minRequests = Math.max(minRequests, 1);
+		this.errorRate = errorRate;
+		this.slowThreshold = slowThreshold;
+		this.openTime = openTime;
+		this.probes = Math.max(probes, 1);
+		this.logger = logger;
+	}
+
+	/**
+	 * Check whether a request may pass. Requests allowed through a half-open circuit count as probes and have to be
+	 * recorded.
+	 * 
+	 * @param key
+	 * @return false if the circuit is open or all probes are in flight
+	 */
+	public boolean allow(String key) {
+		Circuit circuit = this.circuits.get(key);
+		if(circuit == null) {
+			return true;
+		}
+
+		//
+		synchronized(circuit) {
+			if(circuit.state == State.OPEN) {
+				if(now() < circuit.openUntil) {
+					return false;
+				}
+				// The open time passed, this is the first probe
+				circuit.halfOpen();
+			}
+			//
+			if(circuit.state == State.HALF_OPEN) {
+				if(circuit.probesInFlight >= this.probes) {
+					return false;
+				}
+				circuit.probesInFlight++;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Check whether the circuit is open without taking a probe, e.g. to skip a host in a query plan.
+	 * 
+	 * @param key
+	 * @return true if the circuit is open and its open time not yet passed
+	 */
+	public boolean isOpen(String key) {
+		Circuit circuit = this.circuits.get(key);
+		if(circuit == null) {
+			return false;
+		}
+		synchronized(circuit) {
+			return circuit.state == State.OPEN && now() < circuit.openUntil;
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if any circuit is open
+	 */
+	public boolean isAnyOpen() {
+		for(String key : this.circuits.keySet()) {
+			if(isOpen(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Record the outcome of a request.
+	 * 
+	 * @param key
+	 * @param latency
+	 *            The latency in milliseconds
+	 * @param failed
+	 *            Whether the request failed
+	 */
+	public void record(String key, long latency, boolean failed) {
+		Circuit circuit = this.circuits.get(key);
+		if(circuit == null) {
+			circuit = new Circuit(now());
+			Circuit existing = this.circuits.putIfAbsent(key, circuit);
+			circuit = existing != null ? existing : circuit;
+		}
+		failed |= this.slowThreshold > 0 && latency >= this.slowThreshold;
+
+		//
+		synchronized(circuit) {
+			long now = now();
+			// Requests in flight while opening are ignored until the open time passed
+			if(circuit.state == State.OPEN) {
+				if(now < circuit.openUntil) {
+					return;
+				}
+				circuit.halfOpen();
+			}
+
+			//
+			if(circuit.state == State.HALF_OPEN) {
+				circuit.probesInFlight = Math.max(circuit.probesInFlight - 1, 0);
+				if(failed) {
+					open(key, circuit, now);
+				} else if(++circuit.probeSuccesses >= this.probes) {
+					circuit.close(now);
+					if(this.logger != null) {
+						this.logger.info("[Cassandra Persistor] Closed circuit of " + key);
+					}
+				}
+				return;
+			}
+
+			//
+			if(now - circuit.windowStart >= this.window) {
+				circuit.close(now);
+			}
+			circuit.requests++;
+			if(failed) {
+				circuit.failures++;
+			}
+			if(circuit.requests >= this.minRequests && circuit.failures >= this.errorRate * circuit.requests) {
+				open(key, circuit, now);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param key
+	 * @return The current state of the circuit
+	 */
+	public State getState(String key) {
+		Circuit circuit = this.circuits.get(key);
+		if(circuit == null) {
+			return State.CLOSED;
+		}
+		synchronized(circuit) {
+			return circuit.state;
+		}
+	}
+
+	/**
+	 * 
+	 * @param key
+	 * @param circuit
+	 * @param now
+	 */
+	private void open(String key, Circuit circuit, long now) {
+		if(this.logger != null) {
+			this.logger.warn("[Cassandra Persistor] Opened circuit of " + key + " for " + this.openTime + "ms");
+		}
+		circuit.state = State.OPEN;
+		circuit.openUntil = now + this.openTime;
+	}
+
+	/**
+	 * 
+	 * @return The current time in milliseconds
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public long getOpenTime() {
+		return openTime;
+	}
+
+	/**
+	 * The state and measuring window of a single key.
+	 */
+	private static class Circuit {
+
+		/** The current state */
+		private State state = State.CLOSED;
+
+		/** The start of the current window */
+		private long windowStart;
+
+		/** The requests of the current window */
+		private int requests;
+
+		/** The failed requests of the current window (or the opening one) */
+		private int failures;
+
+		/** The end of the open time */
+		private long openUntil;
+
+		/** The probes allowed but not yet recorded */
+		private int probesInFlight;
+
+		/** The successful probes since half-opening */
+		private int probeSuccesses;
+
+		/**
+		 * 
+		 * @param now
+		 */
+		private Circuit(long now) {
+			this.windowStart = now;
+		}
+
+		/**
+		 * 
+		 */
+		private void halfOpen() {
+			this.state = State.HALF_OPEN;
+			this.probesInFlight = 0;
+			this.probeSuccesses = 0;
+		}
+
+		/**
+		 * 
+		 * @param now
+		 */
+		private void close(long now) {
+			this.state = State.CLOSED;
+			this.windowStart = now;
+			this.requests = 0;
+			this.failures = 0;
+		}
+	}
+}
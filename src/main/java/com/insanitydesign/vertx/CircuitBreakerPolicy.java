@@ -0,0 +1,131 @@
+package com.insanitydesign.vertx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.datastax.driver.core.policies.ChainableLoadBalancingPolicy;
+import com.datastax.driver.core.policies.CloseableLoadBalancingPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+
+/**
+ * Load balancing policy breaking the circuit of coordinator hosts. Registered as latency tracker it records every
+ * request per host and skips hosts with an open circuit in the query plans of its child policy. Once the open time
+ * passed the host is part of the query plans again and the next requests decide whether its circuit closes. If all
+ * hosts are open requests fail fast without any host tried.
+ * 
+ * @author insanitydesign
+ */
+public class CircuitBreakerPolicy implements ChainableLoadBalancingPolicy, CloseableLoadBalancingPolicy, LatencyTracker {
+
+	/** The policy creating the query plans */
+	private LoadBalancingPolicy childPolicy;
+
+	/** The circuits by host */
+	private CircuitBreaker circuitBreaker;
+
+	/**
+	 * 
+	 * @param childPolicy
+	 *            The policy creating the query plans
+	 * @param circuitBreaker
+	 *            The circuits by host
+	 */
+	public CircuitBreakerPolicy(LoadBalancingPolicy childPolicy, CircuitBreaker circuitBreaker) {
+		this.childPolicy = childPolicy;
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	@Override
+	public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+		// Invalid statements fail on every host and say nothing about this one
+		getCircuitBreaker().record(key(host), TimeUnit.NANOSECONDS.toMillis(newLatencyNanos), exception != null && !(exception instanceof QueryValidationException));
+	}
+
+	@Override
+	public Iterator<Host> newQueryPlan(String loggedKeyspace, Statement statement) {
+		List<Host> queryPlan = new ArrayList<>();
+		Iterator<Host> hosts = getChildPolicy().newQueryPlan(loggedKeyspace, statement);
+		while(hosts.hasNext()) {
+			Host host = hosts.next();
+			if(!getCircuitBreaker().isOpen(key(host))) {
+				queryPlan.add(host);
+			}
+		}
+		return queryPlan.iterator();
+	}
+
+	@Override
+	public void init(Cluster cluster, Collection<Host> hosts) {
+		getChildPolicy().init(cluster, hosts);
+	}
+
+	@Override
+	public HostDistance distance(Host host) {
+		return getChildPolicy().distance(host);
+	}
+
+	@Override
+	public void onAdd(Host host) {
+		getChildPolicy().onAdd(host);
+	}
+
+	@Override
+	public void onUp(Host host) {
+		getChildPolicy().onUp(host);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public void onSuspected(Host host) {
+		getChildPolicy().onSuspected(host);
+	}
+
+	@Override
+	public void onDown(Host host) {
+		getChildPolicy().onDown(host);
+	}
+
+	@Override
+	public void onRemove(Host host) {
+		getChildPolicy().onRemove(host);
+	}
+
+	@Override
+	public void close() {
+		if(getChildPolicy() instanceof CloseableLoadBalancingPolicy) {
+			((CloseableLoadBalancingPolicy) getChildPolicy()).close();
+		}
+	}
+
+	/**
+	 * 
+	 * @param host
+	 * @return The circuit key of the host
+	 */
+	protected static String key(Host host) {
+		return "host " + host.getAddress().getHostAddress();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	@Override
+	public LoadBalancingPolicy getChildPolicy() {
+		return childPolicy;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+}
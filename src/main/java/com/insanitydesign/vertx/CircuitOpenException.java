@@ -0,0 +1,37 @@
+package com.insanitydesign.vertx;
+
+/**
+ * Thrown instead of executing a statement while the circuit of its table is open.
+ * 
+ * @author insanitydesign
+ */
+public class CircuitOpenException extends RuntimeException {
+
+	/** */
+	private static final long serialVersionUID = 1L;
+
+	/** The error code replied for requests failing fast */
+	public static final String CODE = "CIRCUIT_OPEN";
+
+	/** The key of the open circuit */
+	private String key;
+
+	/**
+	 * 
+	 * @param key
+	 *            The key of the open circuit
+	 */
+	public CircuitOpenException(String key) {
+		super("Circuit of " + key + " is open, failing fast!");
+		this.key = key;
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public String getKey() {
+		return key;
+	}
+}
@@ -0,0 +1,147 @@
+package com.insanitydesign.vertx;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Aggregates counter deltas per counter statement (table and column) and primary key until they are flushed as a
+ * single increment each. The buffer belongs to one persistor instance and is only accessed from its context, therefore
+ * it is not synchronized.
+ * 
+ * @author insanitydesign
+ */
+public class CounterBuffer {
+
+	/** The aggregated deltas by counter, in order of their first increment */
+	private Map<Counter, long[]> deltas = new LinkedHashMap<>();
+
+	/** The amount of counters after which the buffer should be flushed */
+	private int maxSize;
+
+	/**
+	 * 
+	 * @param maxSize
+	 *            The amount of counters after which the buffer should be flushed
+	 */
+	public CounterBuffer(int maxSize) {
+		this.maxSize = Math.max(maxSize, 1);
+	}
+
+	/**
+	 * Add the given delta to the counter.
+	 * 
+	 * @param statement
+	 *            The counter UPDATE statement (delta first, primary key after)
+	 * @param key
+	 *            The primary key values
+	 * @param delta
+	 *            The delta to add
+	 * @return true if the buffer is full and should be flushed
+	 */
+	public boolean add(String statement, Object[] key, long delta) {
+		Counter counter = new Counter(statement, key);
+		long[] aggregated = this.deltas.get(counter);
+		if(aggregated == null) {
+			this.deltas.put(counter, new long[] { delta });
+		} else {
+			aggregated[0] += delta;
+		}
+
+		//
+		return this.deltas.size() >= this.maxSize;
+	}
+
+	/**
+	 * Take all aggregated increments out of the buffer, skipping those summing up to 0.
+	 * 
+	 * @return The counters with their aggregated delta
+	 */
+	public List<Entry<Counter, Long>> drain() {
+		List<Entry<Counter, Long>> increments = new ArrayList<>(this.deltas.size());
+		for(Entry<Counter, long[]> entry : this.deltas.entrySet()) {
+			if(entry.getValue()[0] != 0) {
+				increments.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue()[0]));
+			}
+		}
+		this.deltas.clear();
+		return increments;
+	}
+
+	/**
+	 * 
+	 * @return The amount of buffered counters
+	 */
+	public int size() {
+		return this.deltas.size();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * A single counter identified by its statement and primary key.
+	 */
+	public static class Counter {
+
+		/** The counter UPDATE statement */
+		private String statement;
+
+		/** The primary key values */
+		private Object[] key;
+
+		/** The precomputed hash */
+		private int hash;
+
+		/**
+		 * 
+		 * @param statement
+		 * @param key
+		 */
+		public Counter(String statement, Object[] key) {
+			this.statement = statement;
+			this.key = key;
+			this.hash = 31 * statement.hashCode() + Arrays.hashCode(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof Counter)) {
+				return false;
+			}
+			Counter counter = (Counter) object;
+			return this.hash == counter.hash && this.statement.equals(counter.statement) && Arrays.equals(this.key, counter.key);
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public String getStatement() {
+			return statement;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public Object[] getKey() {
+			return key;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.insanitydesign.vertx;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lightweight helpers to derive information from CQL3 statement strings without a full parser, e.g. the addressed
+ * table to invalidate caches.
+ * 
+ * @author insanitydesign
+ */
+public final class CqlUtils {
+
+	/** Identifies the table addressed by SELECT, INSERT, UPDATE, DELETE and TRUNCATE statements */
+	private static final Pattern TABLE_PATTERN = Pattern.compile(
+			"^\\s*(?:select\\s+.+?\\s+from|insert\\s+into|update|delete\\s+.*?from|delete\\s+from|truncate(?:\\s+table)?)\\s+([\\w\"]+(?:\\s*\\.\\s*[\\w\"]+)?)",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/**
+	 * 
+	 */
+	private CqlUtils() {
+	}
+
+	/**
+	 * Check if the given statement is a SELECT query.
+	 * 
+	 * @param statement
+	 *            The CQL3 statement
+	 * @return true if the statement is a SELECT query
+	 */
+	public static boolean isSelect(String statement) {
+		return statement != null && statement.trim().toLowerCase().startsWith("select");
+	}
+
+	/**
+	 * Derive the table addressed by the given statement, qualified with its keyspace and lowercased (unless quoted).
+	 * 
+	 * @param statement
+	 *            The CQL3 statement
+	 * @param keyspace
+	 *            The keyspace to qualify unqualified tables with (may be null)
+	 * @return The table as "keyspace.table" or null if none could be identified
+	 */
+	public static String getTable(String statement, String keyspace) {
+		if(statement == null) {
+			return null;
+		}
+
+		//
+		Matcher matcher = TABLE_PATTERN.matcher(statement);
+		if(!matcher.find()) {
+			return null;
+		}
+
+		//
+		String[] parts = matcher.group(1).split("\\.");
+		if(parts.length == 1) {
+			return (keyspace == null || keyspace.isEmpty()) ? normalize(parts[0]) : normalize(keyspace) + "." + normalize(parts[0]);
+		}
+		return normalize(parts[0]) + "." + normalize(parts[1]);
+	}
+
+	/**
+	 * Normalize a CQL identifier as Cassandra does: quoted identifiers keep their case, others are lowercased.
+	 * 
+	 * @param identifier
+	 * @return The normalized identifier
+	 */
+	protected static String normalize(String identifier) {
+		identifier = identifier.trim();
+		if(identifier.length() > 1 && identifier.startsWith("\"") && identifier.endsWith("\"")) {
+			return identifier.substring(1, identifier.length() - 1);
+		}
+		return identifier.toLowerCase();
+	}
+}
@@ -0,0 +1,312 @@
+package com.insanitydesign.vertx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes result rows straight from the raw column bytes into a JSON array through a streaming generator. In contrast to
+ * {@link CassandraPersistor#processResult(ResultSet, org.vertx.java.core.json.JsonArray)} no JsonObject per row is
+ * created and the reply payload is produced in a single pass. The output format equals the encoded JsonArray of
+ * processResult.
+ * 
+ * @author insanitydesign
+ */
+public class JsonResultWriter {
+
+	/** Thread-safe factory, recycling the generators internal buffers per thread */
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/** Buffers larger than this are not kept for reuse to not pin memory */
+	private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+
+	/** The reusable output buffer per thread */
+	private static final ThreadLocal<ReusableOutputStream> OUTPUT = new ThreadLocal<ReusableOutputStream>() {
+		@Override
+		protected ReusableOutputStream initialValue() {
+			return new ReusableOutputStream();
+		}
+	};
+
+	/** The protocol version to deserialize complex column values with */
+	private ProtocolVersion protocolVersion;
+
+	/**
+	 * 
+	 * @param protocolVersion
+	 *            The protocol version to deserialize complex column values with
+	 */
+	public JsonResultWriter(ProtocolVersion protocolVersion) {
+		this.protocolVersion = protocolVersion;
+	}
+
+	/**
+	 * Write all rows of all given result sets into one JSON array.
+	 * 
+	 * @param resultSets
+	 *            The results to iterate over
+	 * @return A Buffer containing the UTF-8 encoded JSON array
+	 * @throws IOException
+	 */
+	public Buffer write(Iterable<ResultSet> resultSets) throws IOException {
+		ReusableOutputStream output = OUTPUT.get();
+		output.reset();
+
+		//
+		try(JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+			generator.writeStartArray();
+			for(ResultSet resultSet : resultSets) {
+				for(Row row : resultSet) {
+					writeRow(row, generator);
+				}
+			}
+			generator.writeEndArray();
+		}
+
+		//
+		Buffer buffer = new Buffer(output.toByteArray());
+		if(output.capacity() > MAX_REUSED_BUFFER_SIZE) {
+			OUTPUT.remove();
+		}
+		return buffer;
+	}
+
+	/**
+	 * Write a single row as JSON object, skipping null and empty columns.
+	 * 
+	 * @param row
+	 * @param generator
+	 * @throws IOException
+	 */
+	protected void writeRow(Row row, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		//
+		ColumnDefinitions columnDefinitions = row.getColumnDefinitions();
+		for(int i = 0; i < columnDefinitions.size(); i++) {
+			ByteBuffer bytes = row.getBytesUnsafe(i);
+			if(bytes == null || isEmpty(columnDefinitions.getType(i), bytes)) {
+				continue;
+			}
+			//
+			generator.writeFieldName(columnDefinitions.getName(i));
+			writeColumn(columnDefinitions.getType(i), bytes, generator);
+		}
+		//
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Write a column value directly from its bytes for all native types and fall back to the driver deserialization for
+	 * complex ones.
+	 * 
+	 * @param type
+	 * @param bytes
+	 * @param generator
+	 * @throws IOException
+	 */
+	protected void writeColumn(DataType type, ByteBuffer bytes, JsonGenerator generator) throws IOException {
+		int position = bytes.position();
+		// Not read directly if not of the width of the type
+		int width = getFixedWidth(type.getName());
+		if(width > 0 && bytes.remaining() != width) {
+			writeValue(type.deserialize(bytes.duplicate(), this.protocolVersion), generator);
+			return;
+		}
+
+		//
+		switch(type.getName()) {
+			case ASCII:
+			case TEXT:
+			case VARCHAR:
+				if(bytes.hasArray()) {
+					generator.writeUTF8String(bytes.array(), bytes.arrayOffset() + position, bytes.remaining());
+				} else {
+					byte[] text = new byte[bytes.remaining()];
+					bytes.duplicate().get(text);
+					generator.writeUTF8String(text, 0, text.length);
+				}
+				break;
+
+			case INT:
+				generator.writeNumber(bytes.getInt(position));
+				break;
+
+			case BIGINT:
+			case COUNTER:
+				generator.writeNumber(bytes.getLong(position));
+				break;
+
+			case FLOAT:
+				generator.writeNumber(bytes.getFloat(position));
+				break;
+
+			case DOUBLE:
+				generator.writeNumber(bytes.getDouble(position));
+				break;
+
+			case BOOLEAN:
+				generator.writeBoolean(bytes.get(position) != 0);
+				break;
+
+			case UUID:
+			case TIMEUUID:
+				generator.writeString(new UUID(bytes.getLong(position), bytes.getLong(position + 8)).toString());
+				break;
+
+			case TIMESTAMP:
+				generator.writeString(new Date(bytes.getLong(position)).toString());
+				break;
+
+			case BLOB:
+				byte[] blob = new byte[bytes.remaining()];
+				bytes.duplicate().get(blob);
+				generator.writeBinary(blob);
+				break;
+
+			default:
+				writeValue(type.deserialize(bytes.duplicate(), this.protocolVersion), generator);
+				break;
+		}
+	}
+
+	/**
+	 * CQL allows empty values for fixed width types too (e.g. <code>blobAsInt(0x)</code>), which the driver cannot
+	 * deserialize. They are skipped like null columns.
+	 * 
+	 * @param type
+	 * @param bytes
+	 *            The column bytes
+	 * @return true if the bytes are an empty value of a fixed width type
+	 */
+	public static boolean isEmpty(DataType type, ByteBuffer bytes) {
+		return bytes.remaining() == 0 && getFixedWidth(type.getName()) > 0;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @return The byte width of the native types read directly from their bytes or -1 if variable
+	 */
+	private static int getFixedWidth(DataType.Name name) {
+		switch(name) {
+			case BOOLEAN:
+				return 1;
+
+			case INT:
+			case FLOAT:
+				return 4;
+
+			case BIGINT:
+			case COUNTER:
+			case DOUBLE:
+			case TIMESTAMP:
+				return 8;
+
+			case UUID:
+			case TIMEUUID:
+				return 16;
+
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Write a deserialized value the same way processResult would add it to a JsonObject.
+	 * 
+	 * @param value
+	 * @param generator
+	 * @throws IOException
+	 */
+	protected void writeValue(Object value, JsonGenerator generator) throws IOException {
+		if(value == null) {
+			generator.writeNull();
+
+		} else if(value instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal) value);
+
+		} else if(value instanceof BigInteger) {
+			generator.writeNumber((BigInteger) value);
+
+		} else if(value instanceof Float) {
+			// Widened to double it would gain digits JsonObject does not write (0.1f as 0.10000000149011612)
+			generator.writeNumber((Float) value);
+
+		} else if(value instanceof Double) {
+			generator.writeNumber((Double) value);
+
+		} else if(value instanceof Number) {
+			generator.writeNumber(((Number) value).longValue());
+
+		} else if(value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+
+		} else if(value instanceof ByteBuffer) {
+			byte[] blob = new byte[((ByteBuffer) value).remaining()];
+			((ByteBuffer) value).duplicate().get(blob);
+			generator.writeBinary(blob);
+
+		} else if(value instanceof Collection<?>) {
+			generator.writeStartArray();
+			for(Object collectionValue : (Collection<?>) value) {
+				writeValue(collectionValue, generator);
+			}
+			generator.writeEndArray();
+
+		} else if(value instanceof Map<?, ?>) {
+			generator.writeStartObject();
+			for(Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				generator.writeFieldName(entry.getKey().toString());
+				writeValue(entry.getValue(), generator);
+			}
+			generator.writeEndObject();
+
+		} else if(value instanceof InetAddress) {
+			generator.writeString(((InetAddress) value).getHostAddress());
+
+		} else {
+			// Strings, Dates, UUIDs and everything else
+			generator.writeString(value.toString());
+		}
+	}
+
+	/**
+	 * Output stream exposing its capacity to decide on reuse.
+	 */
+	private static class ReusableOutputStream extends ByteArrayOutputStream {
+
+		/**
+		 * 
+		 */
+		public ReusableOutputStream() {
+			super(8192);
+		}
+
+		/**
+		 * 
+		 * @return The size of the backing array
+		 */
+		public int capacity() {
+			return this.buf.length;
+		}
+	}
+}
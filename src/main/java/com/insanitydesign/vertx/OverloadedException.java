@@ -0,0 +1,24 @@
+package com.insanitydesign.vertx;
+
+/**
+ * Thrown if a request cannot be queued because the persistor has too many requests waiting already.
+ * 
+ * @author insanitydesign
+ */
+public class OverloadedException extends RuntimeException {
+
+	/** */
+	private static final long serialVersionUID = 1L;
+
+	/** The error code replied for rejected requests */
+	public static final String CODE = "OVERLOADED";
+
+	/**
+	 * 
+	 * @param queued
+	 *            The amount of queued requests
+	 */
+	public OverloadedException(int queued) {
+		super("Too many requests queued (" + queued + ")!");
+	}
+}
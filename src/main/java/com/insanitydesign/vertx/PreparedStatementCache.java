@@ -1,15 +1,30 @@
 package com.insanitydesign.vertx;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.vertx.java.core.logging.Logger;
 
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * This serves as cache for prepared statements, implementing logic to handle new, existing and also limiting cache
@@ -22,6 +37,12 @@ public class PreparedStatementCache {
 	/** A concurrency safe HashMap to store all cached statements */
 	private Map<String, CassandraPreparedStatement> cachedStatements = new ConcurrentHashMap<>();
 
+	/** The cached statements by their id to skip sending the CQL text on every call */
+	private Map<String, CassandraPreparedStatement> cachedStatementsById = new ConcurrentHashMap<>();
+
+	/** The default max amount of concurrent PREPARE requests when adding multiple statements */
+	public static final int DEFAULT_PREPARE_CONCURRENCY = 32;
+
 	/** The max size of this cache before statements are removed */
 	private int prepStmtCacheSize;
 
@@ -57,8 +78,23 @@ public class PreparedStatementCache {
 	 * @return A PreparedStatement to fire
 	 */
 	public PreparedStatement addAndGet(String statement) {
+		return addAndGet(statement, 0);
+	}
+
+	/**
+	 * Checks if a statement is already cached and returns that, otherwise prepares it within the given timeout.
+	 * 
+	 * @param statement
+	 *            The CQL Statement to prepare and cache
+	 * @param timeout
+	 *            The max time in milliseconds to wait for the PREPARE response (0 to wait forever)
+	 * @return A PreparedStatement to fire
+	 * @throws RequestTimeoutException
+	 *             If the statement was not prepared in time
+	 */
+	public PreparedStatement addAndGet(String statement, long timeout) {
 		if(!contains(statement)) {
-			return add(statement).useAndGet();
+			return add(statement, timeout).useAndGet();
 		}
 
 		return get(statement).useAndGet();
@@ -74,8 +110,50 @@ public class PreparedStatementCache {
 	 * @return An internal CassandraPreparedStatement containing the PreparedStament and counter
 	 */
 	public CassandraPreparedStatement add(String statement) {
+		return add(statement, getSession().prepare(statement));
+	}
+
+	/**
+	 * Prepare and add the given statement within the given timeout.
+	 * 
+	 * @param statement
+	 *            The CQL Statement to prepare and cache
+	 * @param timeout
+	 *            The max time in milliseconds to wait for the PREPARE response (0 to wait forever)
+	 * @return An internal CassandraPreparedStatement containing the PreparedStament and counter
+	 * @throws RequestTimeoutException
+	 *             If the statement was not prepared in time
+	 */
+	public CassandraPreparedStatement add(String statement, long timeout) {
+		if(timeout <= 0) {
+			return add(statement);
+		}
+
 		//
-		if(size() >= getPrepStmtCacheSize()) {
+		ListenableFuture<PreparedStatement> future = getSession().prepareAsync(statement);
+		try {
+			return add(statement, Uninterruptibles.getUninterruptibly(future, timeout, TimeUnit.MILLISECONDS));
+		} catch(TimeoutException e) {
+			future.cancel(true);
+			throw new RequestTimeoutException(timeout);
+		} catch(ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Add the given already prepared statement by checking if the cache size has been reached and replacing the least
+	 * used statement if so. Synchronized so concurrent adds neither evict the same statement nor overfill the cache.
+	 * 
+	 * @param statement
+	 *            The CQL Statement
+	 * @param preparedStatement
+	 *            Its PreparedStatement
+	 * @return An internal CassandraPreparedStatement containing the PreparedStament and counter
+	 */
+	public synchronized CassandraPreparedStatement add(String statement, PreparedStatement preparedStatement) {
+		//
+		if(size() >= getPrepStmtCacheSize() && !contains(statement)) {
 			//
 			String statementToRemove = "";
 			int minUsage = Integer.MAX_VALUE;
@@ -98,19 +176,115 @@ public class PreparedStatementCache {
 			remove(statementToRemove);
 		}
 		//
-		put(statement, getSession().prepare(statement));
+		put(statement, preparedStatement);
 		return get(statement);
 	}
 
 	/**
-	 * Iterates and adds a list of given statements through @see add(String statement)
+	 * Prepares and adds a list of given statements through {@link #addAll(List, int)} and throws the first failure.
+	 * 
+	 * @param statements
+	 * @throws Exception
+	 *             The first failure preparing a statement
+	 */
+	public void addAll(List<String> statements) throws Exception {
+		for(Exception failure : addAll(statements, DEFAULT_PREPARE_CONCURRENCY).values()) {
+			if(failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Prepares a list of given statements concurrently with at most the given amount of PREPARE requests in flight and
+	 * adds all successfully prepared ones to the cache.
 	 * 
 	 * @param statements
+	 *            The CQL Statements to prepare and cache
+	 * @param concurrency
+	 *            The max amount of concurrent PREPARE requests
+	 * @return The result per statement in given order, null on success or the failure
+	 * @throws InterruptedException
 	 */
-	public void addAll(List<String> statements) {
+	public Map<String, Exception> addAll(List<String> statements, int concurrency) throws InterruptedException {
+		return addAll(statements, concurrency, 0);
+	}
+
+	/**
+	 * Prepares a list of given statements concurrently like {@link #addAll(List, int)}, but only waits for the PREPARE
+	 * responses until the timeout. Statements not prepared in time fail with a {@link RequestTimeoutException}.
+	 * 
+	 * @param statements
+	 *            The CQL Statements to prepare and cache
+	 * @param concurrency
+	 *            The max amount of concurrent PREPARE requests
+	 * @param timeout
+	 *            The max time in milliseconds to wait for all PREPARE responses (0 to wait forever)
+	 * @return The result per statement in given order, null on success or the failure
+	 * @throws InterruptedException
+	 */
+	public Map<String, Exception> addAll(List<String> statements, int concurrency, long timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		//
+		final Map<String, Exception> results = new LinkedHashMap<>();
+		final Map<String, PreparedStatement> prepared = Collections.synchronizedMap(new HashMap<String, PreparedStatement>());
+		final Map<String, Exception> failures = new ConcurrentHashMap<>();
+		final Semaphore inFlight = new Semaphore(Math.max(concurrency, 1));
+		final CountDownLatch done = new CountDownLatch(statements.size());
+
+		//
+		for(final String statement : statements) {
+			if(timeout <= 0) {
+				inFlight.acquire();
+			} else if(!inFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				break;
+			}
+			//
+			ListenableFuture<PreparedStatement> future;
+			try {
+				future = getSession().prepareAsync(statement);
+			} catch(Exception e) {
+				failures.put(statement, e);
+				inFlight.release();
+				done.countDown();
+				continue;
+			}
+			//
+			Futures.addCallback(future, new FutureCallback<PreparedStatement>() {
+				@Override
+				public void onSuccess(PreparedStatement preparedStatement) {
+					prepared.put(statement, preparedStatement);
+					inFlight.release();
+					done.countDown();
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					failures.put(statement, t instanceof Exception ? (Exception) t : new Exception(t));
+					inFlight.release();
+					done.countDown();
+				}
+			});
+		}
+		if(timeout <= 0) {
+			done.await();
+		} else {
+			done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		// Add on the calling thread to keep the cache size handling sequential.
+		// Note: If more statements than cache size are entered, the ladder will
+		// replace the earlier
 		for(String statement : statements) {
-			add(statement);
+			if(prepared.containsKey(statement)) {
+				results.put(statement, null);
+				add(statement, prepared.get(statement));
+			} else {
+				Exception failure = failures.get(statement);
+				results.put(statement, failure != null ? failure : new RequestTimeoutException(timeout));
+			}
 		}
+		return results;
 	}
 
 	/**
@@ -125,7 +299,10 @@ public class PreparedStatementCache {
 		if(logger.isDebugEnabled()) {
 			logger.debug("[Cassandra Persistor] Adding " + statement + " to prepared statement cache!");
 		}
-		return this.cachedStatements.put(statement, new CassandraPreparedStatement(preparedStatement));
+		// Derived from the content, an id can never reference another statement (e.g. after a redeploy or in another JVM)
+		CassandraPreparedStatement cachedStatement = new CassandraPreparedStatement(id(getSession() != null ? getSession().getLoggedKeyspace() : null, statement), preparedStatement);
+		this.cachedStatementsById.put(cachedStatement.getId(), cachedStatement);
+		return this.cachedStatements.put(statement, cachedStatement);
 	}
 
 	/**
@@ -135,7 +312,30 @@ public class PreparedStatementCache {
 	 * @return The CassandraPreparedStatement of the assigned key or null
 	 */
 	public CassandraPreparedStatement remove(String statement) {
-		return this.cachedStatements.remove(statement);
+		CassandraPreparedStatement removed = this.cachedStatements.remove(statement);
+		if(removed != null) {
+			this.cachedStatementsById.remove(removed.getId());
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove all statements addressing one of the given tables, e.g. after their schema changed.
+	 * 
+	 * @param tables
+	 *            The qualified "keyspace.table" names
+	 * @param keyspace
+	 *            The keyspace of unqualified statements
+	 * @return The amount of removed statements
+	 */
+	public int invalidate(Set<String> tables, String keyspace) {
+		int removed = 0;
+		for(String statement : this.cachedStatements.keySet()) {
+			if(tables.contains(CqlUtils.getTable(statement, keyspace)) && remove(statement) != null) {
+				removed++;
+			}
+		}
+		return removed;
 	}
 
 	/**
@@ -165,6 +365,29 @@ public class PreparedStatementCache {
 		return this.cachedStatements.get(statement);
 	}
 
+	/**
+	 * Returns the cached statement of the given id. Ids are valid until their statement is removed from the cache.
+	 * 
+	 * @param id
+	 * @return The CassandraPreparedStatement of the given id or null if unknown or removed
+	 */
+	public CassandraPreparedStatement getById(String id) {
+		return id != null ? this.cachedStatementsById.get(id) : null;
+	}
+
+	/**
+	 * Derive the id of a statement from its content, the same in every JVM and after every restart.
+	 * 
+	 * @param keyspace
+	 *            The keyspace of the session the statement is prepared on (may be null)
+	 * @param statement
+	 *            The CQL Statement
+	 * @return The MD5 hex of keyspace and statement
+	 */
+	public static String id(String keyspace, String statement) {
+		return Hashing.md5().hashString((keyspace != null ? keyspace : "") + "\n" + statement, Charsets.UTF_8).toString();
+	}
+
 	/* ***** GETTER/SETTER ***** */
 	/**
 	 * 
@@ -198,6 +421,14 @@ public class PreparedStatementCache {
 		this.prepStmtCacheSize = prepStmtCacheSize;
 	}
 
+	/**
+	 * 
+	 * @return
+	 */
+	public Logger getLogger() {
+		return logger;
+	}
+
 	/**
 	 * 
 	 * @return
@@ -211,20 +442,25 @@ public class PreparedStatementCache {
 	 */
 	public static class CassandraPreparedStatement {
 
+		/** The id to reference this statement by */
+		private String id;
+
 		/** The counter how many times this prepared statement was requested */
 		private AtomicInteger counter = new AtomicInteger(0);
 
 		/** The backed prepared statement */
 		private PreparedStatement preparedStatement;
 
-		/** */
-		private long lastUsed = System.currentTimeMillis();
+		/** The timestamp of the last use (shared between instances and threads) */
+		private volatile long lastUsed = System.currentTimeMillis();
 
 		/**
 		 * 
+		 * @param id
 		 * @param preparedStatement
 		 */
-		public CassandraPreparedStatement(PreparedStatement preparedStatement) {
+		public CassandraPreparedStatement(String id, PreparedStatement preparedStatement) {
+			this.id = id;
 			this.preparedStatement = preparedStatement;
 		}
 
@@ -281,6 +517,14 @@ public class PreparedStatementCache {
 			return lastUsed;
 		}
 
+		/**
+		 * 
+		 * @return The id to reference this statement by
+		 */
+		public String getId() {
+			return id;
+		}
+
 		/**
 		 * 
 		 * @return
@@ -0,0 +1,37 @@
+package com.insanitydesign.vertx;
+
+/**
+ * Thrown if a caller or table exceeded its rate limit.
+ * 
+ * @author insanitydesign
+ */
+public class RateLimitedException extends RuntimeException {
+
+	/** */
+	private static final long serialVersionUID = 1L;
+
+	/** The error code replied for rate limited requests */
+	public static final String CODE = "RATE_LIMITED";
+
+	/** The limited key */
+	private String key;
+
+	/**
+	 * 
+	 * @param key
+	 *            The limited key (e.g. "caller reporting" or "table ks.events")
+	 */
+	public RateLimitedException(String key) {
+		super("Rate limit of " + key + " exceeded!");
+		this.key = key;
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public String getKey() {
+		return key;
+	}
+}
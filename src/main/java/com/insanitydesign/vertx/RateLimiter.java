@@ -0,0 +1,226 @@
+package com.insanitydesign.vertx;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keyed token buckets (e.g. per caller or table). Every key has a bucket of its own limit or the default limit, filled
+ * with the rate per second up to the burst. A request either takes a token right away or reserves the next one if it
+ * is available within the given max delay, i.e. the bucket goes into debt and the request has to wait until it is paid
+ * off. Keys without a limit are unlimited. Idle buckets are evicted once the amount of buckets doubled since the last
+ * eviction. The buckets are shared by all instances, therefore they are synchronized.
+ * 
+ * @author insanitydesign
+ */
+public class RateLimiter {
+
+	/** The limits by key */
+	private Map<String, Limit> limits;
+
+	/** The limit of keys without an own limit (null for unlimited) */
+	private Limit defaultLimit;
+
+	/** The min amount of buckets before idle ones are evicted */
+	private static final int MIN_SWEEP_SIZE = 1024;
+
+	/** The buckets by key */
+	private ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	/** The amount of buckets at which idle ones are evicted next */
+	private AtomicInteger sweepSize = new AtomicInteger(MIN_SWEEP_SIZE);
+
+	/**
+	 * 
+	 * @param limits
+	 *            The limits by key
+	 * @param defaultLimit
+	 *            The limit of keys without an own limit or null for unlimited
+	 */
+	public RateLimiter(Map<String, Limit> limits, Limit defaultLimit) {
+		this.limits = limits;
+		this.defaultLimit = defaultLimit;
+	}
+
+	/**
+	 * Take a token of the key or reserve the next one.
+	 * 
+	 * @param key
+	 * @param maxDelay
+	 *            The max time in milliseconds to wait for a token (0 to only take available tokens)
+	 * @return The time in milliseconds to wait before the request may pass (0 to pass right away) or -1 if no token is
+	 *         available within the max delay
+	 */
+	public long acquire(String key, long maxDelay) {
+		while(true) {
+			Bucket bucket = getBucket(key);
+			if(bucket == null) {
+				return 0;
+			}
+
+			//
+			synchronized(bucket) {
+				// Evicted meanwhile, take the new bucket of the key
+				if(bucket.evicted) {
+					continue;
+				}
+				refill(bucket);
+				// Tolerate rounding errors of the refilled fractions
+				double missing = 1 - 1e-9 - bucket.tokens;
+				long delay = missing > 0 ? (long) Math.ceil(missing / bucket.limit.rate * 1000) : 0;
+				if(delay > maxDelay) {
+					return -1;
+				}
+				bucket.tokens -= 1;
+				return delay;
+			}
+		}
+	}
+
+	/**
+	 * Evict all idle buckets, i.e. those refilled up to their burst. A new bucket starts with the burst as well, so
+	 * evicting them does not change any limit but keeps the buckets of a changing set of keys bounded.
+	 * 
+	 * @return The amount of evicted buckets
+	 */
+	public int evictIdle() {
+		int evicted = 0;
+		for(Map.Entry<String, Bucket> entry : this.buckets.entrySet()) {
+			Bucket bucket = entry.getValue();
+			synchronized(bucket) {
+				refill(bucket);
+				if(bucket.tokens >= bucket.limit.burst && this.buckets.remove(entry.getKey(), bucket)) {
+					bucket.evicted = true;
+					evicted++;
+				}
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * 
+	 * @return The amount of buckets
+	 */
+	public int size() {
+		return this.buckets.size();
+	}
+
+	/**
+	 * 
+	 * @param bucket
+	 *            The bucket to refill with the rate since its last refill
+	 */
+	private void refill(Bucket bucket) {
+		long now = nanoTime();
+		bucket.tokens = Math.min(bucket.tokens + (now - bucket.lastRefill) / 1e9 * bucket.limit.rate, bucket.limit.burst);
+		bucket.lastRefill = now;
+	}
+
+	/**
+	 * 
+	 * @param key
+	 * @return The bucket of the key or null if unlimited
+	 */
+	private Bucket getBucket(String key) {
+		Bucket bucket = this.buckets.get(key);
+		if(bucket == null) {
+			Limit limit = this.limits.get(key);
+			if(limit == null) {
+				limit = this.defaultLimit;
+			}
+			if(limit == null) {
+				return null;
+			}
+			// Amortised by doubling the size of the next sweep with the remaining buckets
+			int sweepSize = this.sweepSize.get();
+			if(this.buckets.size() >= sweepSize && this.sweepSize.compareAndSet(sweepSize, Integer.MAX_VALUE)) {
+				evictIdle();
+				this.sweepSize.set(Math.max(this.buckets.size() * 2, MIN_SWEEP_SIZE));
+			}
+			//
+			bucket = new Bucket(limit, nanoTime());
+			Bucket existing = this.buckets.putIfAbsent(key, bucket);
+			bucket = existing != null ? existing : bucket;
+		}
+		return bucket;
+	}
+
+	/**
+	 * 
+	 * @return The current time in nanoseconds
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * The rate and burst of a key.
+	 */
+	public static class Limit {
+
+		/** The tokens per second */
+		private double rate;
+
+		/** The max amount of tokens to save up */
+		private double burst;
+
+		/**
+		 * 
+		 * @param rate
+		 *            The tokens per second
+		 * @param burst
+		 *            The max amount of tokens to save up
+		 */
+		public Limit(double rate, double burst) {
+			this.rate = Math.max(rate, 1e-3);
+			this.burst = Math.max(burst, 1);
+		}
+
+		/* ***** GETTER/SETTER ***** */
+		/**
+		 * 
+		 * @return
+		 */
+		public double getRate() {
+			return rate;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public double getBurst() {
+			return burst;
+		}
+	}
+
+	/**
+	 * The tokens of a single key.
+	 */
+	private static class Bucket {
+
+		/** The limit of the key */
+		private Limit limit;
+
+		/** The available tokens (negative if in debt) */
+		private double tokens;
+
+		/** The time of the last refill in nanoseconds */
+		private long lastRefill;
+
+		/** Whether the bucket was evicted from the buckets */
+		private boolean evicted;
+
+		/**
+		 * 
+		 * @param limit
+		 * @param now
+		 */
+		private Bucket(Limit limit, long now) {
+			this.limit = limit;
+			this.tokens = limit.burst;
+			this.lastRefill = now;
+		}
+	}
+}
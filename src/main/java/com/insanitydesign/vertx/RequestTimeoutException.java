@@ -0,0 +1,24 @@
+package com.insanitydesign.vertx;
+
+/**
+ * Thrown if the driver did not answer a request within the timeout of its action.
+ * 
+ * @author insanitydesign
+ */
+public class RequestTimeoutException extends RuntimeException {
+
+	/** */
+	private static final long serialVersionUID = 1L;
+
+	/** The error code replied for timed out requests */
+	public static final String CODE = "TIMEOUT";
+
+	/**
+	 * 
+	 * @param timeout
+	 *            The exceeded timeout in milliseconds
+	 */
+	public RequestTimeoutException(long timeout) {
+		super("No response within " + timeout + "ms!");
+	}
+}
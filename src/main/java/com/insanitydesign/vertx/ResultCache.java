@@ -0,0 +1,345 @@
+package com.insanitydesign.vertx;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Read-through cache for SELECT results keyed by statement and bound values. Entries expire after their TTL, are
+ * evicted least recently used once the serialised size of all results exceeds the configured weight and are
+ * invalidated whenever a write on their table passes the persistor. Every invalidation starts a new generation of the
+ * table, results read in an older generation are not cached.
+ * 
+ * @author insanitydesign
+ */
+public class ResultCache {
+
+	/** The cached results in access order to evict the least recently used first */
+	private LinkedHashMap<String, CachedResult> cachedResults = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** The cache keys per table to invalidate on writes */
+	private Map<String, Set<String>> tableKeys = new HashMap<>();
+
+	/** The generation of the last invalidation per table, results read before it are not cached anymore */
+	private Map<String, Long> tableGenerations = new HashMap<>();
+
+	/** The generation of the last invalidation of all tables */
+	private long clearGeneration;
+
+	/** The counter of all invalidations */
+	private long generation;
+
+	/** The max serialised size of all cached results */
+	private long maxWeight;
+
+	/** The current serialised size of all cached results */
+	private long weight;
+
+	/** The default time to live in milliseconds of cached results */
+	private long ttl;
+
+	/** The container logger for debugging purposes */
+	private Logger logger;
+
+	/**
+	 * Initiate the cache with its max weight and default TTL.
+	 * 
+	 * @param maxWeight
+	 *            The max serialised size (in characters) of all cached results
+	 * @param ttl
+	 *            The default time to live of results in milliseconds
+	 * @param logger
+	 *            The logger to use for debugging
+	 */
+	public ResultCache(long maxWeight, long ttl, Logger logger) {
+		this.maxWeight = Math.max(maxWeight, 0);
+		this.ttl = Math.max(ttl, 0);
+		this.logger = logger;
+	}
+
+	/**
+	 * Create the cache key from the statement and its values.
+	 * 
+	 * @param statement
+	 * @param values
+	 * @return The key identifying this query
+	 */
+	public static String key(String statement, JsonArray values) {
+		return statement + '\u0000' + (values != null ? values.encode() : "");
+	}
+
+	/**
+	 * Return a copy of a cached result if present and not expired.
+	 * 
+	 * @param key
+	 * @return A copy of the cached result or null
+	 */
+	public synchronized JsonArray get(String key) {
+		CachedResult cachedResult = this.cachedResults.get(key);
+		if(cachedResult == null) {
+			return null;
+		}
+
+		//
+		if(cachedResult.isExpired()) {
+			remove(key);
+			return null;
+		}
+		return cachedResult.getResult().copy();
+	}
+
+	/**
+	 * Cache a result with the default TTL.
+	 * 
+	 * @see #put(String, String, JsonArray, long)
+	 */
+	public boolean put(String key, String table, JsonArray result) {
+		return put(key, table, result, getTtl());
+	}
+
+	/**
+	 * Cache a result without checking for invalidations meanwhile.
+	 * 
+	 * @see #put(String, String, JsonArray, long, long)
+	 */
+	public synchronized boolean put(String key, String table, JsonArray result, long ttl) {
+		return put(key, table, result, ttl, getGeneration(table));
+	}
+
+	/**
+	 * Return the generation of the given table, i.e. of its last invalidation. Capture it before reading a result and
+	 * pass it to {@link #put(String, String, JsonArray, long, long)}, so a result read before a write is not cached after
+	 * the write invalidated the table.
+	 * 
+	 * @param table
+	 *            The qualified table or null if unknown
+	 * @return The current generation of the table
+	 */
+	public synchronized long getGeneration(String table) {
+		Long tableGeneration = table != null ? this.tableGenerations.get(table) : null;
+		return tableGeneration != null ? Math.max(tableGeneration, this.clearGeneration) : this.clearGeneration;
+	}
+
+	/**
+	 * Cache a result and evict the least recently used results until the max weight is respected. Results heavier than
+	 * the max weight itself are not cached.
+	 * 
+	 * @param key
+	 *            The key from {@link #key(String, JsonArray)}
+	 * @param table
+	 *            The table queried to invalidate on writes
+	 * @param result
+	 *            The result to cache
+	 * @param ttl
+	 *            The time to live in milliseconds
+	 * @param generation
+	 *            The generation of the table from {@link #getGeneration(String)} captured before the read
+	 * @return true if the result was cached, false if too heavy or the table was invalidated since the generation
+	 */
+	public synchronized boolean put(String key, String table, JsonArray result, long ttl, long generation) {
+		if(generation != getGeneration(table)) {
+			return false;
+		}
+
+		//
+		long resultWeight = result.encode().length();
+		if(ttl <= 0 || resultWeight > getMaxWeight()) {
+			return false;
+		}
+
+		//
+		remove(key);
+		Iterator<Entry<String, CachedResult>> iterator = this.cachedResults.entrySet().iterator();
+		while(this.weight + resultWeight > getMaxWeight() && iterator.hasNext()) {
+			Entry<String, CachedResult> eldest = iterator.next();
+			iterator.remove();
+			removed(eldest.getKey(), eldest.getValue());
+		}
+
+		//
+		this.cachedResults.put(key, new CachedResult(table, result.copy(), resultWeight, System.currentTimeMillis() + ttl));
+		this.weight += resultWeight;
+		if(table != null) {
+			Set<String> keys = this.tableKeys.get(table);
+			if(keys == null) {
+				keys = new HashSet<>();
+				this.tableKeys.put(table, keys);
+			}
+			keys.add(key);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all cached results of the given table.
+	 * 
+	 * @param table
+	 *            The qualified table written to
+	 * @return The amount of invalidated results
+	 */
+	public synchronized int invalidate(String table) {
+		this.tableGenerations.put(table, ++this.generation);
+		Set<String> keys = this.tableKeys.remove(table);
+		if(keys == null) {
+			return 0;
+		}
+
+		//
+		for(String key : keys) {
+			CachedResult cachedResult = this.cachedResults.remove(key);
+			if(cachedResult != null) {
+				this.weight -= cachedResult.getWeight();
+			}
+		}
+
+		//
+		if(logger.isDebugEnabled()) {
+			logger.debug("[Cassandra Persistor] Invalidated " + keys.size() + " cached results of " + table);
+		}
+		return keys.size();
+	}
+
+	/**
+	 * Remove all cached results.
+	 */
+	public synchronized void clear() {
+		this.clearGeneration = ++this.generation;
+		this.tableGenerations.clear();
+		this.cachedResults.clear();
+		this.tableKeys.clear();
+		this.weight = 0;
+	}
+
+	/**
+	 * 
+	 * @param key
+	 */
+	protected void remove(String key) {
+		CachedResult cachedResult = this.cachedResults.remove(key);
+		if(cachedResult != null) {
+			removed(key, cachedResult);
+		}
+	}
+
+	/**
+	 * Maintain weight and table index of a removed result.
+	 * 
+	 * @param key
+	 * @param cachedResult
+	 */
+	private void removed(String key, CachedResult cachedResult) {
+		this.weight -= cachedResult.getWeight();
+		Set<String> keys = this.tableKeys.get(cachedResult.getTable());
+		if(keys != null) {
+			keys.remove(key);
+			if(keys.isEmpty()) {
+				this.tableKeys.remove(cachedResult.getTable());
+			}
+		}
+	}
+
+	/**
+	 * Return the amount of cached results.
+	 * 
+	 * @return
+	 */
+	public synchronized int size() {
+		return this.cachedResults.size();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * 
+	 * @return The current serialised size of all cached results
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Internal cached result model with table, weight and expiry.
+	 */
+	public static class CachedResult {
+
+		/** The table queried */
+		private String table;
+
+		/** The cached rows */
+		private JsonArray result;
+
+		/** The serialised size of the rows */
+		private long weight;
+
+		/** The timestamp after which this result is expired */
+		private long expires;
+
+		/**
+		 * 
+		 * @param table
+		 * @param result
+		 * @param weight
+		 * @param expires
+		 */
+		public CachedResult(String table, JsonArray result, long weight, long expires) {
+			this.table = table;
+			this.result = result;
+			this.weight = weight;
+			this.expires = expires;
+		}
+
+		/**
+		 * 
+		 * @return true if the time to live has passed
+		 */
+		public boolean isExpired() {
+			return System.currentTimeMillis() > this.expires;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public String getTable() {
+			return table;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public JsonArray getResult() {
+			return result;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public long getWeight() {
+			return weight;
+		}
+	}
+}
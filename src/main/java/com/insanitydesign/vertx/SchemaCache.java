@@ -0,0 +1,146 @@
+package com.insanitydesign.vertx;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.TableMetadata;
+
+/**
+ * Keeps the keyspace, table and column metadata of the cluster as ready to reply JSON and detects changed tables by
+ * comparing their definitions on every refresh from the driver metadata.
+ * 
+ * @author insanitydesign
+ */
+public class SchemaCache {
+
+	/** The table definitions (CQL) by qualified "keyspace.table" name to detect changes */
+	private Map<String, String> definitions = new HashMap<>();
+
+	/** The keyspace descriptions by name */
+	private Map<String, JsonObject> keyspaces = new HashMap<>();
+
+	/** The table descriptions by qualified "keyspace.table" name */
+	private Map<String, JsonObject> tables = new HashMap<>();
+
+	/** Whether the cache was refreshed at least once */
+	private boolean initialized = false;
+
+	/**
+	 * Refresh the cache from the given metadata.
+	 * 
+	 * @param metadata
+	 *            The current cluster metadata
+	 * @return The qualified names of all created, altered or dropped tables since the last refresh (empty on the first
+	 *         refresh)
+	 */
+	public synchronized Set<String> refresh(Metadata metadata) {
+		Map<String, String> currentDefinitions = new HashMap<>();
+		Map<String, JsonObject> currentKeyspaces = new HashMap<>();
+		Set<String> changed = new HashSet<>();
+
+		//
+		for(KeyspaceMetadata keyspace : metadata.getKeyspaces()) {
+			JsonArray tableNames = new JsonArray();
+			for(TableMetadata table : keyspace.getTables()) {
+				String name = keyspace.getName() + "." + table.getName();
+				String definition = table.asCQLQuery();
+				currentDefinitions.put(name, definition);
+				tableNames.addString(table.getName());
+
+				//
+				if(!definition.equals(this.definitions.get(name))) {
+					changed.add(name);
+					this.tables.put(name, describe(table));
+				}
+			}
+
+			//
+			JsonObject replication = new JsonObject();
+			for(Entry<String, String> option : keyspace.getReplication().entrySet()) {
+				replication.putString(option.getKey(), option.getValue());
+			}
+			currentKeyspaces.put(keyspace.getName(), new JsonObject().putString("name", keyspace.getName()).putBoolean("durableWrites", keyspace.isDurableWrites()).putObject("replication", replication).putArray("tables", tableNames));
+		}
+
+		// Dropped tables
+		for(String name : this.definitions.keySet()) {
+			if(!currentDefinitions.containsKey(name)) {
+				changed.add(name);
+				this.tables.remove(name);
+			}
+		}
+
+		//
+		this.definitions = currentDefinitions;
+		this.keyspaces = currentKeyspaces;
+		if(!this.initialized) {
+			this.initialized = true;
+			changed.clear();
+		}
+		return changed;
+	}
+
+	/**
+	 * Describe the whole schema, a keyspace or a table.
+	 * 
+	 * @param keyspace
+	 *            The keyspace or null for the keyspace names
+	 * @param table
+	 *            The table in the given keyspace or null for the keyspace
+	 * @return A copy of the description or null if unknown
+	 */
+	public synchronized JsonObject describe(String keyspace, String table) {
+		if(keyspace == null) {
+			JsonArray keyspaceNames = new JsonArray();
+			for(String name : this.keyspaces.keySet()) {
+				keyspaceNames.addString(name);
+			}
+			return new JsonObject().putArray("keyspaces", keyspaceNames);
+		}
+
+		//
+		JsonObject description = table == null ? this.keyspaces.get(keyspace) : this.tables.get(keyspace + "." + table);
+		return description != null ? description.copy() : null;
+	}
+
+	/**
+	 * 
+	 * @param table
+	 * @return The JSON description of the given table
+	 */
+	protected static JsonObject describe(TableMetadata table) {
+		JsonArray partitionKey = new JsonArray();
+		for(ColumnMetadata column : table.getPartitionKey()) {
+			partitionKey.addString(column.getName());
+		}
+		JsonArray clusteringColumns = new JsonArray();
+		for(ColumnMetadata column : table.getClusteringColumns()) {
+			clusteringColumns.addString(column.getName());
+		}
+		JsonArray columns = new JsonArray();
+		for(ColumnMetadata column : table.getColumns()) {
+			columns.addObject(new JsonObject().putString("name", column.getName()).putString("type", column.getType().toString()).putBoolean("static", column.isStatic()));
+		}
+
+		//
+		return new JsonObject().putString("keyspace", table.getKeyspace().getName()).putString("name", table.getName()).putArray("partitionKey", partitionKey).putArray("clusteringColumns", clusteringColumns).putArray("columns", columns);
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isInitialized() {
+		return initialized;
+	}
+}
@@ -0,0 +1,684 @@
+package com.insanitydesign.vertx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.vertx.java.core.json.JsonObject;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+
+/**
+ * JVM-wide (per module classloader) registry of Cassandra clusters and sessions shared between all persistor instances
+ * with the same cluster configuration. Shared sessions are reference counted and closed with their last release.
+ * 
+ * @author insanitydesign
+ */
+public final class SessionRegistry {
+
+	/** Configuration fields only affecting a single persistor instance and not its connection */
+	private static final String[] INSTANCE_FIELDS = { "address", "batchTimeout", "batchConcurrency", "batchMaxConcurrency", "dateFormat", "slowQuery", "shareSession", "prepareConcurrency", "schemaRefresh", "cas", "counters", "timeouts", "scheduling" };
+
+	/** The shared sessions (created or still creating) by their configuration key */
+	private static final Map<String, FutureTask<SharedSession>> SESSIONS = new HashMap<>();
+
+	/**
+	 * 
+	 */
+	private SessionRegistry() {
+	}
+
+	/**
+	 * Derive the registry key from a persistor configuration. Instances with equal keys share their session.
+	 * 
+	 * @param config
+	 *            The persistor configuration
+	 * @return The canonical key of all connection relevant fields
+	 */
+	public static String key(JsonObject config) {
+		JsonObject connectionConfig = config.copy();
+		for(String field : INSTANCE_FIELDS) {
+			connectionConfig.removeField(field);
+		}
+
+		// Sort to be independent of the field order
+		StringBuilder key = new StringBuilder();
+		for(String field : new TreeSet<>(connectionConfig.getFieldNames())) {
+			Object value = connectionConfig.getField(field);
+			key.append(field).append('=').append(value instanceof JsonObject ? key((JsonObject) value) : String.valueOf(value)).append(';');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Return the shared session for the given key or create it through the factory if not yet registered. The factory
+	 * runs outside the lock, concurrent callers of the same key wait for it while other keys are not blocked.
+	 * 
+	 * @param key
+	 *            The key from {@link #key(JsonObject)} or null to create an unshared session
+	 * @param factory
+	 *            The factory creating cluster, session and caches if none is registered for the key
+	 * @return The referenced shared session
+	 * @throws Exception
+	 *             If the session could not be created
+	 */
+	public static SharedSession acquire(final String key, final SessionFactory factory) throws Exception {
+		while(true) {
+			FutureTask<SharedSession> creation = null;
+			boolean create = false;
+			synchronized(SessionRegistry.class) {
+				if(key != null) {
+					creation = SESSIONS.get(key);
+				}
+				if(creation == null) {
+					creation = new FutureTask<>(new Callable<SharedSession>() {
+						@Override
+						public SharedSession call() throws Exception {
+							SharedSession sharedSession = factory.create();
+							sharedSession.key = key;
+							return sharedSession;
+						}
+					});
+					if(key != null) {
+						SESSIONS.put(key, creation);
+					}
+					create = true;
+				}
+			}
+
+			//
+			if(create) {
+				creation.run();
+			}
+			SharedSession sharedSession;
+			try {
+				sharedSession = creation.get();
+			} catch(ExecutionException e) {
+				// Created again by the next caller
+				synchronized(SessionRegistry.class) {
+					if(key != null && SESSIONS.get(key) == creation) {
+						SESSIONS.remove(key);
+					}
+				}
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+
+			//
+			synchronized(SessionRegistry.class) {
+				// Closed with its last release while waiting, create a new one
+				if(key != null && SESSIONS.get(key) != creation) {
+					continue;
+				}
+				sharedSession.references++;
+				return sharedSession;
+			}
+		}
+	}
+
+	/**
+	 * Release a reference to the given shared session and close session and cluster with the last one.
+	 * 
+	 * @param sharedSession
+	 * @return true if the shared session was closed
+	 */
+	public static synchronized boolean release(SharedSession sharedSession) {
+		if(--sharedSession.references > 0) {
+			return false;
+		}
+
+		//
+		if(sharedSession.key != null) {
+			SESSIONS.remove(sharedSession.key);
+		}
+		sharedSession.close();
+		return true;
+	}
+
+	/**
+	 * 
+	 * @return The amount of currently registered shared sessions
+	 */
+	public static synchronized int size() {
+		return SESSIONS.size();
+	}
+
+	/**
+	 * Creates the cluster, session and caches of a new shared session.
+	 */
+	public interface SessionFactory {
+
+		/**
+		 * 
+		 * @return A new connected shared session
+		 * @throws Exception
+		 */
+		SharedSession create() throws Exception;
+	}
+
+	/**
+	 * Internal shared session model keeping all connection related state of the persistor instances using it.
+	 */
+	public static class SharedSession {
+
+		/** The registry key (null if not shared) */
+		private String key;
+
+		/** The amount of persistor instances using this session */
+		private int references;
+
+		/** The configured Cassandra cluster */
+		private Cluster cluster;
+
+		/** The connected session */
+		private Session session;
+
+		/** The prepared statements of all instances */
+		private PreparedStatementCache preparedStatementCache;
+
+		/** The cached results of all instances (null if not configured) */
+		private ResultCache resultCache;
+
+		/** The bounded pool to map large results on (null if not configured) */
+		private ExecutorService mappingPool;
+
+		/** The resolved table mappings by qualified table name */
+		private Map<String, TableMapping> tableMappings = new ConcurrentHashMap<>();
+
+		/** The schema metadata of the cluster */
+		private SchemaCache schemaCache = new SchemaCache();
+
+		/** The max amount of sessions connected to other keyspaces than the configured one */
+		private int maxKeyspaceSessions = 8;
+
+		/** The sessions (and their prepared statement caches) of other keyspaces, least recently used first */
+		private LinkedHashMap<String, KeyspaceSession> keyspaceSessions = new LinkedHashMap<>(16, 0.75f, true);
+
+		/** The spool of writes that could not reach any host (null if not configured) */
+		private WriteSpool writeSpool;
+
+		/** The circuits of tables of all instances (null if not configured) */
+		private CircuitBreaker tableCircuitBreaker;
+
+		/** The circuits of hosts tracked by the cluster (null if not configured) */
+		private CircuitBreaker hostCircuitBreaker;
+
+		/** The rate limits of callers of all instances (null if not configured) */
+		private RateLimiter callerRateLimiter;
+
+		/** The rate limits of tables of all instances (null if not configured) */
+		private RateLimiter tableRateLimiter;
+
+		/** Whether an instance already restored the statement catalogue into the caches */
+		private AtomicBoolean catalogueRestored = new AtomicBoolean();
+
+		/** The instance refreshing the schema of all instances (null until the first instance claims it) */
+		private AtomicReference<Object> schemaRefresher = new AtomicReference<>();
+
+		/**
+		 * 
+		 * @param cluster
+		 * @param session
+		 * @param preparedStatementCache
+		 * @param resultCache
+		 */
+		public SharedSession(Cluster cluster, Session session, PreparedStatementCache preparedStatementCache, ResultCache resultCache) {
+			this.cluster = cluster;
+			this.session = session;
+			this.preparedStatementCache = preparedStatementCache;
+			this.resultCache = resultCache;
+		}
+
+		/**
+		 * Mark the statement catalogue as restored. Only the first instance gets true, independent of the order in which
+		 * instances acquire and release the session.
+		 * 
+		 * @return true if the catalogue was not restored yet
+		 */
+		public boolean markCatalogueRestored() {
+			return this.catalogueRestored.compareAndSet(false, true);
+		}
+
+		/**
+		 * Claim the periodic schema refresh for the given instance. The first instance claiming it refreshes the shared
+		 * caches for all, the others keep their timer only to take over once it released the refresh.
+		 * 
+		 * @param instance
+		 *            The instance whose timer fired
+		 * @return true if the given instance refreshes the schema
+		 */
+		public boolean claimSchemaRefresh(Object instance) {
+			return this.schemaRefresher.compareAndSet(null, instance) || this.schemaRefresher.get() == instance;
+		}
+
+		/**
+		 * Release the periodic schema refresh if claimed by the given instance, so the next timer of another instance
+		 * takes over.
+		 * 
+		 * @param instance
+		 *            The stopping instance
+		 */
+		public void releaseSchemaRefresh(Object instance) {
+			this.schemaRefresher.compareAndSet(instance, null);
+		}
+
+		/**
+		 * Acquire the session of the given keyspace, waiting for its connect as long as needed.
+		 * 
+		 * @see #acquireKeyspaceSession(String, long)
+		 */
+		public KeyspaceSession acquireKeyspaceSession(String keyspace) {
+			return acquireKeyspaceSession(keyspace, 0);
+		}
+
+		/**
+		 * Acquire the session of the given keyspace, connecting a new one if needed. The connect runs on its own thread
+		 * outside the lock, concurrent callers of the same keyspace wait for it while other keyspaces are not blocked.
+		 * Only {@link #getMaxKeyspaceSessions()} sessions are kept, the least recently used one is closed once its last
+		 * reference is released.
+		 * 
+		 * @param keyspace
+		 *            Another keyspace than the configured one
+		 * @param timeout
+		 *            The max time in milliseconds to wait for the connect (0 to wait forever), it goes on for later
+		 *            requests
+		 * @return The referenced keyspace session, to be released once the requests using it finished
+		 * @throws RequestTimeoutException
+		 *             If the session was not connected in time
+		 */
+		public KeyspaceSession acquireKeyspaceSession(final String keyspace, long timeout) {
+			KeyspaceSession keyspaceSession;
+			boolean connect = false;
+			synchronized(this) {
+				keyspaceSession = this.keyspaceSessions.get(keyspace);
+				if(keyspaceSession == null) {
+					keyspaceSession = new KeyspaceSession(this, new Callable<PreparedStatementCache>() {
+						@Override
+						public PreparedStatementCache call() throws Exception {
+							return new PreparedStatementCache(getPreparedStatementCache().getPrepStmtCacheSize(), getCluster().connect(keyspace), getPreparedStatementCache().getLogger());
+						}
+					});
+					this.keyspaceSessions.put(keyspace, keyspaceSession);
+					connect = true;
+				}
+				keyspaceSession.references++;
+				//
+				Iterator<KeyspaceSession> eldest = this.keyspaceSessions.values().iterator();
+				while(this.keyspaceSessions.size() > Math.max(getMaxKeyspaceSessions(), 1)) {
+					KeyspaceSession evicted = eldest.next();
+					evicted.evicted = true;
+					eldest.remove();
+					if(evicted.references == 0) {
+						evicted.close();
+					}
+				}
+			}
+
+			//
+			if(connect) {
+				Thread connector = new Thread(keyspaceSession.connect, "cassandra-persistor-connect-" + keyspace);
+				connector.setDaemon(true);
+				connector.start();
+			}
+			try {
+				if(timeout > 0) {
+					keyspaceSession.connect.get(timeout, TimeUnit.MILLISECONDS);
+				} else {
+					keyspaceSession.connect.get();
+				}
+				return keyspaceSession;
+
+			} catch(TimeoutException e) {
+				keyspaceSession.release();
+				throw new RequestTimeoutException(timeout);
+
+			} catch(Exception e) {
+				// Connected again by the next request
+				synchronized(this) {
+					this.keyspaceSessions.remove(keyspace, keyspaceSession);
+				}
+				keyspaceSession.release();
+				Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+				throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+			}
+		}
+
+		/**
+		 * 
+		 * @return The prepared statement caches of all connected keyspaces, starting with the configured one
+		 */
+		public synchronized List<PreparedStatementCache> getPreparedStatementCaches() {
+			List<PreparedStatementCache> preparedStatementCaches = new ArrayList<>();
+			preparedStatementCaches.add(getPreparedStatementCache());
+			for(KeyspaceSession keyspaceSession : this.keyspaceSessions.values()) {
+				if(keyspaceSession.isConnected()) {
+					preparedStatementCaches.add(keyspaceSession.getPreparedStatementCache());
+				}
+			}
+			return preparedStatementCaches;
+		}
+
+		/**
+		 * Close session and cluster.
+		 */
+		protected void close() {
+			if(this.mappingPool != null) {
+				this.mappingPool.shutdown();
+			}
+			synchronized(this) {
+				for(KeyspaceSession keyspaceSession : this.keyspaceSessions.values()) {
+					if(keyspaceSession.isConnected()) {
+						keyspaceSession.getPreparedStatementCache().getSession().close();
+					}
+				}
+				this.keyspaceSessions.clear();
+			}
+			if(this.writeSpool != null) {
+				try {
+					this.writeSpool.close();
+				} catch(IOException e) {
+					getPreparedStatementCache().getLogger().warn("[Cassandra Persistor] Cannot close write spool " + this.writeSpool.getFile(), e);
+				}
+			}
+			if(this.session != null) {
+				this.session.close();
+			}
+			if(this.cluster != null) {
+				this.cluster.close();
+			}
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public int getReferences() {
+			synchronized(SessionRegistry.class) {
+				return references;
+			}
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public Cluster getCluster() {
+			return cluster;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public Session getSession() {
+			return session;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public PreparedStatementCache getPreparedStatementCache() {
+			return preparedStatementCache;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public ResultCache getResultCache() {
+			return resultCache;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public ExecutorService getMappingPool() {
+			return mappingPool;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public Map<String, TableMapping> getTableMappings() {
+			return tableMappings;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public SchemaCache getSchemaCache() {
+			return schemaCache;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public int getMaxKeyspaceSessions() {
+			return maxKeyspaceSessions;
+		}
+
+		/**
+		 * 
+		 * @param maxKeyspaceSessions
+		 */
+		public void setMaxKeyspaceSessions(int maxKeyspaceSessions) {
+			this.maxKeyspaceSessions = maxKeyspaceSessions;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public WriteSpool getWriteSpool() {
+			return writeSpool;
+		}
+
+		/**
+		 * 
+		 * @param writeSpool
+		 */
+		public void setWriteSpool(WriteSpool writeSpool) {
+			this.writeSpool = writeSpool;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public CircuitBreaker getTableCircuitBreaker() {
+			return tableCircuitBreaker;
+		}
+
+		/**
+		 * 
+		 * @param tableCircuitBreaker
+		 */
+		public void setTableCircuitBreaker(CircuitBreaker tableCircuitBreaker) {
+			this.tableCircuitBreaker = tableCircuitBreaker;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public CircuitBreaker getHostCircuitBreaker() {
+			return hostCircuitBreaker;
+		}
+
+		/**
+		 * 
+		 * @param hostCircuitBreaker
+		 */
+		public void setHostCircuitBreaker(CircuitBreaker hostCircuitBreaker) {
+			this.hostCircuitBreaker = hostCircuitBreaker;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public RateLimiter getCallerRateLimiter() {
+			return callerRateLimiter;
+		}
+
+		/**
+		 * 
+		 * @param callerRateLimiter
+		 */
+		public void setCallerRateLimiter(RateLimiter callerRateLimiter) {
+			this.callerRateLimiter = callerRateLimiter;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public RateLimiter getTableRateLimiter() {
+			return tableRateLimiter;
+		}
+
+		/**
+		 * 
+		 * @param tableRateLimiter
+		 */
+		public void setTableRateLimiter(RateLimiter tableRateLimiter) {
+			this.tableRateLimiter = tableRateLimiter;
+		}
+
+		/**
+		 * 
+		 * @param mappingPool
+		 */
+		public void setMappingPool(ExecutorService mappingPool) {
+			this.mappingPool = mappingPool;
+		}
+	}
+
+	/**
+	 * A reference counted session connected to another keyspace than the configured one, with its own prepared
+	 * statement cache.
+	 */
+	public static class KeyspaceSession {
+
+		/** The shared session owning this keyspace session */
+		private SharedSession sharedSession;
+
+		/** The connect creating the session and its cache */
+		private FutureTask<PreparedStatementCache> connect;
+
+		/** The amount of requests using this session */
+		private int references;
+
+		/** Whether this session was evicted and is closed with its last release */
+		private boolean evicted;
+
+		/** Whether the session was closed */
+		private boolean closed;
+
+		/**
+		 * 
+		 * @param sharedSession
+		 * @param connect
+		 *            Connecting the session and creating its cache
+		 */
+		private KeyspaceSession(SharedSession sharedSession, Callable<PreparedStatementCache> connect) {
+			this.sharedSession = sharedSession;
+			this.connect = new FutureTask<PreparedStatementCache>(connect) {
+				@Override
+				protected void done() {
+					connected();
+				}
+			};
+		}
+
+		/**
+		 * Close the session right after its connect if it was evicted and released while connecting.
+		 */
+		private void connected() {
+			synchronized(this.sharedSession) {
+				if(this.references == 0 && this.evicted) {
+					close();
+				}
+			}
+		}
+
+		/**
+		 * Release a reference and close the session if it was evicted meanwhile and this was the last reference.
+		 */
+		public void release() {
+			synchronized(this.sharedSession) {
+				if(--this.references == 0 && this.evicted) {
+					close();
+				}
+			}
+		}
+
+		/**
+		 * 
+		 * @return true if the session is connected
+		 */
+		public boolean isConnected() {
+			if(!this.connect.isDone()) {
+				return false;
+			}
+			try {
+				this.connect.get();
+				return true;
+			} catch(Exception e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Close the session if connected, otherwise it is closed once the connect completed.
+		 */
+		private void close() {
+			if(isConnected() && !this.closed) {
+				this.closed = true;
+				getPreparedStatementCache().getSession().closeAsync();
+			}
+		}
+
+		/* ***** GETTER/SETTER ***** */
+		/**
+		 * 
+		 * @return The prepared statement cache of the connected session
+		 */
+		public PreparedStatementCache getPreparedStatementCache() {
+			try {
+				return this.connect.get();
+			} catch(Exception e) {
+				throw new IllegalStateException("Keyspace session is not connected!", e);
+			}
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public int getReferences() {
+			synchronized(this.sharedSession) {
+				return references;
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.insanitydesign.vertx;
+
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.QueryTimeoutException;
+
+/**
+ * Logs statements exceeding a configured execution threshold (or failing with a timeout) together with their CQL, bound
+ * value count, consistency, coordinator, elapsed time and error. A sampled fraction of statements can be traced to log
+ * the Cassandra trace events once they are complete.
+ * 
+ * @author insanitydesign
+ */
+public class SlowQueryLog {
+
+	/** The max amount of traces waiting to be fetched */
+	private static final int MAX_PENDING_TRACES = 100;
+
+	/** The threshold in milliseconds after which a statement is logged as slow */
+	private long threshold;
+
+	/** The fraction (0.0 - 1.0) of statements to enable tracing for */
+	private double traceSampling;
+
+	/** The consistency used if the statement does not define its own */
+	private ConsistencyLevel defaultConsistency;
+
+	/** The source to sample traced statements from */
+	private Random random = new Random();
+
+	/** The thread fetching trace events (null until the first trace) */
+	private ExecutorService traceExecutor;
+
+	/** The container logger to write slow queries to */
+	private Logger logger;
+
+	/**
+	 * Initiate the slow query log with its threshold and trace sampling fraction.
+	 * 
+	 * @param threshold
+	 *            The threshold in milliseconds after which a statement is logged
+	 * @param traceSampling
+	 *            The fraction of statements to trace (0 to disable tracing)
+	 * @param defaultConsistency
+	 *            The consistency to report for statements without their own
+	 * @param logger
+	 *            The logger to write slow queries to
+	 */
+	public SlowQueryLog(long threshold, double traceSampling, ConsistencyLevel defaultConsistency, Logger logger) {
+		this.threshold = Math.max(threshold, 0);
+		this.traceSampling = Math.min(Math.max(traceSampling, 0), 1);
+		this.defaultConsistency = defaultConsistency;
+		this.logger = logger;
+	}
+
+	/**
+	 * Enable tracing on the given statement if it falls into the sampled fraction.
+	 * 
+	 * @param statement
+	 *            The statement about to be executed
+	 * @return The given statement
+	 */
+	public Statement sample(Statement statement) {
+		if(this.traceSampling > 0 && this.random.nextDouble() < this.traceSampling) {
+			statement.enableTracing();
+		}
+
+		return statement;
+	}
+
+	/**
+	 * Log the executed statement if it took longer than the configured threshold, without fetching its trace.
+	 * 
+	 * @see #log(Statement, ResultSet, Exception, long, boolean)
+	 */
+	public boolean log(Statement statement, ResultSet resultSet, long elapsed) {
+		return log(statement, resultSet, null, elapsed, false);
+	}
+
+	/**
+	 * Log the executed statement if it took longer than the configured threshold or failed with a timeout. The trace
+	 * events of traced statements are fetched asynchronously and logged in a second entry once they arrive.
+	 * 
+	 * @param statement
+	 *            The executed statement
+	 * @param resultSet
+	 *            The result of the execution to derive the coordinator and trace from (null if failed)
+	 * @param failure
+	 *            The failure of the execution (null if succeeded)
+	 * @param elapsed
+	 *            The execution time in milliseconds
+	 * @param fetchTrace
+	 *            Whether to fetch and log the trace events (false to only log the trace id)
+	 * @return true if the statement was logged as slow
+	 */
+	public boolean log(Statement statement, ResultSet resultSet, Exception failure, long elapsed, boolean fetchTrace) {
+		if(elapsed < getThreshold() && !isTimeout(failure)) {
+			return false;
+		}
+
+		//
+		ExecutionInfo executionInfo = resultSet != null ? resultSet.getExecutionInfo() : null;
+		ConsistencyLevel consistency = statement.getConsistencyLevel() != null ? statement.getConsistencyLevel() : this.defaultConsistency;
+
+		//
+		StringBuilder entry = new StringBuilder("[Cassandra Persistor] ").append(failure != null ? "Failed slow query (" : "Slow query (").append(elapsed).append("ms): ");
+		entry.append(getQueryString(statement));
+		entry.append(" - Values: ").append(getValuesCount(statement));
+		entry.append(" - Consistency: ").append(consistency);
+		entry.append(" - Coordinator: ").append(executionInfo != null ? executionInfo.getQueriedHost() : "unknown");
+		if(failure != null) {
+			entry.append(" - Error: ").append(failure.getClass().getSimpleName()).append(": ").append(failure.getMessage());
+		}
+
+		// Fetching the trace queries the system_traces keyspace, therefore only
+		// for slow and traced statements and without waiting for it here
+		QueryTrace trace = executionInfo != null && statement.isTracing() ? executionInfo.getQueryTrace() : null;
+		if(trace != null) {
+			entry.append(" - Trace: ").append(trace.getTraceId());
+		}
+		logger.warn(entry.toString());
+		if(trace != null && fetchTrace) {
+			logTrace(trace);
+		}
+		return true;
+	}
+
+	/**
+	 * Fetch the events of a trace off the calling thread and log them once complete. Cassandra writes trace events
+	 * asynchronously, therefore the driver waits and retries until the trace session has its duration.
+	 * 
+	 * @param trace
+	 */
+	protected void logTrace(final QueryTrace trace) {
+		try {
+			getTraceExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						StringBuilder entry = new StringBuilder("[Cassandra Persistor] Trace ").append(trace.getTraceId()).append(':');
+						for(QueryTrace.Event event : trace.getEvents()) {
+							entry.append("\n\t").append(event.getSourceElapsedMicros()).append("us ").append(event.getSource()).append(" [").append(event.getThreadName()).append("] ").append(event.getDescription());
+						}
+						logger.warn(entry.toString());
+
+					} catch(Exception e) {
+						logger.warn("[Cassandra Persistor] Trace " + trace.getTraceId() + " unavailable: " + e.getMessage());
+					}
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			logger.warn("[Cassandra Persistor] Trace " + trace.getTraceId() + " skipped, too many traces pending");
+		}
+	}
+
+	/**
+	 * 
+	 * @return The single thread fetching trace events, created on first use
+	 */
+	protected synchronized Executor getTraceExecutor() {
+		if(this.traceExecutor == null) {
+			this.traceExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_TRACES), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "cassandra-persistor-trace");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.traceExecutor;
+	}
+
+	/**
+	 * Stop fetching trace events.
+	 */
+	public synchronized void close() {
+		if(this.traceExecutor != null) {
+			this.traceExecutor.shutdownNow();
+			this.traceExecutor = null;
+		}
+	}
+
+	/**
+	 * 
+	 * @param failure
+	 * @return true if the failure is a client or server timeout, i.e. the statement was slow
+	 */
+	protected static boolean isTimeout(Exception failure) {
+		return failure instanceof RequestTimeoutException || failure instanceof QueryTimeoutException || failure instanceof TimeoutException;
+	}
+
+	/**
+	 * Derive the CQL of any statement type. Batches are represented by their size and first statement.
+	 * 
+	 * @param statement
+	 * @return The CQL text of the given statement
+	 */
+	protected static String getQueryString(Statement statement) {
+		if(statement instanceof BoundStatement) {
+			return ((BoundStatement) statement).preparedStatement().getQueryString();
+
+		} else if(statement instanceof RegularStatement) {
+			return ((RegularStatement) statement).getQueryString();
+
+		} else if(statement instanceof BatchStatement) {
+			BatchStatement batch = (BatchStatement) statement;
+			if(batch.size() == 0) {
+				return "BATCH (empty)";
+			}
+			return "BATCH (" + batch.size() + ") " + getQueryString(batch.getStatements().iterator().next());
+		}
+
+		//
+		return statement.toString();
+	}
+
+	/**
+	 * Derive the amount of bound values of any statement type. Batches sum up their statements.
+	 * 
+	 * @param statement
+	 * @return The amount of values bound to the given statement
+	 */
+	protected static int getValuesCount(Statement statement) {
+		if(statement instanceof BoundStatement) {
+			return ((BoundStatement) statement).preparedStatement().getVariables().size();
+
+		} else if(statement instanceof SimpleStatement) {
+			return ((SimpleStatement) statement).valuesCount();
+
+		} else if(statement instanceof BatchStatement) {
+			int count = 0;
+			for(Statement batched : ((BatchStatement) statement).getStatements()) {
+				count += getValuesCount(batched);
+			}
+			return count;
+		}
+
+		//
+		return 0;
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public double getTraceSampling() {
+		return traceSampling;
+	}
+}
@@ -0,0 +1,143 @@
+package com.insanitydesign.vertx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.insanitydesign.vertx.PreparedStatementCache.CassandraPreparedStatement;
+
+/**
+ * Snapshots the statement texts of a prepared statement cache with their usage to a local file and reads back the most
+ * used ones, so a restarted persistor can re-prepare its hot set without waiting for traffic.
+ * 
+ * @author insanitydesign
+ */
+public class StatementCatalogue {
+
+	/** The snapshot file */
+	private File file;
+
+	/** The max amount of statements to restore */
+	private int restoreLimit;
+
+	/**
+	 * 
+	 * @param file
+	 *            The snapshot file
+	 * @param restoreLimit
+	 *            The max amount of most used statements to restore
+	 */
+	public StatementCatalogue(File file, int restoreLimit) {
+		this.file = file;
+		this.restoreLimit = Math.max(restoreLimit, 0);
+	}
+
+	/**
+	 * Write all cached statements with their usage, most used first, to the snapshot file. The file is replaced
+	 * atomically to never leave a partial snapshot behind.
+	 * 
+	 * @param preparedStatementCache
+	 *            The cache to snapshot
+	 * @return The amount of written statements
+	 * @throws IOException
+	 *             If the snapshot could not be written
+	 */
+	public int save(PreparedStatementCache preparedStatementCache) throws IOException {
+		List<JsonObject> entries = new ArrayList<>();
+		for(Entry<String, CassandraPreparedStatement> cached : preparedStatementCache.getCachedStatements().entrySet()) {
+			entries.add(new JsonObject().putString("statement", cached.getKey()).putNumber("usage", cached.getValue().getUsage()));
+		}
+		sort(entries);
+
+		//
+		JsonArray snapshot = new JsonArray();
+		for(JsonObject entry : entries) {
+			snapshot.addObject(entry);
+		}
+
+		//
+		File directory = getFile().getAbsoluteFile().getParentFile();
+		if(directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		File temp = File.createTempFile(getFile().getName(), ".tmp", directory);
+		try {
+			Files.write(temp.toPath(), snapshot.encode().getBytes(StandardCharsets.UTF_8));
+			Files.move(temp.toPath(), getFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+		return entries.size();
+	}
+
+	/**
+	 * Read the most used statements from the snapshot file.
+	 * 
+	 * @return The statements to restore, most used first, or an empty list if no snapshot exists
+	 * @throws IOException
+	 *             If the snapshot could not be read
+	 */
+	public List<String> load() throws IOException {
+		if(!getFile().isFile()) {
+			return Collections.emptyList();
+		}
+
+		//
+		JsonArray snapshot = new JsonArray(new String(Files.readAllBytes(getFile().toPath()), StandardCharsets.UTF_8));
+		List<JsonObject> entries = new ArrayList<>();
+		for(Object entry : snapshot) {
+			if(entry instanceof JsonObject && ((JsonObject) entry).getString("statement") != null) {
+				entries.add((JsonObject) entry);
+			}
+		}
+		sort(entries);
+
+		//
+		List<String> statements = new ArrayList<>();
+		for(int i = 0; i < entries.size() && i < getRestoreLimit(); i++) {
+			statements.add(entries.get(i).getString("statement"));
+		}
+		return statements;
+	}
+
+	/**
+	 * Sort the given snapshot entries by usage, most used first.
+	 * 
+	 * @param entries
+	 */
+	private static void sort(List<JsonObject> entries) {
+		Collections.sort(entries, new Comparator<JsonObject>() {
+			@Override
+			public int compare(JsonObject first, JsonObject second) {
+				return Long.compare(second.getLong("usage", 0), first.getLong("usage", 0));
+			}
+		});
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getRestoreLimit() {
+		return restoreLimit;
+	}
+}
@@ -0,0 +1,441 @@
+package com.insanitydesign.vertx;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.json.impl.Base64;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.TableMetadata;
+
+/**
+ * Maps JSON entities onto a table, resolved once from its metadata. The CQL to save, find and delete entities is
+ * generated and kept per mapping, JSON fields are bound by name through precomputed column indexes and converted to the
+ * column types.
+ * 
+ * @author insanitydesign
+ */
+public class TableMapping {
+
+	/** The qualified "keyspace.table" name */
+	private String name;
+
+	/** The quoted "keyspace"."table" to generate CQL for */
+	private String qualifiedTable;
+
+	/** The column names, primary key columns first */
+	private String[] columns;
+
+	/** The column types in column order */
+	private DataType[] types;
+
+	/** The column indexes by name */
+	private Map<String, Integer> indexes = new HashMap<>();
+
+	/** The amount of partition key columns */
+	private int partitionKeySize;
+
+	/** The amount of primary key columns */
+	private int primaryKeySize;
+
+	/** The SELECT statements by amount of given primary key columns */
+	private String[] selectStatements;
+
+	/** The DELETE statements by amount of given primary key columns */
+	private String[] deleteStatements;
+
+	/** The counter UPDATE statements by column index */
+	private String[] counterStatements;
+
+	/** The INSERT statements by their set of columns */
+	private Map<BitSet, String> insertStatements = new ConcurrentHashMap<>();
+
+	/**
+	 * Resolve the mapping of the given table.
+	 * 
+	 * @param table
+	 *            The table metadata
+	 */
+	public TableMapping(TableMetadata table) {
+		this.name = table.getKeyspace().getName() + "." + table.getName();
+		this.qualifiedTable = Metadata.quote(table.getKeyspace().getName()) + "." + Metadata.quote(table.getName());
+
+		// Primary key first to bind keys as prefix of all columns
+		List<ColumnMetadata> columnMetadata = new ArrayList<>(table.getPrimaryKey());
+		for(ColumnMetadata column : table.getColumns()) {
+			if(!columnMetadata.contains(column)) {
+				columnMetadata.add(column);
+			}
+		}
+
+		//
+		this.columns = new String[columnMetadata.size()];
+		this.types = new DataType[columnMetadata.size()];
+		for(int i = 0; i < columnMetadata.size(); i++) {
+			this.columns[i] = columnMetadata.get(i).getName();
+			this.types[i] = columnMetadata.get(i).getType();
+			this.indexes.put(this.columns[i], i);
+		}
+		this.partitionKeySize = table.getPartitionKey().size();
+		this.primaryKeySize = table.getPrimaryKey().size();
+
+		//
+		this.selectStatements = new String[this.primaryKeySize + 1];
+		this.deleteStatements = new String[this.primaryKeySize + 1];
+		for(int keyColumns = this.partitionKeySize; keyColumns <= this.primaryKeySize; keyColumns++) {
+			String where = where(keyColumns);
+			this.selectStatements[keyColumns] = "SELECT * FROM " + this.qualifiedTable + where;
+			this.deleteStatements[keyColumns] = "DELETE FROM " + this.qualifiedTable + where;
+		}
+		this.counterStatements = new String[this.columns.length];
+		for(int i = this.primaryKeySize; i < this.columns.length; i++) {
+			if(this.types[i].getName() == DataType.Name.COUNTER) {
+				String column = Metadata.quote(this.columns[i]);
+				this.counterStatements[i] = "UPDATE " + this.qualifiedTable + " SET " + column + " = " + column + " + ?" + where(this.primaryKeySize);
+			}
+		}
+	}
+
+	/**
+	 * Determine the columns given by the fields of the given entity.
+	 * 
+	 * @param entity
+	 *            The JSON entity
+	 * @return The set of column indexes
+	 * @throws IllegalArgumentException
+	 *             If a field is no column of this table
+	 */
+	public BitSet getColumns(JsonObject entity) {
+		BitSet columns = new BitSet(this.columns.length);
+		for(String field : entity.getFieldNames()) {
+			Integer index = this.indexes.get(field);
+			if(index == null) {
+				throw new IllegalArgumentException("Unknown column " + field + " of " + getName());
+			}
+			columns.set(index);
+		}
+		return columns;
+	}
+
+	/**
+	 * Determine the amount of primary key columns given by the fields of the given key. Only complete partition keys
+	 * followed by a prefix of the clustering columns are allowed.
+	 * 
+	 * @param key
+	 *            The JSON primary key
+	 * @return The amount of given primary key columns
+	 * @throws IllegalArgumentException
+	 *             If the given fields are no valid primary key prefix
+	 */
+	public int getKeyColumns(JsonObject key) {
+		BitSet columns = getColumns(key);
+		int keyColumns = columns.cardinality();
+		if(keyColumns < this.partitionKeySize || keyColumns > this.primaryKeySize || columns.nextClearBit(0) != keyColumns) {
+			throw new IllegalArgumentException("Key " + key.getFieldNames() + " is no primary key prefix of " + getName());
+		}
+		return keyColumns;
+	}
+
+	/**
+	 * Generate (once) the INSERT for the given set of columns, which has to contain the primary key.
+	 * 
+	 * @param columns
+	 *            The set of column indexes
+	 * @return The INSERT CQL
+	 * @throws IllegalArgumentException
+	 *             If the primary key is not contained
+	 */
+	public String getInsertStatement(BitSet columns) {
+		String statement = this.insertStatements.get(columns);
+		if(statement != null) {
+			return statement;
+		}
+
+		//
+		if(columns.nextClearBit(0) < this.primaryKeySize) {
+			throw new IllegalArgumentException("Missing primary key column " + this.columns[columns.nextClearBit(0)] + " of " + getName());
+		}
+
+		//
+		StringBuilder names = new StringBuilder();
+		StringBuilder markers = new StringBuilder();
+		for(int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+			if(names.length() > 0) {
+				names.append(", ");
+				markers.append(", ");
+			}
+			names.append(Metadata.quote(this.columns[i]));
+			markers.append('?');
+		}
+		statement = "INSERT INTO " + this.qualifiedTable + " (" + names + ") VALUES (" + markers + ")";
+		this.insertStatements.put((BitSet) columns.clone(), statement);
+		return statement;
+	}
+
+	/**
+	 * 
+	 * @param keyColumns
+	 *            The amount of given primary key columns
+	 * @return The SELECT CQL
+	 */
+	public String getSelectStatement(int keyColumns) {
+		return this.selectStatements[keyColumns];
+	}
+
+	/**
+	 * 
+	 * @param keyColumns
+	 *            The amount of given primary key columns
+	 * @return The DELETE CQL
+	 */
+	public String getDeleteStatement(int keyColumns) {
+		return this.deleteStatements[keyColumns];
+	}
+
+	/**
+	 * 
+	 * @param column
+	 *            The counter column
+	 * @return The UPDATE CQL adding a delta (first value) to the counter by its full primary key
+	 * @throws IllegalArgumentException
+	 *             If the column is no counter column of this table
+	 */
+	public String getCounterStatement(String column) {
+		Integer index = this.indexes.get(column);
+		if(index == null || this.counterStatements[index] == null) {
+			throw new IllegalArgumentException("Unknown counter column " + column + " of " + getName());
+		}
+		return this.counterStatements[index];
+	}
+
+	/**
+	 * Bind the given JSON fields by name to the values of the given columns, in column order.
+	 * 
+	 * @param json
+	 *            The JSON entity or key
+	 * @param columns
+	 *            The set of column indexes to bind
+	 * @param dateFormat
+	 *            The format to parse string timestamps with
+	 * @return The converted values
+	 */
+	public Object[] bind(JsonObject json, BitSet columns, DateFormat dateFormat) {
+		Object[] values = new Object[columns.cardinality()];
+		int value = 0;
+		for(int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+			try {
+				values[value++] = toValue(this.types[i], json.getValue(this.columns[i]), dateFormat);
+			} catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid value for column " + this.columns[i] + " of " + getName() + ": " + e.getMessage(), e);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Bind the first given amount of primary key columns.
+	 * 
+	 * @param key
+	 * @param keyColumns
+	 * @param dateFormat
+	 * @return The converted values
+	 */
+	public Object[] bindKey(JsonObject key, int keyColumns, DateFormat dateFormat) {
+		BitSet columns = new BitSet(keyColumns);
+		columns.set(0, keyColumns);
+		return bind(key, columns, dateFormat);
+	}
+
+	/**
+	 * Convert a JSON value to the Java type of the given column type.
+	 * 
+	 * @param type
+	 *            The column type
+	 * @param value
+	 *            The JSON value
+	 * @param dateFormat
+	 *            The format to parse string timestamps with
+	 * @return The value to bind
+	 * @throws IllegalArgumentException
+	 *             If the value cannot be converted
+	 */
+	public static Object toValue(DataType type, Object value, DateFormat dateFormat) {
+		if(value == null) {
+			return null;
+		}
+
+		//
+		switch(type.getName()) {
+			case ASCII:
+			case TEXT:
+			case VARCHAR:
+				return value.toString();
+
+			case INT:
+				return number(value).intValue();
+
+			case BIGINT:
+			case COUNTER:
+				return number(value).longValue();
+
+			case FLOAT:
+				return number(value).floatValue();
+
+			case DOUBLE:
+				return number(value).doubleValue();
+
+			case DECIMAL:
+				return new BigDecimal(value.toString());
+
+			case VARINT:
+				return new BigInteger(value.toString());
+
+			case BOOLEAN:
+				return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+
+			case UUID:
+			case TIMEUUID:
+				return UUID.fromString(value.toString());
+
+			case TIMESTAMP:
+				if(value instanceof Number) {
+					return new Date(((Number) value).longValue());
+				}
+				try {
+					return dateFormat.parse(value.toString());
+				} catch(Exception e) {
+					throw new IllegalArgumentException("Cannot parse date " + value);
+				}
+
+			case BLOB:
+				// The same Base64 as JsonObject.putBinary/getBinary
+				return ByteBuffer.wrap(value instanceof byte[] ? (byte[]) value : Base64.decode(value.toString()));
+
+			case INET:
+				try {
+					return InetAddress.getByName(value.toString());
+				} catch(Exception e) {
+					throw new IllegalArgumentException("Cannot parse address " + value);
+				}
+
+			case LIST:
+				List<Object> list = new ArrayList<>();
+				for(Object element : array(value)) {
+					list.add(toValue(type.getTypeArguments().get(0), element, dateFormat));
+				}
+				return list;
+
+			case SET:
+				LinkedHashSet<Object> set = new LinkedHashSet<>();
+				for(Object element : array(value)) {
+					set.add(toValue(type.getTypeArguments().get(0), element, dateFormat));
+				}
+				return set;
+
+			case MAP:
+				if(!(value instanceof JsonObject)) {
+					throw new IllegalArgumentException("Expected object but got " + value);
+				}
+				Map<Object, Object> map = new LinkedHashMap<>();
+				JsonObject object = (JsonObject) value;
+				for(String key : object.getFieldNames()) {
+					map.put(toValue(type.getTypeArguments().get(0), key, dateFormat), toValue(type.getTypeArguments().get(1), object.getValue(key), dateFormat));
+				}
+				return map;
+
+			default:
+				return value;
+		}
+	}
+
+	/**
+	 * 
+	 * @param value
+	 * @return The given value as number
+	 */
+	private static Number number(Object value) {
+		if(value instanceof Number) {
+			return (Number) value;
+		}
+		try {
+			return new BigDecimal(value.toString());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Expected number but got " + value);
+		}
+	}
+
+	/**
+	 * 
+	 * @param value
+	 * @return The given value as collection
+	 */
+	private static Collection<?> array(Object value) {
+		if(!(value instanceof JsonArray)) {
+			throw new IllegalArgumentException("Expected array but got " + value);
+		}
+		List<Object> elements = new ArrayList<>();
+		for(Object element : (JsonArray) value) {
+			elements.add(element);
+		}
+		return elements;
+	}
+
+	/**
+	 * 
+	 * @param keyColumns
+	 * @return The WHERE clause for the first given amount of primary key columns
+	 */
+	private String where(int keyColumns) {
+		StringBuilder where = new StringBuilder(" WHERE ");
+		for(int i = 0; i < keyColumns; i++) {
+			if(i > 0) {
+				where.append(" AND ");
+			}
+			where.append(Metadata.quote(this.columns[i])).append(" = ?");
+		}
+		return where.toString();
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getPrimaryKeySize() {
+		return primaryKeySize;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String[] getColumnNames() {
+		return columns;
+	}
+}
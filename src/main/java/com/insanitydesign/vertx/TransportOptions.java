@@ -0,0 +1,154 @@
+package com.insanitydesign.vertx;
+
+import java.util.concurrent.ThreadFactory;
+
+import com.datastax.driver.core.NettyOptions;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Netty transport of the driver: The amount of I/O threads, the native epoll transport (if available), the pooled
+ * buffer allocator or the event loop group of Vert.x instead of an own one.
+ * 
+ * @author insanitydesign
+ */
+public class TransportOptions extends NettyOptions {
+
+	/** The native epoll transport classes, only loaded if available (Linux with netty-transport-native-epoll) */
+	private static final String EPOLL = "io.netty.channel.epoll.Epoll";
+	private static final String EPOLL_EVENT_LOOP_GROUP = "io.netty.channel.epoll.EpollEventLoopGroup";
+	private static final String EPOLL_SOCKET_CHANNEL = "io.netty.channel.epoll.EpollSocketChannel";
+
+	/** The amount of I/O threads (0 for the Netty default) */
+	private int threads;
+
+	/** Whether to use the native epoll transport if available */
+	private boolean epoll;
+
+	/** Whether to allocate buffers from the pooled allocator */
+	private boolean pooledAllocator;
+
+	/** The (NIO) event loop group to share instead of creating an own one (null if not shared) */
+	private EventLoopGroup sharedEventLoopGroup;
+
+	/**
+	 * 
+	 * @param threads
+	 *            The amount of I/O threads (0 for the Netty default)
+	 * @param epoll
+	 *            Whether to use the native epoll transport if available
+	 * @param pooledAllocator
+	 *            Whether to allocate buffers from the pooled allocator
+	 * @param sharedEventLoopGroup
+	 *            The (NIO) event loop group to share instead of creating an own one or null
+	 */
+	public TransportOptions(int threads, boolean epoll, boolean pooledAllocator, EventLoopGroup sharedEventLoopGroup) {
+		this.threads = Math.max(threads, 0);
+		this.epoll = epoll;
+		this.pooledAllocator = pooledAllocator;
+		this.sharedEventLoopGroup = sharedEventLoopGroup;
+	}
+
+	@Override
+	public EventLoopGroup eventLoopGroup(ThreadFactory threadFactory) {
+		if(getSharedEventLoopGroup() != null) {
+			return getSharedEventLoopGroup();
+		}
+
+		//
+		if(isEpollUsed()) {
+			try {
+				return (EventLoopGroup) Class.forName(EPOLL_EVENT_LOOP_GROUP).getConstructor(int.class, ThreadFactory.class).newInstance(getThreads(), threadFactory);
+			} catch(Exception e) {
+				throw new IllegalStateException("Cannot create epoll event loop group", e);
+			}
+		}
+		return new NioEventLoopGroup(getThreads(), threadFactory);
+	}
+
+	@Override
+	public Class<? extends SocketChannel> channelClass() {
+		if(isEpollUsed()) {
+			try {
+				return Class.forName(EPOLL_SOCKET_CHANNEL).asSubclass(SocketChannel.class);
+			} catch(ClassNotFoundException e) {
+				throw new IllegalStateException("Cannot load epoll socket channel", e);
+			}
+		}
+		return NioSocketChannel.class;
+	}
+
+	@Override
+	public void afterBootstrapInitialized(Bootstrap bootstrap) {
+		if(isPooledAllocator()) {
+			bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+		}
+	}
+
+	@Override
+	public void onClusterClose(EventLoopGroup eventLoopGroup) {
+		// A shared group belongs to its owner
+		if(eventLoopGroup != getSharedEventLoopGroup()) {
+			super.onClusterClose(eventLoopGroup);
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if the native epoll transport is requested, available and no NIO group is shared
+	 */
+	public boolean isEpollUsed() {
+		return isEpoll() && getSharedEventLoopGroup() == null && isEpollAvailable();
+	}
+
+	/**
+	 * 
+	 * @return true if the native epoll transport is on the classpath and supported by the platform
+	 */
+	public static boolean isEpollAvailable() {
+		try {
+			return (Boolean) Class.forName(EPOLL).getMethod("isAvailable").invoke(null);
+		} catch(Throwable e) {
+			return false;
+		}
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public boolean isEpoll() {
+		return epoll;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public boolean isPooledAllocator() {
+		return pooledAllocator;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public EventLoopGroup getSharedEventLoopGroup() {
+		return sharedEventLoopGroup;
+	}
+}
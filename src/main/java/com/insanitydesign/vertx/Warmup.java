@@ -0,0 +1,237 @@
+package com.insanitydesign.vertx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.Session;
+
+/**
+ * Warms up a freshly connected session before the persistor accepts messages: Prepares a configured list of statements
+ * into the prepared statement cache, opens the configured amount of core connections per host and probes the hosts
+ * with a cheap query.
+ * 
+ * @author insanitydesign
+ */
+public class Warmup {
+
+	/** The query probing a host, answered locally by every node */
+	public static final String PROBE_QUERY = "SELECT release_version FROM system.local";
+
+	/** The max probes per host until all hosts answered */
+	public static final int PROBE_ROUNDS = 3;
+
+	/** The statements to prepare */
+	private List<String> statements;
+
+	/** The core connections to open per local host or 0 to keep the driver default */
+	private int coreConnections;
+
+	/** Whether to run the probe query per host */
+	private boolean probe;
+
+	/** The container logger */
+	private Logger logger;
+
+	/**
+	 * 
+	 * @param statements
+	 *            The statements to prepare
+	 * @param coreConnections
+	 *            The core connections per local host (0 for driver default)
+	 * @param probe
+	 *            Whether to probe every host
+	 * @param logger
+	 *            The logger to report the warm-up to
+	 */
+	public Warmup(List<String> statements, int coreConnections, boolean probe, Logger logger) {
+		this.statements = statements;
+		this.coreConnections = Math.max(coreConnections, 0);
+		this.probe = probe;
+		this.logger = logger;
+	}
+
+	/**
+	 * Apply the core connections to the given pooling options, which the driver opens eagerly when connecting the
+	 * session.
+	 * 
+	 * @param poolingOptions
+	 * @return The given pooling options
+	 */
+	public PoolingOptions configure(PoolingOptions poolingOptions) {
+		if(getCoreConnections() > 0) {
+			if(poolingOptions.getMaxConnectionsPerHost(HostDistance.LOCAL) < getCoreConnections()) {
+				poolingOptions.setMaxConnectionsPerHost(HostDistance.LOCAL, getCoreConnections());
+			}
+			poolingOptions.setCoreConnectionsPerHost(HostDistance.LOCAL, getCoreConnections());
+		}
+
+		return poolingOptions;
+	}
+
+	/**
+	 * Run the warm-up on the given session. Failures are logged but do not fail the warm-up, as all statements would
+	 * be prepared on first use anyway.
+	 * 
+	 * @param session
+	 *            The connected session
+	 * @param preparedStatementCache
+	 *            The cache to prepare the statements into
+	 * @param concurrency
+	 *            The max amount of concurrent PREPARE requests
+	 * @return The amount of successfully prepared statements
+	 * @throws InterruptedException
+	 */
+	public int run(Session session, PreparedStatementCache preparedStatementCache, int concurrency) throws InterruptedException {
+		long start = System.currentTimeMillis();
+
+		//
+		if(isProbe()) {
+			probe(session);
+		}
+
+		//
+		int prepared = 0;
+		if(!getStatements().isEmpty()) {
+			Map<String, Exception> results = preparedStatementCache.addAll(getStatements(), concurrency);
+			for(Entry<String, Exception> result : results.entrySet()) {
+				if(result.getValue() == null) {
+					prepared++;
+				} else {
+					logger.warn("[Cassandra Persistor] Warm-up could not prepare " + result.getKey() + ": " + result.getValue().getMessage());
+				}
+			}
+		}
+
+		//
+		logger.info("[Cassandra Persistor] Warm-up prepared " + prepared + "/" + getStatements().size() + " statements in " + (System.currentTimeMillis() - start) + "ms");
+		return prepared;
+	}
+
+	/**
+	 * Probe the known hosts with a cheap query. The driver offers no way to send a statement to a given host, so the
+	 * probes go through the load balancing policy: They are repeated until every host answered once, but at most
+	 * {@link #PROBE_ROUNDS} times the amount of hosts. Hosts the policy never picks (e.g. remote or ignored hosts) are
+	 * not reached and only logged.
+	 * 
+	 * @param session
+	 *            The connected session
+	 * @return The amount of hosts that answered
+	 */
+	public int probe(Session session) {
+		Set<Host> hosts = new HashSet<>(session.getCluster().getMetadata().getAllHosts());
+		int total = hosts.size();
+		for(int i = 0; i < total * PROBE_ROUNDS && !hosts.isEmpty(); i++) {
+			try {
+				hosts.remove(session.execute(PROBE_QUERY).getExecutionInfo().getQueriedHost());
+			} catch(Exception e) {
+				logger.warn("[Cassandra Persistor] Warm-up probe failed: " + e.getMessage());
+			}
+		}
+
+		//
+		if(!hosts.isEmpty()) {
+			logger.warn("[Cassandra Persistor] Warm-up probes did not reach " + hosts);
+		}
+		return total - hosts.size();
+	}
+
+	/**
+	 * Split a CQL script into its statements, separated by semicolons. Line comments starting with <code>--</code> or
+	 * <code>//</code> and empty statements are skipped, the statements are only trimmed.
+	 * 
+	 * @param cql
+	 *            The CQL script
+	 * @return The statements in order
+	 */
+	public static List<String> parseStatements(String cql) {
+		StringBuilder script = new StringBuilder();
+		for(String line : cql.split("\\r?\\n")) {
+			String trimmed = line.trim();
+			if(trimmed.startsWith("--") || trimmed.startsWith("//")) {
+				continue;
+			}
+			script.append(line).append('\n');
+		}
+
+		//
+		List<String> statements = new ArrayList<>();
+		for(String statement : script.toString().split(";")) {
+			// Kept verbatim, the cache is keyed on the exact text callers send
+			String trimmed = statement.trim();
+			if(!trimmed.isEmpty()) {
+				statements.add(trimmed);
+			}
+		}
+		return statements;
+	}
+
+	/**
+	 * Read a CQL script from the file system or, if no such file exists, from the classpath.
+	 * 
+	 * @param path
+	 *            The file path or classpath resource
+	 * @return The statements of the script
+	 * @throws IOException
+	 *             If the script could not be found or read
+	 */
+	public static List<String> readStatements(String path) throws IOException {
+		File file = new File(path);
+		if(file.isFile()) {
+			return parseStatements(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		}
+
+		//
+		try(InputStream input = Warmup.class.getClassLoader().getResourceAsStream(path)) {
+			if(input == null) {
+				throw new IOException("No CQL file or classpath resource " + path);
+			}
+			//
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for(int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+				output.write(buffer, 0, read);
+			}
+			return parseStatements(new String(output.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public List<String> getStatements() {
+		return statements;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getCoreConnections() {
+		return coreConnections;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public boolean isProbe() {
+		return probe;
+	}
+}
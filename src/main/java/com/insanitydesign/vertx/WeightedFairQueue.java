@@ -0,0 +1,192 @@
+package com.insanitydesign.vertx;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queue with weighted lanes (e.g. latency-critical and bulk traffic) and fair turns between the callers of a lane. The
+ * lanes are polled by smooth weighted round robin, i.e. a lane with weight 8 is served 8 times as often as a lane with
+ * weight 1 while both have elements, and an idle lane saves up no turns. Within a lane every caller has its own queue
+ * and the callers take turns, so one caller sending thousands of messages only delays the others by one element each.
+ * The queue belongs to one persistor instance and is only accessed from its context, therefore it is not synchronized.
+ * 
+ * @author insanitydesign
+ */
+public class WeightedFairQueue<T> {
+
+	/** The lanes by name */
+	private Map<String, Lane<T>> lanes = new LinkedHashMap<>();
+
+	/** The lane of elements without or with an unknown lane */
+	private String defaultLane;
+
+	/** The max amount of queued elements */
+	private int maxSize;
+
+	/** The amount of queued elements */
+	private int size;
+
+	/**
+	 * 
+	 * @param weights
+	 *            The weights by lane name
+	 * @param defaultLane
+	 *            The lane of elements without or with an unknown lane, added with weight 1 if not weighted
+	 * @param maxSize
+	 *            The max amount of queued elements
+	 */
+	public WeightedFairQueue(Map<String, Integer> weights, String defaultLane, int maxSize) {
+		for(Map.Entry<String, Integer> weight : weights.entrySet()) {
+			this.lanes.put(weight.getKey(), new Lane<T>(weight.getValue()));
+		}
+		if(!this.lanes.containsKey(defaultLane)) {
+			this.lanes.put(defaultLane, new Lane<T>(1));
+		}
+		this.defaultLane = defaultLane;
+		this.maxSize = Math.max(maxSize, 1);
+	}
+
+	/**
+	 * Queue an element at the end of its callers queue.
+	 * 
+	 * @param lane
+	 *            The name of the lane (null for the default lane)
+	 * @param caller
+	 *            The caller sending the element
+	 * @param element
+	 * @return false if the queue is full
+	 */
+	public boolean offer(String lane, String caller, T element) {
+		if(this.size >= this.maxSize) {
+			return false;
+		}
+
+		//
+		Lane<T> target = lane != null ? this.lanes.get(lane) : null;
+		if(target == null) {
+			target = this.lanes.get(this.defaultLane);
+		}
+		target.offer(caller != null ? caller : "", element);
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Take the next element of the lane with the most turns saved up.
+	 * 
+	 * @return The next element or null if empty
+	 */
+	public T poll() {
+		if(this.size == 0) {
+			return null;
+		}
+
+		// Smooth weighted round robin over the lanes with elements
+		Lane<T> next = null;
+		int totalWeight = 0;
+		for(Lane<T> lane : this.lanes.values()) {
+			if(lane.isEmpty()) {
+				continue;
+			}
+			totalWeight += lane.weight;
+			lane.current += lane.weight;
+			if(next == null || lane.current > next.current) {
+				next = lane;
+			}
+		}
+		next.current -= totalWeight;
+
+		//
+		T element = next.poll();
+		// Idle lanes save up no turns
+		if(next.isEmpty()) {
+			next.current = 0;
+		}
+		this.size--;
+		return element;
+	}
+
+	/**
+	 * 
+	 * @return The amount of queued elements
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * 
+	 * @return true if no element is queued
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * A lane with a queue per caller, taking turns.
+	 */
+	private static class Lane<T> {
+
+		/** The weight of the lane */
+		private int weight;
+
+		/** The turns saved up */
+		private int current;
+
+		/** The callers with queued elements, in order of their next turn */
+		private ArrayDeque<String> callers = new ArrayDeque<>();
+
+		/** The queued elements by caller */
+		private Map<String, ArrayDeque<T>> queues = new HashMap<>();
+
+		/**
+		 * 
+		 * @param weight
+		 */
+		private Lane(int weight) {
+			this.weight = Math.max(weight, 1);
+		}
+
+		/**
+		 * 
+		 * @param caller
+		 * @param element
+		 */
+		private void offer(String caller, T element) {
+			ArrayDeque<T> queue = this.queues.get(caller);
+			if(queue == null) {
+				queue = new ArrayDeque<>();
+				this.queues.put(caller, queue);
+				this.callers.add(caller);
+			}
+			queue.add(element);
+		}
+
+		/**
+		 * 
+		 * @return The next element of the caller whose turn it is
+		 */
+		private T poll() {
+			String caller = this.callers.poll();
+			ArrayDeque<T> queue = this.queues.get(caller);
+			T element = queue.poll();
+			// Back of the line or done
+			if(queue.isEmpty()) {
+				this.queues.remove(caller);
+			} else {
+				this.callers.add(caller);
+			}
+			return element;
+		}
+
+		/**
+		 * 
+		 * @return true if no caller has queued elements
+		 */
+		private boolean isEmpty() {
+			return this.callers.isEmpty();
+		}
+	}
+}
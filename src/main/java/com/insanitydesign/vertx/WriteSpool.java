@@ -0,0 +1,261 @@
+package com.insanitydesign.vertx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Durable local append-only log of writes that could not reach any host. Entries are appended to a memory-mapped file
+ * of fixed capacity and read back in order for replay. The header keeps the read and write positions, so pending
+ * entries survive a restart. Replayed space is reclaimed once the log is drained or before it would overflow. Appends
+ * are written to the mapping (surviving a crash of the JVM) and only forced to disk with the next {@link #flush()}, so
+ * a crash of the machine loses the entries since then instead of paying a sync per entry.
+ * 
+ * <pre>
+ * header: magic (int) | read position (int) | write position (int) | pending entries (int)
+ * entry:  length (int) | UTF-8 JSON
+ * </pre>
+ * 
+ * @author insanitydesign
+ */
+public class WriteSpool {
+
+	/** Marks an initialized spool file */
+	private static final int MAGIC = 0x53504f4c;
+
+	/** The header size in bytes */
+	protected static final int HEADER = 16;
+
+	/** The spool file */
+	private File file;
+
+	/** The open file */
+	private RandomAccessFile randomAccessFile;
+
+	/** The mapped file content */
+	private MappedByteBuffer buffer;
+
+	/** The position of the first pending entry */
+	private int readPosition;
+
+	/** The position after the last entry */
+	private int writePosition;
+
+	/** The amount of pending entries */
+	private int size;
+
+	/** Whether changes were not yet forced to disk */
+	private boolean dirty;
+
+	/** Whether an instance is replaying right now */
+	private AtomicBoolean replaying = new AtomicBoolean();
+
+	/**
+	 * Open (or create) the spool file and map it with the given capacity. Pending entries of an existing spool are kept.
+	 * 
+	 * @param file
+	 *            The spool file
+	 * @param capacity
+	 *            The capacity in bytes including the header
+	 * @throws IOException
+	 *             If the file could not be opened or mapped
+	 */
+	public WriteSpool(File file, int capacity) throws IOException {
+		this.file = file;
+		//
+		File directory = file.getAbsoluteFile().getParentFile();
+		if(directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		// An existing spool keeps its size to not cut off pending entries
+		int mappedCapacity = (int) Math.max(Math.max(capacity, HEADER * 2), Math.min(this.randomAccessFile.length(), Integer.MAX_VALUE));
+		this.buffer = this.randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mappedCapacity);
+
+		//
+		if(this.buffer.getInt(0) == MAGIC) {
+			this.readPosition = this.buffer.getInt(4);
+			this.writePosition = this.buffer.getInt(8);
+			this.size = this.buffer.getInt(12);
+		} else {
+			this.readPosition = HEADER;
+			this.writePosition = HEADER;
+			this.size = 0;
+			this.buffer.putInt(0, MAGIC);
+			writeHeader();
+			flush();
+		}
+	}
+
+	/**
+	 * Append the given entry. It is forced to disk with the next {@link #flush()}.
+	 * 
+	 * @param entry
+	 *            The write to spool
+	 * @return false if the spool is full
+	 */
+	public synchronized boolean append(JsonObject entry) {
+		byte[] bytes = entry.encode().getBytes(StandardCharsets.UTF_8);
+		if(this.writePosition + 4 + bytes.length > this.buffer.capacity()) {
+			compact();
+			if(this.writePosition + 4 + bytes.length > this.buffer.capacity()) {
+				return false;
+			}
+		}
+
+		// The entry is only visible once the header points behind it
+		ByteBuffer target = this.buffer.duplicate();
+		target.position(this.writePosition);
+		target.putInt(bytes.length);
+		target.put(bytes);
+		this.writePosition = target.position();
+		this.size++;
+		writeHeader();
+		return true;
+	}
+
+	/**
+	 * Read up to the given amount of pending entries in order without removing them.
+	 * 
+	 * @param max
+	 *            The max amount of entries
+	 * @return The oldest pending entries
+	 */
+	public synchronized List<JsonObject> peek(int max) {
+		List<JsonObject> entries = new ArrayList<>();
+		ByteBuffer source = this.buffer.duplicate();
+		source.position(this.readPosition);
+		while(entries.size() < max && source.position() < this.writePosition) {
+			byte[] bytes = new byte[source.getInt()];
+			source.get(bytes);
+			entries.add(new JsonObject(new String(bytes, StandardCharsets.UTF_8)));
+		}
+		return entries;
+	}
+
+	/**
+	 * Remove the given amount of oldest entries, e.g. after they were replayed.
+	 * 
+	 * @param count
+	 *            The amount of entries to remove
+	 */
+	public synchronized void remove(int count) {
+		for(int i = 0; i < count && this.readPosition < this.writePosition; i++) {
+			this.readPosition += 4 + this.buffer.getInt(this.readPosition);
+			this.size--;
+		}
+		// Start over once drained
+		if(this.readPosition >= this.writePosition) {
+			this.readPosition = HEADER;
+			this.writePosition = HEADER;
+			this.size = 0;
+		}
+		writeHeader();
+	}
+
+	/**
+	 * Mark the start of a replay.
+	 * 
+	 * @return false if another instance is replaying already
+	 */
+	public boolean startReplay() {
+		return this.replaying.compareAndSet(false, true);
+	}
+
+	/**
+	 * Mark the end of a replay.
+	 */
+	public void endReplay() {
+		this.replaying.set(false);
+	}
+
+	/**
+	 * Force the changes since the last flush to disk.
+	 */
+	public synchronized void flush() {
+		if(this.dirty) {
+			this.buffer.force();
+			this.dirty = false;
+		}
+	}
+
+	/**
+	 * Force pending changes to disk and close the file.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		this.buffer.force();
+		this.randomAccessFile.close();
+	}
+
+	/**
+	 * Move the pending entries to the start to reclaim the space of replayed ones if they fit in front of their current
+	 * position.
+	 */
+	protected void compact() {
+		// Only without overlap, so a crash while copying leaves the header pointing to intact entries
+		if(this.readPosition == HEADER || this.readPosition - HEADER < this.writePosition - this.readPosition) {
+			return;
+		}
+
+		//
+		byte[] pending = new byte[this.writePosition - this.readPosition];
+		ByteBuffer source = this.buffer.duplicate();
+		source.position(this.readPosition);
+		source.get(pending);
+		ByteBuffer target = this.buffer.duplicate();
+		target.position(HEADER);
+		target.put(pending);
+		// The moved entries have to be on disk before the header points to them
+		this.buffer.force();
+		this.writePosition = target.position();
+		this.readPosition = HEADER;
+		writeHeader();
+		flush();
+	}
+
+	/**
+	 * Write the positions and size to the header, forced to disk with the next {@link #flush()}.
+	 */
+	protected void writeHeader() {
+		this.buffer.putInt(4, this.readPosition);
+		this.buffer.putInt(8, this.writePosition);
+		this.buffer.putInt(12, this.size);
+		this.dirty = true;
+	}
+
+	/* ***** GETTER/SETTER ***** */
+	/**
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 
+	 * @return The amount of pending entries
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * 
+	 * @return The capacity in bytes including the header
+	 */
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+}
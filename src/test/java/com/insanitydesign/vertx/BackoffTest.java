@@ -0,0 +1,30 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class BackoffTest {
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testDelay() {
+		Backoff backoff = new Backoff(10, 100);
+
+		// Jittered between 1 and the capped exponential delay
+		for(int i = 0; i < 1000; i++) {
+			long first = backoff.delay(0);
+			assertTrue(first >= 1 && first <= 10);
+			long third = backoff.delay(2);
+			assertTrue(third >= 1 && third <= 40);
+			long late = backoff.delay(64);
+			assertTrue(late >= 1 && late <= 100);
+		}
+	}
+}
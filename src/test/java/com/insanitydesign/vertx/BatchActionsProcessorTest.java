@@ -1,8 +1,18 @@
 package com.insanitydesign.vertx;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
 
 import com.insanitydesign.vertx.BatchActionsProcessor;
 
@@ -32,5 +42,182 @@ public class BatchActionsProcessorTest {
 
 		assertEquals(testAddress2.substring(0, testAddress2.length() - 1) + ".batch", batchActionsProcessor.getAddress());
 		assertEquals(testAddress2, batchActionsProcessor.getPersistorAddress());
-	}	
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testConcurrency() {
+		final List<Handler<AsyncResult<Message<Object>>>> sent = new ArrayList<>();
+		final List<JsonObject> actions = new ArrayList<>();
+		BatchActionsProcessor batchActionsProcessor = new BatchActionsProcessor() {
+			@Override
+			protected void send(JsonObject action, Handler<AsyncResult<Message<Object>>> replyHandler) {
+				actions.add(action);
+				sent.add(replyHandler);
+			}
+		};
+		batchActionsProcessor.setConcurrency(2);
+		batchActionsProcessor.setMaxConcurrency(3);
+
+		//
+		Message<Object> large = mock(Message.class);
+		when(large.body()).thenReturn(new JsonArray().add(action("a", 0)).add(action("a", 1)).add(action("a", 2)).add(action("a", 3)));
+		Message<Object> small = mock(Message.class);
+		when(small.body()).thenReturn(new JsonArray().add(action("b", 0)));
+		batchActionsProcessor.handle(large);
+		// Window of the large batch is full
+		assertEquals(sent.size(), 2);
+		batchActionsProcessor.handle(small);
+		// The small batch is not blocked by the large one
+		assertEquals(sent.size(), 3);
+		assertEquals(actions.get(2).getString("batch"), "b");
+
+		// The next action is sent as one completes
+		AsyncResult<Message<Object>> result = mock(AsyncResult.class);
+		when(result.succeeded()).thenReturn(true);
+		Message<Object> reply = mock(Message.class);
+		when(reply.body()).thenReturn(new JsonObject());
+		when(result.result()).thenReturn(reply);
+		sent.get(2).handle(result);
+		verify(small).reply(any(JsonArray.class));
+		assertEquals(sent.size(), 3);
+		sent.get(0).handle(result);
+		assertEquals(sent.size(), 4);
+		assertEquals(actions.get(3).getInteger("index"), Integer.valueOf(2));
+		assertEquals(batchActionsProcessor.getInFlight(), 2);
+
+		//
+		sent.get(1).handle(result);
+		sent.get(3).handle(result);
+		sent.get(4).handle(result);
+		verify(large).reply(any(JsonArray.class));
+		assertEquals(batchActionsProcessor.getInFlight(), 0);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testInvalidActions() {
+		final List<Handler<AsyncResult<Message<Object>>>> sent = new ArrayList<>();
+		BatchActionsProcessor batchActionsProcessor = new BatchActionsProcessor() {
+			@Override
+			protected void send(JsonObject action, Handler<AsyncResult<Message<Object>>> replyHandler) {
+				sent.add(replyHandler);
+			}
+		};
+		batchActionsProcessor.setConcurrency(1);
+
+		// Mixed array with a string and a nested array
+		Message<Object> message = mock(Message.class);
+		when(message.body()).thenReturn(new JsonArray().add("raw").add(action("a", 1)).add(new JsonArray().add(2)));
+		batchActionsProcessor.handle(message);
+		assertEquals(sent.size(), 1);
+		assertEquals(batchActionsProcessor.getInFlight(), 1);
+
+		// The batch still replies with an error per invalid action
+		AsyncResult<Message<Object>> result = mock(AsyncResult.class);
+		when(result.succeeded()).thenReturn(true);
+		Message<Object> reply = mock(Message.class);
+		when(reply.body()).thenReturn(new JsonObject().putString("status", "ok"));
+		when(result.result()).thenReturn(reply);
+		sent.get(0).handle(result);
+		JsonArray expected = new JsonArray().add(new JsonObject().putString("status", "error").putString("message", "[BatchRequest Handler] Action 0 is no JsonObject!")).add(new JsonObject().putString("status", "ok")).add(new JsonObject().putString("status", "error").putString("message", "[BatchRequest Handler] Action 2 is no JsonObject!"));
+		verify(message).reply(expected);
+		assertEquals(batchActionsProcessor.getInFlight(), 0);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testInvalidBody() {
+		BatchActionsProcessor batchActionsProcessor = new BatchActionsProcessor() {
+			@Override
+			protected void send(JsonObject action, Handler<AsyncResult<Message<Object>>> replyHandler) {
+				throw new AssertionError("No action to send");
+			}
+		};
+
+		// Neither actions nor an object with actions
+		Message<Object> message = mock(Message.class);
+		when(message.body()).thenReturn("actions");
+		batchActionsProcessor.handle(message);
+		verify(message).reply(new JsonObject().putString("status", "error").putString("message", "[BatchRequest Handler] Received no actions!"));
+		assertEquals(0, batchActionsProcessor.getInFlight());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStream() {
+		EventBus eventBus = mock(EventBus.class);
+		Message<Object> message = mock(Message.class);
+		BatchActionsProcessor.BatchRequestHandler<Object> handler = new BatchActionsProcessor.BatchRequestHandler<>(message, 2);
+		handler.stream(eventBus, "stream");
+
+		//
+		AsyncResult<Message<Object>> succeeded = mock(AsyncResult.class);
+		when(succeeded.succeeded()).thenReturn(true);
+		Message<Object> reply = mock(Message.class);
+		when(reply.body()).thenReturn(new JsonObject().putString("status", "ok"));
+		when(succeeded.result()).thenReturn(reply);
+		AsyncResult<Message<Object>> failed = mock(AsyncResult.class);
+		when(failed.cause()).thenReturn(new RuntimeException("timeout"));
+
+		// Each result is sent with its index as it completes
+		handler.handle(1, succeeded);
+		verify(eventBus).send("stream", new JsonObject().putNumber("index", 1).putObject("result", new JsonObject().putString("status", "ok")));
+		verify(message, never()).reply(any());
+		handler.handle(0, failed);
+		verify(eventBus).send("stream", new JsonObject().putNumber("index", 0).putString("status", "error").putString("message", "timeout"));
+
+		// Followed by the summary, failed as one action failed
+		JsonObject summary = new JsonObject().putString("status", "error").putNumber("actions", 2).putNumber("succeeded", 1).putNumber("failed", 1);
+		verify(eventBus).send("stream", summary);
+		verify(message).reply(summary);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamSucceeded() {
+		EventBus eventBus = mock(EventBus.class);
+		Message<Object> message = mock(Message.class);
+		BatchActionsProcessor.BatchRequestHandler<Object> handler = new BatchActionsProcessor.BatchRequestHandler<>(message, 2);
+		handler.stream(eventBus, "stream");
+
+		//
+		AsyncResult<Message<Object>> succeeded = mock(AsyncResult.class);
+		when(succeeded.succeeded()).thenReturn(true);
+		Message<Object> reply = mock(Message.class);
+		when(reply.body()).thenReturn(new JsonObject().putString("status", "ok"));
+		when(succeeded.result()).thenReturn(reply);
+		handler.handle(0, succeeded);
+		handler.handle(1, succeeded);
+
+		//
+		JsonObject summary = new JsonObject().putString("status", "ok").putNumber("actions", 2).putNumber("succeeded", 2).putNumber("failed", 0);
+		verify(eventBus).send("stream", summary);
+		verify(message).reply(summary);
+	}
+
+	/**
+	 * 
+	 * @param batch
+	 * @param index
+	 * @return A test action
+	 */
+	private static JsonObject action(String batch, int index) {
+		return new JsonObject().putString("batch", batch).putNumber("index", index);
+	}
 }
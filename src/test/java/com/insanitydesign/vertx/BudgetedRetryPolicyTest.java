@@ -0,0 +1,81 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.policies.RetryPolicy.RetryDecision;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class BudgetedRetryPolicyTest {
+
+	/** The current test time in nanoseconds */
+	private long now;
+
+	/** */
+	private BudgetedRetryPolicy retryPolicy;
+
+	/** */
+	private Statement idempotent = new SimpleStatement("SELECT * FROM test.table").setIdempotent(true);
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		// 10% budget, 1 retry per second, max 2 tokens, 1 read and write retry, no unavailable retries
+		this.retryPolicy = new BudgetedRetryPolicy(0.1, 1, 2, 1, 1, 0, null) {
+			@Override
+			protected long nanoTime() {
+				return now;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testIdempotency() {
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETRY);
+		// Retries left
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 1).getType(), RetryDecision.Type.RETHROW);
+		assertEquals(retryPolicy.onUnavailable(idempotent, ConsistencyLevel.ONE, 1, 0, 0).getType(), RetryDecision.Type.RETHROW);
+
+		// Never retry non idempotent, conditional or counter writes
+		Statement write = new SimpleStatement("INSERT INTO test.table (id) VALUES (1)");
+		assertEquals(retryPolicy.onWriteTimeout(write, ConsistencyLevel.ONE, WriteType.SIMPLE, 1, 0, 0).getType(), RetryDecision.Type.RETHROW);
+		assertEquals(retryPolicy.onWriteTimeout(write.setIdempotent(true), ConsistencyLevel.ONE, WriteType.SIMPLE, 1, 0, 0).getType(), RetryDecision.Type.RETRY);
+		assertEquals(retryPolicy.onWriteTimeout(write, ConsistencyLevel.ONE, WriteType.CAS, 1, 0, 0).getType(), RetryDecision.Type.RETHROW);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testBudget() {
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETRY);
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETRY);
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETHROW);
+
+		// 10 requests deposit a token
+		for(int i = 0; i < 10; i++) {
+			retryPolicy.update(null, idempotent, null, 0);
+		}
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETRY);
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETHROW);
+
+		// As does a second
+		now += 1000000000L;
+		assertEquals(retryPolicy.onReadTimeout(idempotent, ConsistencyLevel.ONE, 1, 0, false, 0).getType(), RetryDecision.Type.RETRY);
+		assertTrue(retryPolicy.getTokens() < 1);
+	}
+}
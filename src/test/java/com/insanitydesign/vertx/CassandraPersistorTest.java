@@ -0,0 +1,325 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vertx.java.busmods.BusModBase;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.LatencyAwarePolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.RoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import com.google.common.util.concurrent.SettableFuture;
+import com.insanitydesign.vertx.SessionRegistry.KeyspaceSession;
+import com.insanitydesign.vertx.SessionRegistry.SharedSession;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class CassandraPersistorTest {
+
+	/** */
+	private CassandraPersistor cassandraPersistor;
+
+	/** */
+	private Vertx vertx;
+
+	/** */
+	private Context context;
+
+	/** */
+	private ExecutorService mappingPool;
+
+	/** */
+	private Logger logger;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() throws Exception {
+		this.vertx = mock(Vertx.class);
+		this.logger = mock(Logger.class);
+		this.context = mock(Context.class);
+		when(vertx.currentContext()).thenReturn(context);
+		this.mappingPool = Executors.newSingleThreadExecutor();
+		SharedSession sharedSession = new SharedSession(mock(Cluster.class), mock(Session.class), null, null);
+		sharedSession.setMappingPool(mappingPool);
+
+		//
+		this.cassandraPersistor = new CassandraPersistor();
+		cassandraPersistor.setVertx(vertx);
+		cassandraPersistor.setSharedSession(sharedSession);
+		cassandraPersistor.setMappingPoolMinRows(10);
+		// Usually set on start
+		Field logger = BusModBase.class.getDeclaredField("logger");
+		logger.setAccessible(true);
+		logger.set(cassandraPersistor, this.logger);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMapResultOnPool() throws Exception {
+		Message<JsonObject> message = mock(Message.class);
+		final JsonArray result = new JsonArray().add(1);
+		final Thread[] threads = new Thread[2];
+		cassandraPersistor.mapResult(message, 10, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				threads[0] = Thread.currentThread();
+				return result;
+			}
+		}, new Handler<Object>() {
+			@Override
+			public void handle(Object mapped) {
+				threads[1] = Thread.currentThread();
+			}
+		});
+		mappingPool.shutdown();
+		assertTrue(mappingPool.awaitTermination(1, TimeUnit.SECONDS));
+
+		// Mapped on the pool, but not replied from there
+		assertNotSame(threads[0], Thread.currentThread());
+		verify(message, never()).reply(any());
+		ArgumentCaptor<Handler> onContext = ArgumentCaptor.forClass(Handler.class);
+		verify(context).runOnContext(onContext.capture());
+
+		// Replied from the context of the instance
+		onContext.getValue().handle(null);
+		assertSame(threads[1], Thread.currentThread());
+		verify(message).reply((Object) result);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testMapResultDirectly() throws Exception {
+		Message<JsonObject> message = mock(Message.class);
+		final JsonArray result = new JsonArray().add(1);
+		cassandraPersistor.mapResult(message, 9, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return result;
+			}
+		});
+
+		// Small results are mapped and replied right away
+		verify(message).reply((Object) result);
+		verify(context, never()).runOnContext(any(Handler.class));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPrepareTimeout() throws Exception {
+		Session session = mock(Session.class);
+		when(session.prepareAsync(any(String.class))).thenReturn(SettableFuture.<PreparedStatement> create());
+		cassandraPersistor.setPreparedStatementCache(new PreparedStatementCache(10, session, mock(Logger.class)));
+
+		// The deadline of the message covers preparing its statement
+		Message<JsonObject> message = mock(Message.class);
+		when(message.body()).thenReturn(new JsonObject().putString("action", "prepare").putString("statement", "SELECT * FROM test.table").putNumber("timeout", 10));
+		cassandraPersistor.dispatch(message);
+		ArgumentCaptor<JsonObject> reply = ArgumentCaptor.forClass(JsonObject.class);
+		verify(message).reply(reply.capture());
+		assertEquals(reply.getValue().getString("status"), "error");
+		assertEquals(reply.getValue().getString("code"), RequestTimeoutException.CODE);
+		assertEquals(cassandraPersistor.getRemainingTimeout(), 0);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testDeadline() throws Exception {
+		cassandraPersistor.startDeadline(10);
+		assertTrue(cassandraPersistor.getRemainingTimeout() > 0);
+		Thread.sleep(20);
+		try {
+			cassandraPersistor.getRemainingTimeout();
+			fail();
+		} catch(RequestTimeoutException e) {
+			assertEquals(e.getMessage(), "No response within 10ms!");
+		}
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testResultCacheWriteDuringRead() throws Exception {
+		final ResultCache resultCache = new ResultCache(1024, 60000, mock(Logger.class));
+		cassandraPersistor.setResultCache(resultCache);
+		final Session session = mockSession();
+		cassandraPersistor.setPreparedStatementCache(new PreparedStatementCache(10, session, mock(Logger.class)));
+		final boolean[] write = new boolean[1];
+		when(session.execute(any(Statement.class))).thenAnswer(new Answer<ResultSet>() {
+			@Override
+			public ResultSet answer(InvocationOnMock invocation) throws Throwable {
+				// Another instance writes the table while the read is in flight
+				if(write[0]) {
+					resultCache.invalidate("test.table");
+				}
+				return mock(ResultSet.class);
+			}
+		});
+		JsonObject read = new JsonObject().putString("action", "prepared").putString("statement", "SELECT * FROM test.table WHERE id = ?").putArray("values", new JsonArray().addArray(new JsonArray().add(1))).putBoolean("cache", true);
+
+		// The result read before the write is not cached after its invalidation
+		write[0] = true;
+		Message<JsonObject> message = mock(Message.class);
+		when(message.body()).thenReturn(read);
+		cassandraPersistor.dispatch(message);
+		verify(logger, never()).error(any(), any(Throwable.class));
+		verify(message).reply((Object) new JsonArray());
+		assertEquals(resultCache.size(), 0);
+
+		// Without a write it is
+		write[0] = false;
+		message = mock(Message.class);
+		when(message.body()).thenReturn(read);
+		cassandraPersistor.dispatch(message);
+		assertEquals(resultCache.size(), 1);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testKeyspaceRouting() throws Exception {
+		Session session = mockSession();
+		Session otherSession = mockSession();
+		when(otherSession.getLoggedKeyspace()).thenReturn("other");
+		Cluster cluster = mock(Cluster.class);
+		when(cluster.connect("other")).thenReturn(otherSession);
+		SharedSession sharedSession = new SharedSession(cluster, session, new PreparedStatementCache(10, session, logger), null);
+		cassandraPersistor.setSharedSession(sharedSession);
+		cassandraPersistor.setKeyspace("main");
+		cassandraPersistor.setPreparedStatementCache(sharedSession.getPreparedStatementCache());
+		JsonObject prepared = new JsonObject().putString("action", "prepared").putString("statement", "SELECT * FROM table WHERE id = ?").putArray("values", new JsonArray().addArray(new JsonArray().add(1)));
+
+		// Without or with the configured keyspace on the configured session
+		Message<JsonObject> message = mock(Message.class);
+		when(message.body()).thenReturn(prepared.copy());
+		cassandraPersistor.dispatch(message);
+		message = mock(Message.class);
+		when(message.body()).thenReturn(prepared.copy().putString("keyspace", "main"));
+		cassandraPersistor.dispatch(message);
+		verify(session, times(2)).execute(any(Statement.class));
+		verify(cluster, never()).connect(any(String.class));
+
+		// Other keyspaces on their own session, connected once
+		for(int i = 0; i < 2; i++) {
+			message = mock(Message.class);
+			when(message.body()).thenReturn(prepared.copy().putString("keyspace", "other"));
+			cassandraPersistor.dispatch(message);
+			verify(message).reply((Object) new JsonArray());
+		}
+		verify(otherSession, times(2)).execute(any(Statement.class));
+		verify(otherSession).prepare("SELECT * FROM table WHERE id = ?");
+		verify(cluster, times(1)).connect("other");
+		verify(session, times(2)).execute(any(Statement.class));
+
+		// Released once the message is processed
+		KeyspaceSession keyspaceSession = sharedSession.acquireKeyspaceSession("other");
+		assertEquals(1, keyspaceSession.getReferences());
+		keyspaceSession.release();
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testLoadBalancingPolicy() throws Exception {
+		// Nothing configured keeps the driver default
+		LoadBalancingPolicy defaultPolicy = cassandraPersistor.getLoadBalancingPolicy();
+		cassandraPersistor.setLoadBalancingPolicy(new JsonObject());
+		assertSame(cassandraPersistor.getLoadBalancingPolicy(), defaultPolicy);
+
+		// Token aware DC aware round robin by default
+		cassandraPersistor.setLoadBalancingPolicy(new JsonObject().putString("policy", "dcAware").putString("localDc", "dc1"));
+		assertTrue(cassandraPersistor.getLoadBalancingPolicy() instanceof TokenAwarePolicy);
+		assertTrue(((TokenAwarePolicy) cassandraPersistor.getLoadBalancingPolicy()).getChildPolicy() instanceof DCAwareRoundRobinPolicy);
+		//
+		cassandraPersistor.setLoadBalancingPolicy(new JsonObject().putString("policy", "roundRobin").putBoolean("tokenAware", false));
+		assertTrue(cassandraPersistor.getLoadBalancingPolicy() instanceof RoundRobinPolicy);
+
+		// Latency aware wraps the policy, defaults to DC aware
+		cassandraPersistor.setLoadBalancingPolicy(new JsonObject().putObject("latencyAware", new JsonObject()));
+		LoadBalancingPolicy latencyAware = ((TokenAwarePolicy) cassandraPersistor.getLoadBalancingPolicy()).getChildPolicy();
+		assertTrue(latencyAware instanceof LatencyAwarePolicy);
+		assertTrue(((LatencyAwarePolicy) latencyAware).getChildPolicy() instanceof DCAwareRoundRobinPolicy);
+
+		// Unknown policies fall back to DC aware like the other policy settings
+		cassandraPersistor.setLoadBalancingPolicy(new JsonObject().putString("policy", "random").putBoolean("tokenAware", false));
+		assertTrue(cassandraPersistor.getLoadBalancingPolicy() instanceof DCAwareRoundRobinPolicy);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testInvalidLoadBalancingPolicy() throws Exception {
+		// Invalid latency aware values fail the start instead of being corrected silently
+		LoadBalancingPolicy defaultPolicy = cassandraPersistor.getLoadBalancingPolicy();
+		for(JsonObject latencyAware : Arrays.asList(new JsonObject().putNumber("exclusionThreshold", 0.5), new JsonObject().putNumber("scale", 0), new JsonObject().putNumber("minMeasure", -1))) {
+			try {
+				cassandraPersistor.setLoadBalancingPolicy(new JsonObject().putObject("latencyAware", latencyAware));
+				fail(latencyAware.encode());
+			} catch(IllegalArgumentException e) {
+				assertSame(cassandraPersistor.getLoadBalancingPolicy(), defaultPolicy);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return A session preparing and executing every statement with an empty result
+	 */
+	private Session mockSession() {
+		Session session = mock(Session.class);
+		PreparedStatement preparedStatement = mock(PreparedStatement.class);
+		BoundStatement boundStatement = mock(BoundStatement.class);
+		when(preparedStatement.bind(anyVararg())).thenReturn(boundStatement);
+		when(boundStatement.setIdempotent(anyBoolean())).thenReturn(boundStatement);
+		when(session.prepare(any(String.class))).thenReturn(preparedStatement);
+		when(session.execute(any(Statement.class))).thenReturn(mock(ResultSet.class));
+		return session;
+	}
+}
@@ -0,0 +1,138 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.insanitydesign.vertx.CircuitBreaker.State;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class CircuitBreakerTest {
+
+	/** The current test time */
+	private long now;
+
+	/** */
+	private CircuitBreaker circuitBreaker;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		// Window of 1000ms, 4 requests min, 50% errors, slow from 100ms, 500ms open, 2 probes
+		this.circuitBreaker = new CircuitBreaker(1000, 4, 0.5, 100, 500, 2, null) {
+			@Override
+			protected long now() {
+				return now;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testOpenAndClose() {
+		assertTrue(circuitBreaker.allow("table"));
+		circuitBreaker.record("table", 1, false);
+		circuitBreaker.record("table", 1, false);
+		circuitBreaker.record("table", 1, true);
+		// Slow requests fail as well
+		circuitBreaker.record("table", 200, false);
+		assertEquals(circuitBreaker.getState("table"), State.OPEN);
+		assertFalse(circuitBreaker.allow("table"));
+		assertTrue(circuitBreaker.isOpen("table"));
+		assertTrue(circuitBreaker.isAnyOpen());
+		assertTrue(circuitBreaker.allow("other"));
+
+		// Half-open with limited probes
+		now = 500;
+		assertFalse(circuitBreaker.isOpen("table"));
+		assertTrue(circuitBreaker.allow("table"));
+		assertTrue(circuitBreaker.allow("table"));
+		assertFalse(circuitBreaker.allow("table"));
+		assertEquals(circuitBreaker.getState("table"), State.HALF_OPEN);
+		circuitBreaker.record("table", 1, false);
+		circuitBreaker.record("table", 1, false);
+		assertEquals(circuitBreaker.getState("table"), State.CLOSED);
+		assertTrue(circuitBreaker.allow("table"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testFailedProbe() {
+		for(int i = 0; i < 4; i++) {
+			circuitBreaker.record("table", 1, true);
+		}
+		now = 500;
+		assertTrue(circuitBreaker.allow("table"));
+		circuitBreaker.record("table", 1, true);
+		assertEquals(circuitBreaker.getState("table"), State.OPEN);
+		assertFalse(circuitBreaker.allow("table"));
+		now = 1000;
+		assertTrue(circuitBreaker.allow("table"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testWindow() {
+		circuitBreaker.record("table", 1, true);
+		circuitBreaker.record("table", 1, true);
+		circuitBreaker.record("table", 1, true);
+		// A new window starts over
+		now = 1000;
+		circuitBreaker.record("table", 1, true);
+		circuitBreaker.record("table", 1, false);
+		circuitBreaker.record("table", 1, false);
+		circuitBreaker.record("table", 1, false);
+		assertEquals(circuitBreaker.getState("table"), State.CLOSED);
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPolicy() throws Exception {
+		Host healthy = mock(Host.class);
+		when(healthy.getAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+		Host failing = mock(Host.class);
+		when(failing.getAddress()).thenReturn(InetAddress.getByName("127.0.0.2"));
+		LoadBalancingPolicy childPolicy = mock(LoadBalancingPolicy.class);
+		when(childPolicy.newQueryPlan(anyString(), any(Statement.class))).thenReturn(Arrays.asList(failing, healthy).iterator()).thenReturn(Arrays.asList(failing, healthy).iterator());
+
+		//
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy(childPolicy, circuitBreaker);
+		for(int i = 0; i < 4; i++) {
+			policy.update(failing, null, new RuntimeException(), 0);
+			// Invalid queries are not the hosts fault
+			policy.update(healthy, null, new InvalidQueryException("invalid"), 0);
+		}
+		Iterator<Host> queryPlan = policy.newQueryPlan("test", null);
+		assertEquals(queryPlan.next(), healthy);
+		assertFalse(queryPlan.hasNext());
+
+		// Back in the plan once the open time passed
+		now = 500;
+		queryPlan = policy.newQueryPlan("test", null);
+		assertEquals(queryPlan.next(), failing);
+	}
+}
@@ -0,0 +1,39 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class CounterBufferTest {
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testAggregation() {
+		CounterBuffer counterBuffer = new CounterBuffer(2);
+		String statement = "UPDATE test.counters SET hits = hits + ? WHERE id = ?";
+
+		// Same counter and key aggregate
+		assertFalse(counterBuffer.add(statement, new Object[] { "a" }, 1));
+		assertFalse(counterBuffer.add(statement, new Object[] { "a" }, 2));
+		assertEquals(counterBuffer.size(), 1);
+		// Another key fills the buffer
+		assertTrue(counterBuffer.add(statement, new Object[] { "b" }, -1));
+		assertTrue(counterBuffer.add(statement, new Object[] { "b" }, 1));
+
+		// Counters summing up to 0 are skipped
+		List<Entry<CounterBuffer.Counter, Long>> increments = counterBuffer.drain();
+		assertEquals(increments.size(), 1);
+		assertArrayEquals(increments.get(0).getKey().getKey(), new Object[] { "a" });
+		assertEquals(increments.get(0).getValue().longValue(), 3);
+		assertEquals(counterBuffer.size(), 0);
+	}
+}
@@ -0,0 +1,47 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class CqlUtilsTest {
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testGetTable() {
+		assertEquals("test.table", CqlUtils.getTable("SELECT * FROM test.table WHERE id = ?", null));
+		assertEquals("test.table", CqlUtils.getTable("select key, value from Test.Table", null));
+		assertEquals("test.table", CqlUtils.getTable("INSERT INTO test.table (id, value) VALUES(?, ?)", null));
+		assertEquals("test.table", CqlUtils.getTable("UPDATE test.table SET value = ? WHERE id = ?", null));
+		assertEquals("test.table", CqlUtils.getTable("DELETE FROM test.table WHERE id = ?", null));
+		assertEquals("test.table", CqlUtils.getTable("DELETE value FROM test.table WHERE id = ?", null));
+		assertEquals("test.table", CqlUtils.getTable("TRUNCATE test.table", null));
+		assertEquals("test.MixedCase", CqlUtils.getTable("SELECT * FROM test.\"MixedCase\"", null));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testGetUnqualifiedTable() {
+		assertEquals("test.table", CqlUtils.getTable("SELECT * FROM table", "test"));
+		assertEquals("table", CqlUtils.getTable("SELECT * FROM table", null));
+		assertNull(CqlUtils.getTable("CREATE TABLE test.table (id uuid PRIMARY KEY)", "test"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testIsSelect() {
+		assertTrue(CqlUtils.isSelect("  select * FROM test.table"));
+		assertFalse(CqlUtils.isSelect("INSERT INTO test.table (id) VALUES(?)"));
+		assertFalse(CqlUtils.isSelect(null));
+	}
+}
@@ -0,0 +1,154 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class JsonResultWriterTest {
+
+	/** */
+	private JsonResultWriter jsonResultWriter = new JsonResultWriter(ProtocolVersion.V2);
+
+	/**
+	 * Write the given column bytes into a JSON array and return the encoded array
+	 */
+	private String write(DataType type, Object value) throws Exception {
+		return writeBytes(type, type.serialize(value, ProtocolVersion.V2));
+	}
+
+	/**
+	 * Write the given raw column bytes into a JSON array and return the encoded array
+	 */
+	private String writeBytes(DataType type, ByteBuffer bytes) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		JsonGenerator generator = new JsonFactory().createGenerator(output, JsonEncoding.UTF8);
+		generator.writeStartArray();
+		jsonResultWriter.writeColumn(type, bytes, generator);
+		generator.writeEndArray();
+		generator.close();
+		return output.toString("UTF-8");
+	}
+
+	/**
+	 * Add the given column bytes to a row like processResult and return the encoded value as JSON array
+	 */
+	private String processResult(DataType type, ByteBuffer bytes) {
+		JsonObject row = new CassandraPersistor().addRow("column", type.deserialize(bytes, ProtocolVersion.V2), new JsonObject());
+		return new JsonArray().add(row.getValue("column")).encode();
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testNativeColumns() throws Exception {
+		assertEquals("[\"Value \\\"A\\\"\"]", write(DataType.text(), "Value \"A\""));
+		assertEquals("[42]", write(DataType.cint(), 42));
+		assertEquals("[42]", write(DataType.bigint(), 42L));
+		assertEquals("[4.2]", write(DataType.cdouble(), 4.2d));
+		assertEquals("[true]", write(DataType.cboolean(), true));
+
+		//
+		UUID uuid = UUID.fromString("3a708930-c005-11e3-8a33-0800200c9a66");
+		assertEquals("[\"" + uuid + "\"]", write(DataType.uuid(), uuid));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCollectionColumns() throws Exception {
+		assertEquals(new JsonArray().addArray(new JsonArray().addNumber(1).addNumber(2)), new JsonArray(write(DataType.list(DataType.cint()), Arrays.asList(1, 2))));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testFloatCollectionColumns() throws Exception {
+		CassandraPersistor cassandraPersistor = new CassandraPersistor();
+		// Same encoding as processResult into a JsonObject
+		List<Float> list = Arrays.asList(0.1f, 2.5f);
+		assertEquals("[" + cassandraPersistor.addRow("list", list, new JsonObject()).getArray("list").encode() + "]", write(DataType.list(DataType.cfloat()), list));
+		assertEquals("[[0.1,2.5]]", write(DataType.list(DataType.cfloat()), list));
+		//
+		Map<String, Float> map = Collections.singletonMap("key", 0.1f);
+		assertEquals("[" + cassandraPersistor.addRow("map", map, new JsonObject()).getObject("map").encode() + "]", write(DataType.map(DataType.text(), DataType.cfloat()), map));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testEmptyColumns() throws Exception {
+		// Empty fixed width values (e.g. blobAsInt(0x)) are skipped like null columns, as by processResult
+		for(DataType type : Arrays.asList(DataType.cint(), DataType.bigint(), DataType.cfloat(), DataType.cdouble(), DataType.cboolean(), DataType.uuid(), DataType.timestamp())) {
+			ColumnDefinitions columnDefinitions = mock(ColumnDefinitions.class);
+			when(columnDefinitions.size()).thenReturn(2);
+			when(columnDefinitions.getName(0)).thenReturn("empty");
+			when(columnDefinitions.getType(0)).thenReturn(type);
+			when(columnDefinitions.getName(1)).thenReturn("text");
+			when(columnDefinitions.getType(1)).thenReturn(DataType.text());
+			Row row = mock(Row.class);
+			when(row.getColumnDefinitions()).thenReturn(columnDefinitions);
+			when(row.getBytesUnsafe(0)).thenReturn(ByteBuffer.allocate(0));
+			when(row.getBytesUnsafe(1)).thenReturn(DataType.text().serialize("value", ProtocolVersion.V2));
+			ResultSet resultSet = mock(ResultSet.class);
+			when(resultSet.iterator()).thenReturn(Arrays.asList(row).iterator());
+
+			//
+			String written = jsonResultWriter.write(Arrays.asList(resultSet)).toString();
+			assertEquals(type.toString(), "[{\"text\":\"value\"}]", written);
+			when(resultSet.iterator()).thenReturn(Arrays.asList(row).iterator());
+			assertEquals(type.toString(), new CassandraPersistor().processResult(resultSet, new JsonArray()).encode(), written);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testInetColumns() throws Exception {
+		InetAddress address = InetAddress.getByName("127.0.0.1");
+		assertEquals("[\"127.0.0.1\"]", write(DataType.inet(), address));
+		assertEquals(processResult(DataType.inet(), DataType.inet().serialize(address, ProtocolVersion.V2)), write(DataType.inet(), address));
+		//
+		List<InetAddress> addresses = Arrays.asList(address);
+		assertEquals(processResult(DataType.list(DataType.inet()), DataType.list(DataType.inet()).serialize(addresses, ProtocolVersion.V2)), write(DataType.list(DataType.inet()), addresses));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testBlobColumn() throws Exception {
+		byte[] blob = new byte[] { 1, 2, 3 };
+		// Same encoding as JsonObject.putBinary
+		assertEquals(new JsonArray().addBinary(blob).encode(), write(DataType.blob(), ByteBuffer.wrap(blob)));
+	}
+}
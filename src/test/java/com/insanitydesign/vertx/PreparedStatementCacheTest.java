@@ -3,12 +3,19 @@ package com.insanitydesign.vertx;
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.vertx.java.core.logging.Logger;
 
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 import com.insanitydesign.vertx.PreparedStatementCache;
 import com.insanitydesign.vertx.PreparedStatementCache.CassandraPreparedStatement;
 
@@ -184,4 +191,155 @@ public class PreparedStatementCacheTest {
 		//
 		assertEquals(preparedStatementCache.getCachedStatements().size(), cacheSize);		
 	}
+	
+	/**
+	 * 
+	 */
+	@Test
+	public void testAddAllPipelined() throws Exception {
+		//Create cache to test on
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+		
+		//One statement prepares, one fails
+		String statement = "SELECT * FROM test.table";
+		String broken = "SELECT * FROM test.broken";
+		when(this.session.prepareAsync(statement)).thenReturn(Futures.immediateFuture(mock(PreparedStatement.class)));
+		when(this.session.prepareAsync(broken)).thenReturn(Futures.<PreparedStatement> immediateFailedFuture(new IllegalStateException("broken")));
+		
+		//Test
+		Map<String, Exception> results = preparedStatementCache.addAll(Arrays.asList(statement, broken), 1);
+		assertEquals(results.size(), 2);
+		assertNull(results.get(statement));
+		assertEquals(results.get(broken).getMessage(), "broken");
+		
+		//Only the prepared one is cached
+		assertTrue(preparedStatementCache.contains(statement));
+		assertFalse(preparedStatementCache.contains(broken));
+		assertEquals(preparedStatementCache.getCachedStatements().size(), 1);
+	}
+	
+	/**
+	 * 
+	 */
+	@Test
+	public void testPrepareTimeout() throws Exception {
+		//Create cache to test on
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+		
+		//One statement prepares, one hangs
+		String statement = "SELECT * FROM test.table";
+		String hanging = "SELECT * FROM test.hanging";
+		when(this.session.prepareAsync(statement)).thenReturn(Futures.immediateFuture(mock(PreparedStatement.class)));
+		when(this.session.prepareAsync(hanging)).thenReturn(SettableFuture.<PreparedStatement> create());
+		
+		//Test
+		try {
+			preparedStatementCache.add(hanging, 10);
+			fail();
+		} catch(RequestTimeoutException e) {
+			assertFalse(preparedStatementCache.contains(hanging));
+		}
+		
+		//The prepared one is cached anyway
+		when(this.session.prepareAsync(hanging)).thenReturn(SettableFuture.<PreparedStatement> create());
+		Map<String, Exception> results = preparedStatementCache.addAll(Arrays.asList(hanging, statement), 2, 10);
+		assertTrue(results.get(hanging) instanceof RequestTimeoutException);
+		assertNull(results.get(statement));
+		assertTrue(preparedStatementCache.contains(statement));
+	}
+	
+	/**
+	 * 
+	 */
+	@Test
+	public void testStatementIds() {
+		//Create cache to test on
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(1, session, logger);
+		
+		//Test
+		String statement = "SELECT * FROM test.table";
+		String id = preparedStatementCache.add(statement).getId();
+		assertSame(preparedStatementCache.getById(id), preparedStatementCache.get(statement));
+		
+		//Preparing again keeps the id
+		assertEquals(preparedStatementCache.add(statement).getId(), id);
+		
+		//Replaced statements lose their id
+		String id2 = preparedStatementCache.add("SELECT * FROM test.table2").getId();
+		assertNotEquals(id2, id);
+		assertNull(preparedStatementCache.getById(id));
+		assertNotNull(preparedStatementCache.getById(id2));
+	}
+	
+	/**
+	 * 
+	 */
+	@Test
+	public void testStatementIdsAfterRebuild() {
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+		String id = preparedStatementCache.add("INSERT INTO test.table (id, value) VALUES (?, ?)").getId();
+		
+		//A rebuilt cache (e.g. after a redeploy) does not know the old id
+		PreparedStatementCache rebuiltCache = new PreparedStatementCache(10, session, logger);
+		rebuiltCache.add("DELETE FROM test.table WHERE id = ?");
+		rebuiltCache.add("INSERT INTO test.other (id, value) VALUES (?, ?)");
+		assertNull(rebuiltCache.getById(id));
+		
+		//Until the same statement is prepared again
+		rebuiltCache.add("INSERT INTO test.table (id, value) VALUES (?, ?)");
+		assertEquals(rebuiltCache.getById(id).getId(), id);
+		assertSame(rebuiltCache.getById(id), rebuiltCache.get("INSERT INTO test.table (id, value) VALUES (?, ?)"));
+		
+		//The same statement in another keyspace has another id
+		Session otherSession = mock(Session.class);
+		when(otherSession.getLoggedKeyspace()).thenReturn("other");
+		PreparedStatementCache otherCache = new PreparedStatementCache(10, otherSession, logger);
+		assertNotEquals(otherCache.add("INSERT INTO test.table (id, value) VALUES (?, ?)").getId(), id);
+		assertNull(otherCache.getById(id));
+	}
+	
+	/**
+	 * 
+	 */
+	@Test
+	public void testInvalidate() {
+		//Create cache to test on
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+		preparedStatementCache.add("SELECT * FROM test.table WHERE id = ?");
+		preparedStatementCache.add("INSERT INTO table (id) VALUES (?)");
+		preparedStatementCache.add("SELECT * FROM test.table2");
+		
+		//Qualified and unqualified statements of the table are removed
+		assertEquals(preparedStatementCache.invalidate(Collections.singleton("test.table"), "test"), 2);
+		assertEquals(preparedStatementCache.size(), 1);
+		assertTrue(preparedStatementCache.contains("SELECT * FROM test.table2"));
+	}
+	
+	/**
+	 * 
+	 */
+	@Test
+	public void testConcurrentAdds() throws Exception {
+		//Create cache to test on
+		final PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+		
+		//Every thread adds its own statements to the full cache
+		Thread[] threads = new Thread[8];
+		for(int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for(int j = 0; j < 1000; j++) {
+						preparedStatementCache.add("SELECT * FROM test.table" + index + "_" + j, mock(PreparedStatement.class));
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(preparedStatementCache.size(), 10);
+	}
 }
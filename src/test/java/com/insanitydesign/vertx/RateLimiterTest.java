@@ -0,0 +1,117 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class RateLimiterTest {
+
+	/** The current test time in nanoseconds */
+	private long now;
+
+	/** */
+	private RateLimiter rateLimiter;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		Map<String, RateLimiter.Limit> limits = new HashMap<>();
+		// 10 per second, burst of 2
+		limits.put("reporting", new RateLimiter.Limit(10, 2));
+		this.rateLimiter = new RateLimiter(limits, null) {
+			@Override
+			protected long nanoTime() {
+				return now;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testReject() {
+		assertEquals(rateLimiter.acquire("reporting", 0), 0);
+		assertEquals(rateLimiter.acquire("reporting", 0), 0);
+		assertEquals(rateLimiter.acquire("reporting", 0), -1);
+		// Keys without a limit are unlimited
+		assertEquals(rateLimiter.acquire("web", 0), 0);
+
+		// Refilled with the rate
+		now = 100000000L;
+		assertEquals(rateLimiter.acquire("reporting", 0), 0);
+		assertEquals(rateLimiter.acquire("reporting", 0), -1);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testDelay() {
+		rateLimiter.acquire("reporting", 0);
+		rateLimiter.acquire("reporting", 0);
+		// Reserved tokens queue up behind each other
+		assertEquals(rateLimiter.acquire("reporting", 1000), 100);
+		assertEquals(rateLimiter.acquire("reporting", 1000), 200);
+		assertEquals(rateLimiter.acquire("reporting", 250), -1);
+
+		//
+		now = 200000000L;
+		assertEquals(rateLimiter.acquire("reporting", 1000), 100);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testDefaultLimit() {
+		RateLimiter defaultLimiter = new RateLimiter(new HashMap<String, RateLimiter.Limit>(), new RateLimiter.Limit(1, 1));
+		assertEquals(defaultLimiter.acquire("web", 0), 0);
+		assertEquals(defaultLimiter.acquire("web", 0), -1);
+		// Every key has its own bucket
+		assertEquals(defaultLimiter.acquire("batch", 0), 0);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testEvictIdle() {
+		RateLimiter defaultLimiter = new RateLimiter(new HashMap<String, RateLimiter.Limit>(), new RateLimiter.Limit(10, 1)) {
+			@Override
+			protected long nanoTime() {
+				return now;
+			}
+		};
+		defaultLimiter.acquire("web", 0);
+		defaultLimiter.acquire("batch", 0);
+		assertEquals(defaultLimiter.size(), 2);
+
+		// Only buckets refilled to their burst are evicted
+		now = 100000000L;
+		defaultLimiter.acquire("web", 0);
+		assertEquals(defaultLimiter.evictIdle(), 1);
+		assertEquals(defaultLimiter.size(), 1);
+		assertEquals(defaultLimiter.acquire("web", 0), -1);
+		assertEquals(defaultLimiter.acquire("batch", 0), 0);
+
+		// Evicted automatically once the buckets doubled since the last eviction
+		for(int i = 0; i < 2046; i++) {
+			defaultLimiter.acquire("caller " + i, 0);
+		}
+		assertEquals(defaultLimiter.size(), 2048);
+		now = 300000000L;
+		defaultLimiter.acquire("caller 2046", 0);
+		assertEquals(defaultLimiter.size(), 1);
+	}
+}
@@ -0,0 +1,131 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class ResultCacheTest {
+
+	/** */
+	private Logger logger;
+
+	/** */
+	private JsonArray result = new JsonArray().addObject(new JsonObject().putString("key", "value"));
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		this.logger = mock(Logger.class);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCache() {
+		ResultCache resultCache = new ResultCache(1024, 60000, logger);
+
+		//
+		String key = ResultCache.key("SELECT * FROM test.table WHERE id = ?", new JsonArray().add(new JsonArray().add(1)));
+		assertNull(resultCache.get(key));
+		assertTrue(resultCache.put(key, "test.table", result));
+		assertEquals(result, resultCache.get(key));
+		assertEquals(result.encode().length(), resultCache.getWeight());
+
+		//
+		assertNull(resultCache.get(ResultCache.key("SELECT * FROM test.table WHERE id = ?", new JsonArray().add(new JsonArray().add(2)))));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testExpiry() throws Exception {
+		ResultCache resultCache = new ResultCache(1024, 60000, logger);
+
+		//
+		resultCache.put("key", "test.table", result, 1);
+		Thread.sleep(5);
+		assertNull(resultCache.get("key"));
+		assertEquals(0, resultCache.size());
+		assertEquals(0, resultCache.getWeight());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testWeightEviction() {
+		long weight = result.encode().length();
+		ResultCache resultCache = new ResultCache(weight * 2, 60000, logger);
+
+		//
+		resultCache.put("key1", "test.table", result);
+		resultCache.put("key2", "test.table", result);
+		// Use key1 so key2 is the least recently used
+		assertNotNull(resultCache.get("key1"));
+		resultCache.put("key3", "test.table", result);
+
+		//
+		assertNotNull(resultCache.get("key1"));
+		assertNull(resultCache.get("key2"));
+		assertNotNull(resultCache.get("key3"));
+		assertEquals(weight * 2, resultCache.getWeight());
+
+		// Too heavy to be cached at all
+		assertFalse(new ResultCache(weight - 1, 60000, logger).put("key", "test.table", result));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testInvalidate() {
+		ResultCache resultCache = new ResultCache(1024, 60000, logger);
+
+		//
+		resultCache.put("key1", "test.table", result);
+		resultCache.put("key2", "test.table", result);
+		resultCache.put("key3", "test.anothertable", result);
+
+		//
+		assertEquals(2, resultCache.invalidate("test.table"));
+		assertNull(resultCache.get("key1"));
+		assertNull(resultCache.get("key2"));
+		assertNotNull(resultCache.get("key3"));
+		assertEquals(result.encode().length(), resultCache.getWeight());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testGeneration() {
+		ResultCache resultCache = new ResultCache(1024, 60000, logger);
+
+		// Invalidated while the result was mapped
+		long generation = resultCache.getGeneration("test.table");
+		resultCache.invalidate("test.table");
+		assertFalse(resultCache.put("key", "test.table", result, 60000, generation));
+		assertNull(resultCache.get("key"));
+
+		// Other tables are not affected
+		assertTrue(resultCache.put("other", "test.other", result, 60000, resultCache.getGeneration("test.other")));
+		// All tables are invalidated by clear
+		generation = resultCache.getGeneration("test.table");
+		resultCache.clear();
+		assertFalse(resultCache.put("key", "test.table", result, 60000, generation));
+		assertTrue(resultCache.put("key", "test.table", result, 60000, resultCache.getGeneration("test.table")));
+	}
+}
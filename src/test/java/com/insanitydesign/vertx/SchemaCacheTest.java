@@ -0,0 +1,97 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.TableMetadata;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class SchemaCacheTest {
+
+	/** */
+	private Metadata metadata;
+
+	/** */
+	private KeyspaceMetadata keyspace;
+
+	/** */
+	private TableMetadata table;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		ColumnMetadata id = mock(ColumnMetadata.class);
+		when(id.getName()).thenReturn("id");
+		when(id.getType()).thenReturn(DataType.uuid());
+
+		//
+		this.keyspace = mock(KeyspaceMetadata.class);
+		when(keyspace.getName()).thenReturn("test");
+		when(keyspace.getReplication()).thenReturn(Collections.singletonMap("class", "SimpleStrategy"));
+		this.table = mock(TableMetadata.class);
+		when(table.getName()).thenReturn("table");
+		when(table.getKeyspace()).thenReturn(keyspace);
+		when(table.getPartitionKey()).thenReturn(Arrays.asList(id));
+		when(table.getColumns()).thenReturn(Arrays.asList(id));
+		when(table.asCQLQuery()).thenReturn("CREATE TABLE test.table (id uuid PRIMARY KEY)");
+		when(keyspace.getTables()).thenReturn(Arrays.asList(table));
+
+		//
+		this.metadata = mock(Metadata.class);
+		when(metadata.getKeyspaces()).thenReturn(Arrays.asList(keyspace));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testDescribe() {
+		SchemaCache schemaCache = new SchemaCache();
+		assertTrue(schemaCache.refresh(metadata).isEmpty());
+
+		//
+		assertEquals(schemaCache.describe(null, null).getArray("keyspaces").get(0), "test");
+		assertEquals(schemaCache.describe("test", null).getArray("tables").get(0), "table");
+		JsonObject description = schemaCache.describe("test", "table");
+		assertEquals(description.getArray("partitionKey").get(0), "id");
+		assertEquals(((JsonObject) description.getArray("columns").get(0)).getString("type"), "uuid");
+		assertNull(schemaCache.describe("test", "unknown"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testChanges() {
+		SchemaCache schemaCache = new SchemaCache();
+		schemaCache.refresh(metadata);
+		assertTrue(schemaCache.refresh(metadata).isEmpty());
+
+		// Altered
+		when(table.asCQLQuery()).thenReturn("CREATE TABLE test.table (id uuid PRIMARY KEY, value text)");
+		Set<String> changed = schemaCache.refresh(metadata);
+		assertEquals(changed, Collections.singleton("test.table"));
+
+		// Dropped
+		when(keyspace.getTables()).thenReturn(Collections.<TableMetadata> emptyList());
+		assertEquals(schemaCache.refresh(metadata), Collections.singleton("test.table"));
+		assertNull(schemaCache.describe("test", "table"));
+	}
+}
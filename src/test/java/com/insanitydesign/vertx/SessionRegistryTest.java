@@ -0,0 +1,360 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+import com.insanitydesign.vertx.SessionRegistry.KeyspaceSession;
+import com.insanitydesign.vertx.SessionRegistry.SessionFactory;
+import com.insanitydesign.vertx.SessionRegistry.SharedSession;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class SessionRegistryTest {
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKey() {
+		JsonObject config1 = new JsonObject().putString("address", "first").putArray("hosts", new JsonArray().add("127.0.0.1")).putNumber("port", 9042);
+		JsonObject config2 = new JsonObject().putNumber("port", 9042).putArray("hosts", new JsonArray().add("127.0.0.1")).putString("address", "second");
+
+		// Same connection but different addresses
+		assertEquals(SessionRegistry.key(config1), SessionRegistry.key(config2));
+		assertNotEquals(SessionRegistry.key(config1), SessionRegistry.key(config2.putNumber("port", 9142)));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testReferenceCounting() throws Exception {
+		final Cluster cluster = mock(Cluster.class);
+		final Session session = mock(Session.class);
+		final AtomicInteger created = new AtomicInteger();
+		SessionFactory factory = new SessionFactory() {
+			@Override
+			public SharedSession create() throws Exception {
+				created.incrementAndGet();
+				return new SharedSession(cluster, session, null, null);
+			}
+		};
+
+		//
+		SharedSession first = SessionRegistry.acquire("test", factory);
+		SharedSession second = SessionRegistry.acquire("test", factory);
+		assertSame(first, second);
+		assertEquals(1, created.get());
+		assertEquals(2, first.getReferences());
+
+		//
+		assertFalse(SessionRegistry.release(first));
+		verify(session, never()).close();
+		assertTrue(SessionRegistry.release(second));
+		verify(session).close();
+		verify(cluster).close();
+		assertEquals(0, SessionRegistry.size());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCreateOutsideLock() throws Exception {
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch created = new CountDownLatch(1);
+		final AtomicInteger creations = new AtomicInteger();
+		final SessionFactory slowFactory = new SessionFactory() {
+			@Override
+			public SharedSession create() throws Exception {
+				creations.incrementAndGet();
+				creating.countDown();
+				created.await();
+				return new SharedSession(mock(Cluster.class), mock(Session.class), null, null);
+			}
+		};
+		final SharedSession[] slowSessions = new SharedSession[2];
+		Thread[] threads = new Thread[2];
+		for(int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						slowSessions[index] = SessionRegistry.acquire("slow", slowFactory);
+					} catch(Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		creating.await();
+
+		// Other keys are not blocked by the slow creation
+		SharedSession fast = SessionRegistry.acquire("fast", new SessionFactory() {
+			@Override
+			public SharedSession create() throws Exception {
+				return new SharedSession(mock(Cluster.class), mock(Session.class), null, null);
+			}
+		});
+		assertEquals(1, fast.getReferences());
+		SessionRegistry.release(fast);
+
+		// Concurrent callers of the same key share the single creation
+		created.countDown();
+		for(Thread thread : threads) {
+			thread.join(1000);
+		}
+		assertSame(slowSessions[0], slowSessions[1]);
+		assertEquals(1, creations.get());
+		assertEquals(2, slowSessions[0].getReferences());
+		SessionRegistry.release(slowSessions[0]);
+		SessionRegistry.release(slowSessions[1]);
+		assertEquals(0, SessionRegistry.size());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCreateFailure() throws Exception {
+		final AtomicInteger creations = new AtomicInteger();
+		SessionFactory factory = new SessionFactory() {
+			@Override
+			public SharedSession create() throws Exception {
+				if(creations.incrementAndGet() == 1) {
+					throw new IllegalStateException("unavailable");
+				}
+				return new SharedSession(mock(Cluster.class), mock(Session.class), null, null);
+			}
+		};
+
+		//
+		try {
+			SessionRegistry.acquire("failing", factory);
+			fail();
+		} catch(IllegalStateException e) {
+			assertEquals("unavailable", e.getMessage());
+		}
+		assertEquals(0, SessionRegistry.size());
+		// Not kept as failed
+		SharedSession sharedSession = SessionRegistry.acquire("failing", factory);
+		assertEquals(1, sharedSession.getReferences());
+		SessionRegistry.release(sharedSession);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCatalogueRestoredOnce() throws Exception {
+		final SharedSession sharedSession = new SharedSession(mock(Cluster.class), mock(Session.class), null, null);
+		SessionFactory factory = new SessionFactory() {
+			@Override
+			public SharedSession create() throws Exception {
+				return sharedSession;
+			}
+		};
+
+		//
+		SharedSession first = SessionRegistry.acquire("catalogue", factory);
+		SharedSession second = SessionRegistry.acquire("catalogue", factory);
+		assertTrue(first.markCatalogueRestored());
+		// Still restored if the first instance stops and the session is referenced once again
+		SessionRegistry.release(first);
+		assertEquals(1, second.getReferences());
+		assertFalse(second.markCatalogueRestored());
+		SessionRegistry.release(second);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testSchemaRefreshOnce() throws Exception {
+		SharedSession sharedSession = new SharedSession(mock(Cluster.class), mock(Session.class), null, null);
+		Object first = new Object();
+		Object second = new Object();
+
+		// Only the first instance refreshes
+		assertTrue(sharedSession.claimSchemaRefresh(first));
+		assertFalse(sharedSession.claimSchemaRefresh(second));
+		assertTrue(sharedSession.claimSchemaRefresh(first));
+		// Releasing another instance changes nothing
+		sharedSession.releaseSchemaRefresh(second);
+		assertFalse(sharedSession.claimSchemaRefresh(second));
+
+		// The next timer takes over once the first instance stopped
+		sharedSession.releaseSchemaRefresh(first);
+		assertTrue(sharedSession.claimSchemaRefresh(second));
+		assertFalse(sharedSession.claimSchemaRefresh(first));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testUnshared() throws Exception {
+		SessionFactory factory = new SessionFactory() {
+			@Override
+			public SharedSession create() throws Exception {
+				return new SharedSession(null, null, null, null);
+			}
+		};
+
+		//
+		assertNotSame(SessionRegistry.acquire(null, factory), SessionRegistry.acquire(null, factory));
+		assertEquals(0, SessionRegistry.size());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKeyspaceSessions() throws Exception {
+		Cluster cluster = mock(Cluster.class);
+		Session first = mock(Session.class);
+		Session second = mock(Session.class);
+		when(cluster.connect("first")).thenReturn(first);
+		when(cluster.connect("second")).thenReturn(second);
+		SharedSession sharedSession = new SharedSession(cluster, mock(Session.class), new PreparedStatementCache(10, null, mock(Logger.class)), null);
+		sharedSession.setMaxKeyspaceSessions(1);
+
+		// Connected once per keyspace
+		KeyspaceSession firstSession = sharedSession.acquireKeyspaceSession("first");
+		firstSession.release();
+		assertSame(firstSession, sharedSession.acquireKeyspaceSession("first"));
+		firstSession.release();
+		assertSame(first, firstSession.getPreparedStatementCache().getSession());
+		verify(cluster, times(1)).connect("first");
+
+		// The least recently used keyspace session is closed
+		assertSame(second, sharedSession.acquireKeyspaceSession("second").getPreparedStatementCache().getSession());
+		verify(first).closeAsync();
+		assertEquals(2, sharedSession.getPreparedStatementCaches().size());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKeyspaceSessionEvictedInUse() throws Exception {
+		Cluster cluster = mock(Cluster.class);
+		Session first = mock(Session.class);
+		when(cluster.connect("first")).thenReturn(first);
+		when(cluster.connect("second")).thenReturn(mock(Session.class));
+		SharedSession sharedSession = new SharedSession(cluster, mock(Session.class), new PreparedStatementCache(10, null, mock(Logger.class)), null);
+		sharedSession.setMaxKeyspaceSessions(1);
+
+		// Evicted while a request still uses it
+		KeyspaceSession firstSession = sharedSession.acquireKeyspaceSession("first");
+		sharedSession.acquireKeyspaceSession("second");
+		verify(first, never()).closeAsync();
+		assertEquals(1, firstSession.getReferences());
+
+		// Closed with the last release and connected again by the next request
+		firstSession.release();
+		verify(first).closeAsync();
+		assertNotSame(firstSession, sharedSession.acquireKeyspaceSession("first"));
+		verify(cluster, times(2)).connect("first");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKeyspaceSessionEvictedDuringConnect() throws Exception {
+		Cluster cluster = mock(Cluster.class);
+		final Session first = mock(Session.class);
+		final CountDownLatch connected = new CountDownLatch(1);
+		when(cluster.connect("first")).thenAnswer(new Answer<Session>() {
+			@Override
+			public Session answer(InvocationOnMock invocation) throws Throwable {
+				connected.await();
+				return first;
+			}
+		});
+		when(cluster.connect("second")).thenReturn(mock(Session.class));
+		SharedSession sharedSession = new SharedSession(cluster, mock(Session.class), new PreparedStatementCache(10, null, mock(Logger.class)), null);
+		sharedSession.setMaxKeyspaceSessions(1);
+
+		// Released by the timed out request and evicted while still connecting
+		try {
+			sharedSession.acquireKeyspaceSession("first", 10);
+			fail();
+		} catch(RequestTimeoutException e) {
+		}
+		sharedSession.acquireKeyspaceSession("second");
+		verify(first, never()).closeAsync();
+
+		// Closed once connected instead of leaking
+		connected.countDown();
+		verify(first, timeout(1000)).closeAsync();
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKeyspaceSessionConnectFailure() throws Exception {
+		Cluster cluster = mock(Cluster.class);
+		Session first = mock(Session.class);
+		when(cluster.connect("first")).thenThrow(new IllegalStateException("unavailable")).thenReturn(first);
+		SharedSession sharedSession = new SharedSession(cluster, mock(Session.class), new PreparedStatementCache(10, null, mock(Logger.class)), null);
+
+		//
+		try {
+			sharedSession.acquireKeyspaceSession("first");
+			fail();
+		} catch(IllegalStateException e) {
+			assertEquals(e.getMessage(), "unavailable");
+		}
+		// Not kept as failed
+		assertSame(first, sharedSession.acquireKeyspaceSession("first").getPreparedStatementCache().getSession());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKeyspaceSessionConnectTimeout() throws Exception {
+		Cluster cluster = mock(Cluster.class);
+		final Session first = mock(Session.class);
+		final CountDownLatch connected = new CountDownLatch(1);
+		when(cluster.connect("first")).thenAnswer(new Answer<Session>() {
+			@Override
+			public Session answer(InvocationOnMock invocation) throws Throwable {
+				connected.await();
+				return first;
+			}
+		});
+		SharedSession sharedSession = new SharedSession(cluster, mock(Session.class), new PreparedStatementCache(10, null, mock(Logger.class)), null);
+
+		//
+		try {
+			sharedSession.acquireKeyspaceSession("first", 10);
+			fail();
+		} catch(RequestTimeoutException e) {
+			assertEquals(e.getMessage(), "No response within 10ms!");
+		}
+		// The connect goes on for the next request
+		connected.countDown();
+		assertSame(first, sharedSession.acquireKeyspaceSession("first", 1000).getPreparedStatementCache().getSession());
+		verify(cluster, times(1)).connect("first");
+	}
+}
@@ -0,0 +1,148 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class SlowQueryLogTest {
+
+	/** */
+	private Logger logger;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		this.logger = mock(Logger.class);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testThreshold() {
+		SlowQueryLog slowQueryLog = new SlowQueryLog(100, 0, ConsistencyLevel.ONE, logger);
+
+		//
+		Statement statement = new SimpleStatement("SELECT * FROM test.table");
+		assertFalse(slowQueryLog.log(statement, null, 99));
+		verify(logger, never()).warn(any());
+
+		//
+		assertTrue(slowQueryLog.log(statement, null, 100));
+		verify(logger).warn(contains("SELECT * FROM test.table"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testFailures() {
+		SlowQueryLog slowQueryLog = new SlowQueryLog(100, 0, ConsistencyLevel.ONE, logger);
+
+		// Fast failures are no slow queries, timeouts always are
+		Statement statement = new SimpleStatement("SELECT * FROM test.table");
+		assertFalse(slowQueryLog.log(statement, null, new IllegalStateException("invalid"), 1, false));
+		assertTrue(slowQueryLog.log(statement, null, new RequestTimeoutException(50), 50, false));
+		verify(logger).warn(contains("Error: RequestTimeoutException"));
+
+		//
+		assertTrue(slowQueryLog.log(statement, null, new IllegalStateException("unavailable"), 100, false));
+		verify(logger).warn(contains("Failed slow query (100ms): SELECT * FROM test.table"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testTrace() throws Exception {
+		final List<Runnable> fetches = new ArrayList<>();
+		SlowQueryLog slowQueryLog = new SlowQueryLog(100, 1, ConsistencyLevel.ONE, logger) {
+			@Override
+			protected Executor getTraceExecutor() {
+				return new Executor() {
+					@Override
+					public void execute(Runnable fetch) {
+						fetches.add(fetch);
+					}
+				};
+			}
+		};
+		Statement statement = slowQueryLog.sample(new SimpleStatement("SELECT * FROM test.table"));
+		UUID traceId = UUID.randomUUID();
+		QueryTrace.Event event = mock(QueryTrace.Event.class);
+		when(event.getSourceElapsedMicros()).thenReturn(42);
+		when(event.getSource()).thenReturn(InetAddress.getByName("127.0.0.1"));
+		when(event.getThreadName()).thenReturn("ReadStage:1");
+		when(event.getDescription()).thenReturn("Read 1 live cell");
+		QueryTrace trace = mock(QueryTrace.class);
+		when(trace.getTraceId()).thenReturn(traceId);
+		when(trace.getEvents()).thenReturn(Arrays.asList(event));
+		ExecutionInfo executionInfo = mock(ExecutionInfo.class);
+		when(executionInfo.getQueryTrace()).thenReturn(trace);
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getExecutionInfo()).thenReturn(executionInfo);
+
+		// Logged right away, the complete trace is fetched off the calling thread
+		assertTrue(slowQueryLog.log(statement, resultSet, null, 100, true));
+		verify(logger).warn(contains("Trace: " + traceId));
+		verify(trace, never()).getEvents();
+		assertEquals(1, fetches.size());
+
+		// The events follow once fetched
+		fetches.get(0).run();
+		verify(logger).warn("[Cassandra Persistor] Trace " + traceId + ":\n\t42us /127.0.0.1 [ReadStage:1] Read 1 live cell");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testSampling() {
+		//
+		Statement statement = new SimpleStatement("SELECT * FROM test.table");
+		new SlowQueryLog(100, 0, ConsistencyLevel.ONE, logger).sample(statement);
+		assertFalse(statement.isTracing());
+
+		//
+		new SlowQueryLog(100, 1, ConsistencyLevel.ONE, logger).sample(statement);
+		assertTrue(statement.isTracing());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testBatchDescription() {
+		BatchStatement batch = new BatchStatement();
+		batch.add(new SimpleStatement("INSERT INTO test.table (key, value) VALUES(?, ?)", "Key 1", "Value 1"));
+		batch.add(new SimpleStatement("INSERT INTO test.table (key, value) VALUES(?, ?)", "Key 2", "Value 2"));
+
+		//
+		assertEquals("BATCH (2) INSERT INTO test.table (key, value) VALUES(?, ?)", SlowQueryLog.getQueryString(batch));
+		assertEquals(4, SlowQueryLog.getValuesCount(batch));
+	}
+}
@@ -0,0 +1,57 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.Session;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class StatementCatalogueTest {
+
+	/** */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, mock(Session.class), mock(Logger.class));
+		for(int i = 0; i < 3; i++) {
+			preparedStatementCache.addAndGet("SELECT * FROM test.hot");
+		}
+		preparedStatementCache.addAndGet("SELECT * FROM test.cold");
+		preparedStatementCache.add("SELECT * FROM test.unused");
+
+		//
+		File file = new File(folder.getRoot(), "catalogue/statements.json");
+		assertEquals(new StatementCatalogue(file, 2).save(preparedStatementCache), 3);
+		assertTrue(file.isFile());
+
+		// Only the top two by usage
+		List<String> statements = new StatementCatalogue(file, 2).load();
+		assertEquals(statements.size(), 2);
+		assertEquals(statements.get(0), "SELECT * FROM test.hot");
+		assertEquals(statements.get(1), "SELECT * FROM test.cold");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testLoadMissing() throws Exception {
+		assertTrue(new StatementCatalogue(new File(folder.getRoot(), "missing.json"), 10).load().isEmpty());
+	}
+}
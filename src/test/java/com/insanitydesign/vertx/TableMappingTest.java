@@ -0,0 +1,163 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.TableMetadata;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class TableMappingTest {
+
+	/** */
+	private TableMapping tableMapping;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		// test.events (tenant, day) clustered by time with a value and tags
+		ColumnMetadata tenant = column("tenant", DataType.uuid());
+		ColumnMetadata day = column("day", DataType.cint());
+		ColumnMetadata time = column("time", DataType.timestamp());
+		ColumnMetadata value = column("value", DataType.text());
+		ColumnMetadata tags = column("tags", DataType.set(DataType.text()));
+
+		//
+		KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+		when(keyspace.getName()).thenReturn("test");
+		TableMetadata table = mock(TableMetadata.class);
+		when(table.getName()).thenReturn("events");
+		when(table.getKeyspace()).thenReturn(keyspace);
+		when(table.getPartitionKey()).thenReturn(Arrays.asList(tenant, day));
+		when(table.getPrimaryKey()).thenReturn(Arrays.asList(tenant, day, time));
+		when(table.getColumns()).thenReturn(Arrays.asList(value, tenant, tags, day, time));
+
+		//
+		this.tableMapping = new TableMapping(table);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testStatements() {
+		assertEquals(tableMapping.getName(), "test.events");
+		assertEquals(tableMapping.getSelectStatement(2), "SELECT * FROM \"test\".\"events\" WHERE \"tenant\" = ? AND \"day\" = ?");
+		assertEquals(tableMapping.getDeleteStatement(3), "DELETE FROM \"test\".\"events\" WHERE \"tenant\" = ? AND \"day\" = ? AND \"time\" = ?");
+
+		//
+		JsonObject entity = new JsonObject().putString("value", "v").putString("tenant", UUID.randomUUID().toString()).putNumber("day", 1).putNumber("time", 0);
+		assertEquals(tableMapping.getInsertStatement(tableMapping.getColumns(entity)), "INSERT INTO \"test\".\"events\" (\"tenant\", \"day\", \"time\", \"value\") VALUES (?, ?, ?, ?)");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testBind() throws Exception {
+		UUID tenant = UUID.randomUUID();
+		JsonObject entity = new JsonObject().putArray("tags", new JsonArray().addString("a")).putString("tenant", tenant.toString()).putNumber("day", 1).putString("time", "01-01-2015 00:00:00");
+
+		//
+		SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+		Object[] values = tableMapping.bind(entity, tableMapping.getColumns(entity), dateFormat);
+		assertEquals(values.length, 4);
+		assertEquals(values[0], tenant);
+		assertEquals(values[1], 1);
+		assertEquals(values[2], dateFormat.parse("01-01-2015 00:00:00"));
+		assertTrue(values[3] instanceof Set);
+		assertTrue(((Set<?>) values[3]).contains("a"));
+
+		// Timestamps as millis
+		assertEquals(TableMapping.toValue(DataType.timestamp(), 42, dateFormat), new Date(42));
+		// Blobs as sent by JsonObject.putBinary
+		byte[] blob = new byte[] { 0, 1, 2, (byte) 255 };
+		String encoded = new JsonObject(new JsonObject().putBinary("blob", blob).encode()).getString("blob");
+		assertEquals(TableMapping.toValue(DataType.blob(), encoded, dateFormat), ByteBuffer.wrap(blob));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testKeys() {
+		assertEquals(tableMapping.getKeyColumns(new JsonObject().putString("tenant", "t").putNumber("day", 1)), 2);
+		assertEquals(tableMapping.getKeyColumns(new JsonObject().putString("tenant", "t").putNumber("day", 1).putNumber("time", 0)), 3);
+
+		// Incomplete partition key, clustering column without partition key and no key column
+		List<JsonObject> invalidKeys = Arrays.asList(new JsonObject().putString("tenant", "t"), new JsonObject().putString("tenant", "t").putNumber("time", 0), new JsonObject().putString("tenant", "t").putNumber("day", 1).putString("value", "v"));
+		for(JsonObject invalidKey : invalidKeys) {
+			try {
+				tableMapping.getKeyColumns(invalidKey);
+				fail("Accepted invalid key " + invalidKey);
+			} catch(IllegalArgumentException e) {
+			}
+		}
+
+		// Missing primary key on save
+		try {
+			tableMapping.getInsertStatement(tableMapping.getColumns(new JsonObject().putString("tenant", "t").putString("value", "v")));
+			fail("Accepted entity without primary key");
+		} catch(IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCounterStatement() {
+		ColumnMetadata id = column("id", DataType.text());
+		ColumnMetadata hits = column("hits", DataType.counter());
+		KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+		when(keyspace.getName()).thenReturn("test");
+		TableMetadata table = mock(TableMetadata.class);
+		when(table.getName()).thenReturn("counters");
+		when(table.getKeyspace()).thenReturn(keyspace);
+		when(table.getPartitionKey()).thenReturn(Arrays.asList(id));
+		when(table.getPrimaryKey()).thenReturn(Arrays.asList(id));
+		when(table.getColumns()).thenReturn(Arrays.asList(id, hits));
+
+		//
+		TableMapping counterMapping = new TableMapping(table);
+		assertEquals(counterMapping.getCounterStatement("hits"), "UPDATE \"test\".\"counters\" SET \"hits\" = \"hits\" + ? WHERE \"id\" = ?");
+		try {
+			counterMapping.getCounterStatement("id");
+			fail("Accepted non counter column");
+		} catch(IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @param type
+	 * @return A mocked column
+	 */
+	private static ColumnMetadata column(String name, DataType type) {
+		ColumnMetadata column = mock(ColumnMetadata.class);
+		when(column.getName()).thenReturn(name);
+		when(column.getType()).thenReturn(type);
+		return column;
+	}
+}
@@ -0,0 +1,67 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class TransportOptionsTest {
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testOwnEventLoopGroup() throws Exception {
+		TransportOptions transportOptions = new TransportOptions(2, false, true, null);
+		EventLoopGroup eventLoopGroup = transportOptions.eventLoopGroup(Executors.defaultThreadFactory());
+		try {
+			assertTrue(eventLoopGroup instanceof NioEventLoopGroup);
+			assertEquals(transportOptions.channelClass(), NioSocketChannel.class);
+			assertFalse(transportOptions.isEpollUsed());
+
+			//
+			Bootstrap bootstrap = new Bootstrap();
+			transportOptions.afterBootstrapInitialized(bootstrap);
+			// The options are only exposed to the bootstrap package
+			Method options = AbstractBootstrap.class.getDeclaredMethod("options");
+			options.setAccessible(true);
+			assertEquals(((Map<?, ?>) options.invoke(bootstrap)).get(ChannelOption.ALLOCATOR), PooledByteBufAllocator.DEFAULT);
+
+		} finally {
+			transportOptions.onClusterClose(eventLoopGroup);
+		}
+		assertTrue(eventLoopGroup.isShuttingDown());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testSharedEventLoopGroup() {
+		EventLoopGroup sharedEventLoopGroup = mock(EventLoopGroup.class);
+		TransportOptions transportOptions = new TransportOptions(0, true, false, sharedEventLoopGroup);
+		assertSame(transportOptions.eventLoopGroup(Executors.defaultThreadFactory()), sharedEventLoopGroup);
+		assertEquals(transportOptions.channelClass(), NioSocketChannel.class);
+
+		// Never shut down by the driver
+		transportOptions.onClusterClose(sharedEventLoopGroup);
+		verifyZeroInteractions(sharedEventLoopGroup);
+	}
+}
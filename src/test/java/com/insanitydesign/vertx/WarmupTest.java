@@ -0,0 +1,148 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.busmods.BusModBase;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class WarmupTest {
+
+	/** */
+	private Logger logger;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		this.logger = mock(Logger.class);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testParseStatements() {
+		List<String> statements = Warmup.parseStatements("-- users\nSELECT * FROM test.users\n  WHERE id = ?;\n\n// values\nINSERT INTO test.values (id, value) VALUES (?, ?);;");
+
+		//
+		assertEquals(statements.size(), 2);
+		assertEquals(statements.get(0), "SELECT * FROM test.users\n  WHERE id = ?");
+		assertEquals(statements.get(1), "INSERT INTO test.values (id, value) VALUES (?, ?)");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCoreConnections() {
+		PoolingOptions poolingOptions = new Warmup(Collections.<String> emptyList(), 16, false, logger).configure(new PoolingOptions());
+
+		//
+		assertEquals(poolingOptions.getCoreConnectionsPerHost(HostDistance.LOCAL), 16);
+		assertTrue(poolingOptions.getMaxConnectionsPerHost(HostDistance.LOCAL) >= 16);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testRun() throws Exception {
+		Session session = mock(Session.class);
+		when(session.prepareAsync(any(String.class))).thenReturn(Futures.immediateFuture(mock(PreparedStatement.class)));
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+
+		//
+		Warmup warmup = new Warmup(Arrays.asList("SELECT * FROM test.table", "SELECT * FROM test.table2"), 0, false, logger);
+		assertEquals(warmup.run(session, preparedStatementCache, 4), 2);
+		assertTrue(preparedStatementCache.contains("SELECT * FROM test.table"));
+		assertTrue(preparedStatementCache.contains("SELECT * FROM test.table2"));
+		verify(session, never()).execute(any(String.class));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testFileStatementsCached() throws Exception {
+		String statement = "SELECT * FROM test.users\n\tWHERE id = ? AND name = 'a  b'";
+		File file = File.createTempFile("warmup", ".cql");
+		file.deleteOnExit();
+		Files.write(file.toPath(), ("-- users\n" + statement + ";\n").getBytes(StandardCharsets.UTF_8));
+		Session session = mock(Session.class);
+		when(session.prepareAsync(any(String.class))).thenReturn(Futures.immediateFuture(mock(PreparedStatement.class)));
+		PreparedStatementCache preparedStatementCache = new PreparedStatementCache(10, session, logger);
+
+		// Found with the same text a caller sends
+		new Warmup(Warmup.readStatements(file.getPath()), 0, false, logger).run(session, preparedStatementCache, 4);
+		assertTrue(preparedStatementCache.contains(statement));
+		assertNotNull(preparedStatementCache.get(statement));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testProbe() throws Exception {
+		Host first = mock(Host.class);
+		Host second = mock(Host.class);
+		Host remote = mock(Host.class);
+		Session session = mock(Session.class, RETURNS_DEEP_STUBS);
+		when(session.getCluster().getMetadata().getAllHosts()).thenReturn(new HashSet<>(Arrays.asList(first, second, remote)));
+		// The policy picks the first host twice and never the remote one
+		ResultSet firstAnswer = mock(ResultSet.class, RETURNS_DEEP_STUBS);
+		when(firstAnswer.getExecutionInfo().getQueriedHost()).thenReturn(first);
+		ResultSet secondAnswer = mock(ResultSet.class, RETURNS_DEEP_STUBS);
+		when(secondAnswer.getExecutionInfo().getQueriedHost()).thenReturn(second);
+		when(session.execute(Warmup.PROBE_QUERY)).thenReturn(firstAnswer, firstAnswer, secondAnswer, firstAnswer);
+
+		//
+		Warmup warmup = new Warmup(Collections.<String> emptyList(), 0, true, logger);
+		assertEquals(warmup.probe(session), 2);
+		verify(session, times(3 * Warmup.PROBE_ROUNDS)).execute(Warmup.PROBE_QUERY);
+		verify(logger).warn("[Cassandra Persistor] Warm-up probes did not reach [" + remote + "]");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testMissingFile() throws Exception {
+		CassandraPersistor cassandraPersistor = new CassandraPersistor();
+		Field loggerField = BusModBase.class.getDeclaredField("logger");
+		loggerField.setAccessible(true);
+		loggerField.set(cassandraPersistor, logger);
+
+		// Warmed up without the statements of the missing file
+		cassandraPersistor.setWarmup(new JsonObject().putArray("statements", new JsonArray().add("SELECT * FROM test.table")).putString("file", "missing.cql"));
+		assertEquals(cassandraPersistor.getWarmup().getStatements(), Arrays.asList("SELECT * FROM test.table"));
+		verify(logger).error(any(String.class), any(IOException.class));
+	}
+}
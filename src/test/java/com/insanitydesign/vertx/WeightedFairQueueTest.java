@@ -0,0 +1,85 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class WeightedFairQueueTest {
+
+	/** */
+	private WeightedFairQueue<String> queue;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void init() {
+		Map<String, Integer> weights = new LinkedHashMap<>();
+		weights.put("priority", 3);
+		weights.put("default", 1);
+		this.queue = new WeightedFairQueue<>(weights, "default", 10);
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testWeights() {
+		for(int i = 0; i < 4; i++) {
+			queue.offer(null, "bulk", "d" + i);
+		}
+		for(int i = 0; i < 4; i++) {
+			queue.offer("priority", "web", "p" + i);
+		}
+
+		// 3 priority turns per default turn, the remaining default elements once priority is empty
+		StringBuilder order = new StringBuilder();
+		while(!queue.isEmpty()) {
+			order.append(queue.poll()).append(' ');
+		}
+		assertEquals(order.toString(), "p0 p1 d0 p2 p3 d1 d2 d3 ");
+		assertNull(queue.poll());
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testCallers() {
+		queue.offer(null, "bulk", "b0");
+		queue.offer(null, "bulk", "b1");
+		queue.offer(null, "bulk", "b2");
+		// Unknown lanes are the default lane
+		queue.offer("unknown", "web", "w0");
+		queue.offer(null, null, "a0");
+
+		//
+		assertEquals(queue.poll(), "b0");
+		assertEquals(queue.poll(), "w0");
+		assertEquals(queue.poll(), "a0");
+		assertEquals(queue.poll(), "b1");
+		assertEquals(queue.poll(), "b2");
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void testMaxSize() {
+		for(int i = 0; i < 10; i++) {
+			assertTrue(queue.offer(null, "bulk", "b" + i));
+		}
+		assertFalse(queue.offer("priority", "web", "w"));
+		assertEquals(queue.size(), 10);
+		queue.poll();
+		assertTrue(queue.offer("priority", "web", "w"));
+	}
+}
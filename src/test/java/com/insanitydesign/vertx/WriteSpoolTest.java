@@ -0,0 +1,141 @@
+package com.insanitydesign.vertx;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * 
+ * @author insanitydesign
+ */
+public class WriteSpoolTest {
+
+	/** */
+	private File file;
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void init() throws Exception {
+		this.file = File.createTempFile("spool", ".log");
+		this.file.delete();
+	}
+
+	/**
+	 * 
+	 */
+	@After
+	public void cleanup() {
+		this.file.delete();
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAppendAndRemove() throws Exception {
+		WriteSpool writeSpool = new WriteSpool(file, 4096);
+		for(int i = 0; i < 3; i++) {
+			assertTrue(writeSpool.append(entry(i)));
+		}
+		assertEquals(writeSpool.size(), 3);
+
+		// In order and not removed by peeking
+		List<JsonObject> entries = writeSpool.peek(2);
+		assertEquals(entries.size(), 2);
+		assertEquals(entries.get(0).getInteger("id"), Integer.valueOf(0));
+		assertEquals(entries.get(1).getInteger("id"), Integer.valueOf(1));
+		assertEquals(writeSpool.peek(10).size(), 3);
+
+		//
+		writeSpool.remove(2);
+		assertEquals(writeSpool.size(), 1);
+		assertEquals(writeSpool.peek(10).get(0).getInteger("id"), Integer.valueOf(2));
+		writeSpool.remove(1);
+		assertEquals(writeSpool.size(), 0);
+		assertTrue(writeSpool.peek(10).isEmpty());
+		writeSpool.close();
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnflushed() throws Exception {
+		WriteSpool writeSpool = new WriteSpool(file, 4096);
+		writeSpool.append(entry(0));
+		writeSpool.append(entry(1));
+
+		// Appends are in the mapping before they are forced to disk
+		WriteSpool reopened = new WriteSpool(file, 4096);
+		assertEquals(reopened.size(), 2);
+		assertEquals(reopened.peek(10).get(1).getInteger("id"), Integer.valueOf(1));
+		writeSpool.flush();
+		reopened.close();
+		writeSpool.close();
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReopen() throws Exception {
+		WriteSpool writeSpool = new WriteSpool(file, 4096);
+		writeSpool.append(entry(0));
+		writeSpool.append(entry(1));
+		writeSpool.remove(1);
+		writeSpool.close();
+
+		// Pending entries survive
+		writeSpool = new WriteSpool(file, 4096);
+		assertEquals(writeSpool.size(), 1);
+		assertEquals(writeSpool.peek(10).get(0).getInteger("id"), Integer.valueOf(1));
+		writeSpool.close();
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFullAndCompact() throws Exception {
+		int entrySize = 4 + entry(0).encode().length();
+		WriteSpool writeSpool = new WriteSpool(file, WriteSpool.HEADER + entrySize * 4);
+		for(int i = 0; i < 4; i++) {
+			assertTrue(writeSpool.append(entry(i)));
+		}
+		assertFalse(writeSpool.append(entry(4)));
+
+		// Replayed space is reclaimed
+		writeSpool.remove(2);
+		assertTrue(writeSpool.append(entry(4)));
+		assertTrue(writeSpool.append(entry(5)));
+		assertFalse(writeSpool.append(entry(6)));
+		List<JsonObject> entries = writeSpool.peek(10);
+		assertEquals(entries.size(), 4);
+		for(int i = 0; i < 4; i++) {
+			assertEquals(entries.get(i).getInteger("id"), Integer.valueOf(i + 2));
+		}
+		writeSpool.close();
+	}
+
+	/**
+	 * 
+	 * @param id
+	 * @return A spool entry
+	 */
+	private static JsonObject entry(int id) {
+		return new JsonObject().putString("statement", "INSERT INTO test (id) VALUES (?)").putNumber("id", id);
+	}
+}